@@ -0,0 +1,453 @@
+import java.io.*;
+import java.util.*;
+import java.util.function.IntSupplier;
+
+/**
+ * One-pass adaptive Huffman coding (FGK). Encoder and decoder start from the
+ * same empty tree holding only the NYT ("not yet transmitted") leaf and apply
+ * the same update after every symbol, so no frequency table is sent and
+ * output can be produced from the first symbol on.
+ *
+ * A symbol seen before is sent as its current code; a new one is sent as the
+ * NYT code followed by the symbol in rawBits plain bits.
+ *
+ * The tree lives in position-indexed arrays, root at position 0, ordered so
+ * weights never increase with position (the sibling property). The block
+ * leader for a weight is found by binary search over that order, and the
+ * update walks leaf to root, so encoder and decoder each do
+ * O(code length * log n) work per symbol.
+ */
+public class AdaptiveHuffman {
+    static final int CHAR_BITS = 16;
+    static final int BYTE_BITS = 9;           // 256 byte values plus an end-of-stream symbol
+    static final int END_OF_STREAM = 256;
+
+    private final int alphabetSize;
+    private final int rawBits;
+
+    // Position-indexed tree
+    private long[] weight;
+    private int[] parent;
+    private int[] left;
+    private int[] right;
+    private int[] symbol;                      // -1 internal, -2 NYT
+    private int size;
+    private int nyt;
+    private final int[] leafOf;                // symbol -> position, -1 if unseen
+
+    public AdaptiveHuffman(int alphabetSize, int rawBits) {
+        if (alphabetSize <= 0 || alphabetSize > 1 << rawBits) {
+            throw new IllegalArgumentException(alphabetSize + " symbols do not fit in " + rawBits + " raw bits");
+        }
+        this.alphabetSize = alphabetSize;
+        this.rawBits = rawBits;
+        this.leafOf = new int[alphabetSize];
+        reset();
+    }
+
+    public static AdaptiveHuffman forChars() {
+        return new AdaptiveHuffman(Character.MAX_VALUE + 1, CHAR_BITS);
+    }
+
+    public static AdaptiveHuffman forBytes() {
+        return new AdaptiveHuffman(END_OF_STREAM + 1, BYTE_BITS);
+    }
+
+    public void reset() {
+        int capacity = 64;
+        weight = new long[capacity];
+        parent = new int[capacity];
+        left = new int[capacity];
+        right = new int[capacity];
+        symbol = new int[capacity];
+        Arrays.fill(leafOf, -1);
+
+        size = 1;
+        nyt = 0;
+        parent[0] = -1;
+        left[0] = right[0] = -1;
+        symbol[0] = -2;
+    }
+
+    public void encodeSymbol(int s, BitWriter out) {
+        if (s < 0 || s >= alphabetSize) {
+            throw new IllegalArgumentException("Symbol " + s + " outside alphabet of " + alphabetSize);
+        }
+        int leaf = leafOf[s];
+        writePath(leaf >= 0 ? leaf : nyt, out);
+        if (leaf < 0) {
+            out.write(s, rawBits);
+        }
+        update(s);
+    }
+
+    // bits supplies the next input bit as 0 or 1
+    public int decodeSymbol(IntSupplier bits) {
+        int node = 0;
+        while (symbol[node] == -1) {
+            node = bits.getAsInt() == 0 ? left[node] : right[node];
+        }
+
+        int s = 0;
+        if (node == nyt) {
+            for (int i = 0; i < rawBits; i++) {
+                s = s << 1 | bits.getAsInt();
+            }
+        }
+        return finishSymbol(node, s);
+    }
+
+    // Walks the tree over a 64-bit window of the reader instead of fetching bit by bit
+    public int decodeSymbol(BitReader reader) {
+        int node = 0;
+        while (symbol[node] == -1) {
+            long window = reader.peek(64);
+            int used = 0;
+            do {
+                node = (window << used++) < 0 ? right[node] : left[node];
+            } while (symbol[node] == -1 && used < 64);
+            reader.skip(used);
+        }
+        return finishSymbol(node, node == nyt ? (int) reader.read(rawBits) : 0);
+    }
+
+    // raw is the symbol that followed the NYT code, if node is the NYT leaf
+    private int finishSymbol(int node, int raw) {
+        int s;
+        if (node == nyt) {
+            s = raw;
+            if (s >= alphabetSize) {
+                throw new IllegalStateException("Decoded symbol " + s + " outside alphabet");
+            }
+        } else {
+            s = symbol[node];
+        }
+        update(s);
+        return s;
+    }
+
+    // Collects the path leaf to root in one word, so it takes one write unless deeper than 64
+    private void writePath(int node, BitWriter out) {
+        long code = 0;
+        int depth = 0;
+        while (parent[node] >= 0 && depth < 64) {
+            if (right[parent[node]] == node) {
+                code |= 1L << depth;
+            }
+            depth++;
+            node = parent[node];
+        }
+        if (parent[node] >= 0) {
+            writePath(node, out);
+        }
+        out.write(code, depth);
+    }
+
+    private void update(int s) {
+        int q = leafOf[s];
+        if (q < 0) {
+            // Old NYT becomes an internal node with the new NYT and the new leaf under it
+            ensureCapacity(size + 2);
+            int oldNyt = nyt;
+            int leaf = size;
+            int newNyt = size + 1;
+            size += 2;
+
+            symbol[oldNyt] = -1;
+            left[oldNyt] = newNyt;
+            right[oldNyt] = leaf;
+            initNode(leaf, oldNyt, s);
+            initNode(newNyt, oldNyt, -2);
+            leafOf[s] = leaf;
+            nyt = newNyt;
+            q = leaf;
+        }
+
+        while (q >= 0) {
+            int leader = blockLeader(q);
+            if (leader != q && leader != parent[q]) {
+                swap(q, leader);
+                q = leader;
+            }
+            weight[q]++;
+            q = parent[q];
+        }
+    }
+
+    private void initNode(int position, int parentPosition, int s) {
+        weight[position] = 0;
+        parent[position] = parentPosition;
+        left[position] = -1;
+        right[position] = -1;
+        symbol[position] = s;
+    }
+
+    // First position with the same weight as q; weights never increase with position
+    private int blockLeader(int q) {
+        long w = weight[q];
+        if (q == 0 || weight[q - 1] > w) {
+            // Usually q already leads its block
+            return q;
+        }
+        int lo = 0, hi = q - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (weight[mid] > w) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    // Exchanges the subtrees at positions a and b (equal weights); parents stay positional
+    private void swap(int a, int b) {
+        int t = symbol[a]; symbol[a] = symbol[b]; symbol[b] = t;
+        t = left[a]; left[a] = left[b]; left[b] = t;
+        t = right[a]; right[a] = right[b]; right[b] = t;
+        relink(a);
+        relink(b);
+    }
+
+    private void relink(int position) {
+        if (symbol[position] == -1) {
+            parent[left[position]] = position;
+            parent[right[position]] = position;
+        } else if (symbol[position] == -2) {
+            nyt = position;
+        } else {
+            leafOf[symbol[position]] = position;
+        }
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed > weight.length) {
+            int capacity = Math.max(needed, weight.length * 2);
+            weight = Arrays.copyOf(weight, capacity);
+            parent = Arrays.copyOf(parent, capacity);
+            left = Arrays.copyOf(left, capacity);
+            right = Arrays.copyOf(right, capacity);
+            symbol = Arrays.copyOf(symbol, capacity);
+        }
+    }
+
+    public int getDistinctSymbols() { return (size - 1) / 2; }
+
+
+    // HuffmanCoding-style API: each call starts from an empty tree
+
+    public BitBuffer encodeBits(String text) {
+        reset();
+        BitWriter writer = new BitWriter(text.length() * 8L);
+        for (int i = 0; i < text.length(); i++) {
+            encodeSymbol(text.charAt(i), writer);
+        }
+        return writer.toBitBuffer();
+    }
+
+    public String decodeBits(BitBuffer encoded) {
+        reset();
+        StringBuilder decoded = new StringBuilder();
+        BitReader reader = new BitReader(encoded);
+        while (reader.hasMore()) {
+            decoded.append((char) decodeSymbol(reader));
+        }
+        // The last symbol ran into the zeros past the end, so the input was cut short
+        if (reader.remaining() < 0) {
+            throw new IllegalStateException("Truncated adaptive Huffman stream: last symbol needs "
+                    + -reader.remaining() + " more bits");
+        }
+        return decoded.toString();
+    }
+
+    public String encode(String text) {
+        return encodeBits(text).toBitString();
+    }
+
+    public String decode(String encodedText) {
+        return decodeBits(BitBuffer.fromBitString(encodedText));
+    }
+
+    public CompressionStats getCompressionStats(String originalText, BitBuffer encoded) {
+        int originalBits = originalText.length() * 8;
+        int encodedBits = (int) encoded.getBitLength();
+        double compressionRatio = originalBits > 0 ? (1.0 - (double)encodedBits / originalBits) * 100 : 0.0;
+
+        CompressionStats stats = new CompressionStats(
+                originalText.length(),
+                originalBits,
+                encodedBits,
+                compressionRatio,
+                originalBits - encodedBits
+                );
+        stats.packedBytes = encoded.getByteLength();
+        stats.bitsWritten = encoded.getBitLength();
+        return stats;
+    }
+
+
+    /**
+     * Compresses bytes as they are written. Every complete output byte is passed
+     * on immediately; close() sends the end-of-stream symbol and the last bits.
+     */
+    public static class CompressingOutputStream extends FilterOutputStream {
+        private final AdaptiveHuffman model = AdaptiveHuffman.forBytes();
+        private final BitWriter bits = new BitWriter(64);
+        private boolean closed;
+
+        public CompressingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            model.encodeSymbol(b & 0xFF, bits);
+            bits.drainBytes(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            for (int i = off; i < off + len; i++) {
+                model.encodeSymbol(b[i] & 0xFF, bits);
+            }
+            bits.drainBytes(out);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) { return; }
+            closed = true;
+            model.encodeSymbol(END_OF_STREAM, bits);
+            bits.alignToByte();
+            bits.drainBytes(out);
+            super.close();
+        }
+    }
+
+    /**
+     * Decompresses a stream written by CompressingOutputStream, symbol by symbol.
+     */
+    public static class DecompressingInputStream extends FilterInputStream {
+        private final AdaptiveHuffman model = AdaptiveHuffman.forBytes();
+        private final IntSupplier bits = this::nextBit;
+        private int current;
+        private int bitsLeft;
+        private boolean finished;
+        // Source bytes read for the symbol being decoded, replayed if it has to wait for more input
+        private byte[] held = new byte[16];
+        private int heldCount;
+        private int heldNext;
+        private boolean nonBlocking;
+
+        public DecompressingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (finished) { return -1; }
+            try {
+                return nextSymbol();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+
+        @Override
+        // Blocks for the first byte only; after that it returns once the next symbol would need
+        // bytes the source does not hold yet, so a reader asking for 8 KB gets what has arrived
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) { return 0; }
+            int c = read();
+            if (c < 0) { return -1; }
+            b[off] = (byte) c;
+            int n = 1;
+            int savedCurrent = current;
+            int savedBitsLeft = bitsLeft;
+            nonBlocking = true;
+            try {
+                while (n < len && !finished) {
+                    savedCurrent = current;
+                    savedBitsLeft = bitsLeft;
+                    c = nextSymbol();
+                    if (c < 0) { break; }
+                    b[off + n++] = (byte) c;
+                }
+            } catch (WouldBlock e) {
+                // The model is only updated once a whole symbol is read, so rewinding the bits is enough
+                current = savedCurrent;
+                bitsLeft = savedBitsLeft;
+                heldNext = 0;
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                nonBlocking = false;
+            }
+            return n;
+        }
+
+        // Compressed bits buffered here and in the source, in whole bytes
+        @Override
+        public int available() throws IOException {
+            if (finished) { return 0; }
+            return (int) Math.min(Integer.MAX_VALUE, (bitsLeft + 8L * (heldCount - heldNext) + 8L * in.available()) >>> 3);
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = 0;
+            while (skipped < n && read() >= 0) { skipped++; }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private int nextSymbol() {
+            int s = model.decodeSymbol(bits);
+            heldCount = 0;
+            heldNext = 0;
+            if (s == END_OF_STREAM) {
+                finished = true;
+                return -1;
+            }
+            return s;
+        }
+
+        private int nextBit() {
+            if (bitsLeft == 0) {
+                current = nextByte();
+                bitsLeft = 8;
+            }
+            return (current >>> --bitsLeft) & 1;
+        }
+
+        private int nextByte() {
+            if (heldNext < heldCount) { return held[heldNext++] & 0xFF; }
+            int b;
+            try {
+                if (nonBlocking && in.available() == 0) { throw WouldBlock.INSTANCE; }
+                b = in.read();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (b < 0) {
+                throw new UncheckedIOException(new EOFException("Adaptive Huffman stream ended without end marker"));
+            }
+            if (heldCount == held.length) { held = Arrays.copyOf(held, heldCount * 2); }
+            held[heldCount++] = (byte) b;
+            heldNext = heldCount;
+            return b;
+        }
+    }
+
+    // Raised inside a non-blocking read when the next symbol needs bytes that have not arrived
+    private static final class WouldBlock extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        static final WouldBlock INSTANCE = new WouldBlock();
+
+        private WouldBlock() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,300 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Appendable Huffman encoding session. Text appended to an encoded document is
+ * coded with the table already in use, so an append costs time in proportion
+ * to the new text, not the whole document.
+ *
+ * The output is a list of segments, each with its own table. The session
+ * tracks the cost of the open segment against its ideal cost on the fly. The
+ * ideal is the Shannon entropy of the segment's own histogram, scaled by the
+ * overhead the table had on the data it was built from. Once the segment costs
+ * more than driftThreshold (a fraction) over that ideal, it is closed and a
+ * new table takes over. A new table is also started if appended text holds a
+ * char the current table has no code for.
+ *
+ * New tables come from a running histogram of the whole document. The
+ * histogram is halved at every refresh, so recent text dominates it while
+ * every char seen so far keeps a code.
+ *
+ * Layout:
+ *   int magic, byte version, int segmentCount
+ *   segment*:  int symbolCount, (char symbol, byte length)*, long chars, long bitLength, packed bits
+ */
+public class AppendableHuffman {
+    static final int APPEND_MAGIC = 0x48554641; // "HUFA"
+    static final byte APPEND_VERSION = 1;
+    public static final double DEFAULT_DRIFT_THRESHOLD = 0.05;
+    public static final int DEFAULT_MIN_SEGMENT_CHARS = 1 << 14;
+    // Drift is checked at least this often inside one long append
+    static final int SLICE_CHARS = 1 << 16;
+    // Keeps segment and running counts inside an int
+    static final long MAX_SEGMENT_CHARS = 1L << 29;
+
+    private final double driftThreshold;
+    private final int minSegmentChars;
+
+    private final List<byte[]> closedSegments = new ArrayList<>();
+    private int[] running = new int[256];
+    private CodeBook book;
+    private int[] segmentCounts = new int[256];
+    private long segmentChars;
+    private BitWriter segmentBits = new BitWriter();
+    // cost / entropy of the table on the histogram it was built from
+    private double baselineRatio = 1;
+
+    private long totalChars;
+    private long closedBits;
+    private int driftRefreshes;
+    private int newSymbolRefreshes;
+
+    public AppendableHuffman() {
+        this(DEFAULT_DRIFT_THRESHOLD, DEFAULT_MIN_SEGMENT_CHARS);
+    }
+
+    // A segment shorter than minSegmentChars is never closed for drift, so tables are not rebuilt on noise
+    public AppendableHuffman(double driftThreshold, int minSegmentChars) {
+        if (!(driftThreshold > 0) || minSegmentChars < 0) {
+            throw new IllegalArgumentException("Drift threshold must be positive and minimum segment non-negative: "
+                    + driftThreshold + ", " + minSegmentChars);
+        }
+        this.driftThreshold = driftThreshold;
+        this.minSegmentChars = minSegmentChars;
+    }
+
+    // Continues a document written by toByteArray. Its segments are kept as they are, and the last
+    // table stays in use. Code lengths stand in for the running histogram, so nothing is decoded.
+    public static AppendableHuffman resume(byte[] document, double driftThreshold, int minSegmentChars)
+            throws IOException {
+        AppendableHuffman session = new AppendableHuffman(driftThreshold, minSegmentChars);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(document));
+        int segmentCount = readHeader(in);
+        int position = 4 + 1 + 4;
+        CodeBook last = null;
+        for (int k = 0; k < segmentCount; k++) {
+            Segment segment = readSegment(in);
+            int size = 4 + 3 * segment.book.size() + 8 + 8 + segment.bits.getByteLength();
+            session.closedSegments.add(Arrays.copyOfRange(document, position, position + size));
+            session.totalChars += segment.chars;
+            session.closedBits += segment.bits.getBitLength();
+            position += size;
+            last = segment.book;
+        }
+        if (last != null && last.size() > 0) {
+            int[] implied = new int[last.getMaxSymbol() + 1];
+            for (int i = 0; i < last.size(); i++) {
+                implied[last.symbolAt(i)] = 1 << Math.max(0, Math.min(30, 16 - last.lengthAt(i)));
+            }
+            session.running = implied;
+            session.installTable(implied);
+        }
+        return session;
+    }
+
+    public void append(CharSequence text) {
+        for (int from = 0; from < text.length(); from += SLICE_CHARS) {
+            appendSlice(text, from, Math.min(text.length(), from + SLICE_CHARS));
+        }
+    }
+
+    private void appendSlice(CharSequence text, int from, int to) {
+        boolean covered = book != null;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c >= running.length) {
+                running = Arrays.copyOf(running, Math.max(c + 1, running.length * 2));
+            }
+            running[c]++;
+            covered = covered && book.contains(c);
+        }
+        if (!covered || segmentChars + (to - from) > MAX_SEGMENT_CHARS) {
+            if (book != null && !covered) { newSymbolRefreshes++; }
+            closeSegment();
+            installTable(running);
+        }
+
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c >= segmentCounts.length) {
+                segmentCounts = Arrays.copyOf(segmentCounts, Math.max(c + 1, segmentCounts.length * 2));
+            }
+            segmentCounts[c]++;
+        }
+        HuffmanCodec.encode(book, text.subSequence(from, to), segmentBits);
+        segmentChars += to - from;
+        totalChars += to - from;
+
+        if (segmentChars >= minSegmentChars && getDrift() > driftThreshold) {
+            driftRefreshes++;
+            closeSegment();
+            installTable(running);
+        }
+    }
+
+    // Fraction by which the open segment costs more than its ideal; 0 while it is empty
+    public double getDrift() {
+        double entropyBits = 0;
+        for (int count : segmentCounts) {
+            if (count > 0) { entropyBits += count * (Math.log((double) segmentChars / count) / Math.log(2)); }
+        }
+        if (entropyBits == 0) { return 0; }
+        return segmentBits.getBitLength() / (entropyBits * baselineRatio) - 1;
+    }
+
+    private void installTable(int[] counts) {
+        HuffmanTree tree = HuffmanTree.build(counts);
+        book = tree.toCodeBook();
+        long total = 0;
+        double entropyBits = 0;
+        for (int count : counts) { total += count; }
+        for (int count : counts) {
+            if (count > 0) { entropyBits += count * (Math.log((double) total / count) / Math.log(2)); }
+        }
+        baselineRatio = entropyBits == 0 ? 1 : tree.cost() / entropyBits;
+        // Halve the history so the next table leans towards what comes after this one
+        for (int s = 0; s < running.length; s++) {
+            running[s] = (running[s] + 1) >>> 1;
+        }
+    }
+
+    private void closeSegment() {
+        if (segmentChars == 0) { return; }
+        closedSegments.add(segmentBytes());
+        closedBits += segmentBits.getBitLength();
+        segmentBits = new BitWriter();
+        Arrays.fill(segmentCounts, 0);
+        segmentChars = 0;
+    }
+
+    private byte[] segmentBytes() {
+        BitBuffer bits = segmentBits.toBitBuffer();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4 + 3 * book.size() + 16 + bits.getByteLength());
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(book.size());
+            for (int i = 0; i < book.size(); i++) {
+                out.writeChar(book.symbolAt(i));
+                out.writeByte(book.lengthAt(i));
+            }
+            out.writeLong(segmentChars);
+            out.writeLong(bits.getBitLength());
+            out.write(bits.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // The document so far; the open segment is written but stays open for further appends
+    public byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            writeTo(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public void writeTo(OutputStream target) throws IOException {
+        DataOutputStream out = new DataOutputStream(target);
+        out.writeInt(APPEND_MAGIC);
+        out.writeByte(APPEND_VERSION);
+        out.writeInt(closedSegments.size() + (segmentChars > 0 ? 1 : 0));
+        for (byte[] segment : closedSegments) {
+            out.write(segment);
+        }
+        if (segmentChars > 0) {
+            out.write(segmentBytes());
+        }
+        out.flush();
+    }
+
+    public static String decode(byte[] document) throws IOException {
+        StringWriter text = new StringWriter();
+        decode(document, text);
+        return text.toString();
+    }
+
+    // Streams every segment to `out` in turn; returns the number of chars
+    public static long decode(byte[] document, Writer out) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(document));
+        int segmentCount = readHeader(in);
+        long total = 0;
+        for (int k = 0; k < segmentCount; k++) {
+            Segment segment = readSegment(in);
+            long chars;
+            try {
+                chars = segment.chars == 0 ? 0 : HuffmanCodec.decode(segment.book, segment.bits, out);
+            } catch (IllegalStateException e) {
+                throw new IOException("Corrupt segment " + k + ": " + e.getMessage());
+            }
+            if (chars != segment.chars) {
+                throw new IOException("Corrupt segment " + k + ": " + chars + " chars, header says " + segment.chars);
+            }
+            total += chars;
+        }
+        return total;
+    }
+
+    private static int readHeader(DataInputStream in) throws IOException {
+        if (in.available() < 9 || in.readInt() != APPEND_MAGIC) {
+            throw new IOException("Not an appendable Huffman document");
+        }
+        byte version = in.readByte();
+        if (version != APPEND_VERSION) {
+            throw new IOException("Unsupported document version " + version);
+        }
+        int segmentCount = in.readInt();
+        if (segmentCount < 0) { throw new IOException("Corrupt segment count " + segmentCount); }
+        return segmentCount;
+    }
+
+    private static Segment readSegment(DataInputStream in) throws IOException {
+        int symbolCount = in.readInt();
+        if (symbolCount <= 0 || symbolCount > 65536 || 3L * symbolCount > in.available()) {
+            throw new IOException("Corrupt segment: " + symbolCount + " symbols");
+        }
+        int[] symbols = new int[symbolCount];
+        int[] lengths = new int[symbolCount];
+        for (int i = 0; i < symbolCount; i++) {
+            symbols[i] = in.readChar();
+            lengths[i] = in.readByte();
+        }
+        Segment segment = new Segment();
+        try {
+            segment.book = CodeBook.fromLengths(symbols, lengths);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt segment table: " + e.getMessage());
+        }
+        segment.chars = in.readLong();
+        long bitLength = in.readLong();
+        if (segment.chars < 0 || bitLength < 0 || (bitLength + 7) / 8 > in.available()) {
+            throw new IOException("Corrupt segment: " + bitLength + " bits");
+        }
+        byte[] packed = new byte[(int) ((bitLength + 7) / 8)];
+        in.readFully(packed);
+        segment.bits = BitBuffer.fromByteArray(packed, bitLength);
+        return segment;
+    }
+
+    public long getChars() { return totalChars; }
+
+    public long getEncodedBits() { return closedBits + segmentBits.getBitLength(); }
+
+    public int getSegmentCount() { return closedSegments.size() + (segmentChars > 0 ? 1 : 0); }
+
+    // Tables replaced because the segment drifted past the threshold
+    public int getDriftRefreshes() { return driftRefreshes; }
+
+    // Tables replaced because appended text held a char without a code
+    public int getNewSymbolRefreshes() { return newSymbolRefreshes; }
+
+    public CodeBook getCodeBook() { return book; }
+
+    private static class Segment {
+        CodeBook book;
+        long chars;
+        BitBuffer bits;
+    }
+}
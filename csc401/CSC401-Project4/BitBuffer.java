@@ -0,0 +1,93 @@
+import java.util.Arrays;
+
+/**
+ * A packed sequence of bits stored most significant bit first in a long[].
+ * Bit i lives in words[i >>> 6] at position 63 - (i & 63).
+ */
+public class BitBuffer {
+    final long[] words;
+    final long bitLength;
+
+    public BitBuffer(long[] words, long bitLength) {
+        if (bitLength < 0 || bitLength > (long) words.length * 64) {
+            throw new IllegalArgumentException("Bit length " + bitLength + " does not fit in " + words.length + " words");
+        }
+        this.words = words;
+        this.bitLength = bitLength;
+    }
+
+    public long getBitLength() { return bitLength; }
+
+    public int getByteLength() { return (int) ((bitLength + 7) >>> 3); }
+
+    public boolean getBit(long index) {
+        if (index < 0 || index >= bitLength) {
+            throw new IndexOutOfBoundsException("Bit " + index + " of " + bitLength);
+        }
+        return (words[(int) (index >>> 6)] << (index & 63)) < 0;
+    }
+
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[getByteLength()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (words[i >>> 3] >>> (56 - ((i & 7) << 3)));
+        }
+        return bytes;
+    }
+
+    public static BitBuffer fromByteArray(byte[] bytes, long bitLength) {
+        long[] words = new long[(bytes.length + 7) >>> 3];
+        for (int i = 0; i < bytes.length; i++) {
+            words[i >>> 3] |= (bytes[i] & 0xFFL) << (56 - ((i & 7) << 3));
+        }
+        return new BitBuffer(words, bitLength);
+    }
+
+    // Packs a legacy '0'/'1' string
+    public static BitBuffer fromBitString(String bits) {
+        BitWriter writer = new BitWriter(bits.length());
+        for (int i = 0; i < bits.length(); i++) {
+            writer.writeBit(bits.charAt(i) == '1');
+        }
+        return writer.toBitBuffer();
+    }
+
+    // Expands back to a '0'/'1' string, for display and the legacy String API
+    public String toBitString() {
+        StringBuilder sb = new StringBuilder((int) bitLength);
+        for (long i = 0; i < bitLength; i++) {
+            sb.append(getBit(i) ? '1' : '0');
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof BitBuffer)) { return false; }
+        BitBuffer other = (BitBuffer) o;
+        if (bitLength != other.bitLength) { return false; }
+        int full = (int) (bitLength >>> 6);
+        for (int i = 0; i < full; i++) {
+            if (words[i] != other.words[i]) { return false; }
+        }
+        int rest = (int) (bitLength & 63);
+        if (rest == 0) { return true; }
+        long mask = -1L << (64 - rest);
+        return (words[full] & mask) == (other.words[full] & mask);
+    }
+
+    @Override
+    public int hashCode() {
+        long[] used = Arrays.copyOf(words, (int) ((bitLength + 63) >>> 6));
+        int rest = (int) (bitLength & 63);
+        if (rest != 0) {
+            used[used.length - 1] &= -1L << (64 - rest);
+        }
+        return Long.hashCode(bitLength) * 31 + Arrays.hashCode(used);
+    }
+
+    @Override
+    public String toString() {
+        return "BitBuffer(" + bitLength + " bits, " + getByteLength() + " bytes)";
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * Reads bits, most significant first, from a BitBuffer. Reads past the end
+ * see zeros; callers check remaining() to know when to stop.
+ */
+public class BitReader {
+    private final long[] words;
+    private final long bitLength;
+    private long position;
+
+    public BitReader(BitBuffer buffer) {
+        this.words = buffer.words;
+        this.bitLength = buffer.bitLength;
+        this.position = 0;
+    }
+
+    public boolean readBit() {
+        int index = (int) (position >>> 6);
+        boolean bit = index < words.length && (words[index] << (position & 63)) < 0;
+        position++;
+        return bit;
+    }
+
+    // Returns the next `count` bits without consuming them, 1 <= count <= 64
+    public long peek(int count) {
+        int index = (int) (position >>> 6);
+        int offset = (int) (position & 63);
+        long hi = index < words.length ? words[index] : 0L;
+        long window = hi << offset;
+        if (offset != 0 && index + 1 < words.length) {
+            window |= words[index + 1] >>> (64 - offset);
+        }
+        return window >>> (64 - count);
+    }
+
+    public long read(int count) {
+        long bits = peek(count);
+        position += count;
+        return bits;
+    }
+
+    public void skip(int count) {
+        position += count;
+    }
+
+    // Moves to an absolute bit position, e.g. the start of one record in a batch
+    public void seek(long position) {
+        if (position < 0 || position > bitLength) {
+            throw new IllegalArgumentException("Bit position " + position + " outside 0.." + bitLength);
+        }
+        this.position = position;
+    }
+
+    public long position() { return position; }
+
+    public long remaining() { return bitLength - position; }
+
+    public boolean hasMore() { return position < bitLength; }
+}
@@ -0,0 +1,90 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Appends bits, most significant first, into a growable long[].
+ */
+public class BitWriter {
+    private long[] words;
+    private long bitLength;
+
+    public BitWriter() {
+        this(1024);
+    }
+
+    public BitWriter(long expectedBits) {
+        this.words = new long[(int) Math.max(1, (expectedBits + 63) >>> 6)];
+        this.bitLength = 0;
+    }
+
+    // Writes the low `count` bits of `bits`, 0 <= count <= 64
+    public void write(long bits, int count) {
+        if (count == 0) { return; }
+        if (count < 64) {
+            bits &= (1L << count) - 1;
+        }
+
+        int index = (int) (bitLength >>> 6);
+        int used = (int) (bitLength & 63);
+        ensureCapacity(index + 2);
+
+        int free = 64 - used;
+        if (count <= free) {
+            words[index] |= bits << (free - count);
+        } else {
+            int spill = count - free;
+            words[index] |= bits >>> spill;
+            words[index + 1] = bits << (64 - spill);
+        }
+        bitLength += count;
+    }
+
+    public void writeBit(boolean bit) {
+        write(bit ? 1 : 0, 1);
+    }
+
+    // Pads to the next byte boundary with zeros
+    public void alignToByte() {
+        bitLength = (bitLength + 7) & ~7L;
+        ensureCapacity((int) ((bitLength + 63) >>> 6) + 1);
+    }
+
+    // Moves every complete byte to `out`, keeping the trailing partial byte buffered
+    public void drainBytes(OutputStream out) throws IOException {
+        int fullBytes = (int) (bitLength >>> 3);
+        if (fullBytes == 0) { return; }
+
+        byte[] bytes = new byte[fullBytes];
+        for (int i = 0; i < fullBytes; i++) {
+            bytes[i] = byteAt(i);
+        }
+        int rest = (int) (bitLength & 7);
+        int leftover = rest == 0 ? 0 : (byteAt(fullBytes) & 0xFF) >>> (8 - rest);
+
+        out.write(bytes);
+        reset();
+        write(leftover, rest);
+    }
+
+    private byte byteAt(int index) {
+        return (byte) (words[index >>> 3] >>> (56 - ((index & 7) << 3)));
+    }
+
+    public long getBitLength() { return bitLength; }
+
+    public void reset() {
+        Arrays.fill(words, 0, (int) Math.min(words.length, (bitLength + 63) >>> 6), 0L);
+        bitLength = 0;
+    }
+
+    public BitBuffer toBitBuffer() {
+        return new BitBuffer(Arrays.copyOf(words, (int) ((bitLength + 63) >>> 6)), bitLength);
+    }
+
+    private void ensureCapacity(int wordCount) {
+        if (wordCount > words.length) {
+            words = Arrays.copyOf(words, Math.max(wordCount, words.length * 2));
+        }
+    }
+}
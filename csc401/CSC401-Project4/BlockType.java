@@ -0,0 +1,145 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Block types for HuffmanStream chunks, and the choice between them.
+ *
+ * Before any tree is built, the Huffman size of a block is estimated from the
+ * order-0 entropy of its histogram. Blocks that would save less than
+ * 1/64 of their size are stored raw. Blocks of one repeated byte store just
+ * that byte, and blocks made of long runs are run-length encoded. The
+ * expensive part of Huffman coding, writing the bits, only runs on blocks
+ * that will actually shrink.
+ *
+ * Type-specific chunk bodies, after int length and byte type:
+ *   HUFFMAN  short symbolCount, (byte symbol, byte length)*, int payloadBytes, payload
+ *   RAW      length bytes
+ *   SINGLE   byte symbol
+ *   RLE      int bodyBytes, (byte value, varint runLength)*
+ */
+final class BlockType {
+    static final int HUFFMAN = 0;
+    static final int RAW = 1;
+    static final int SINGLE = 2;
+    static final int RLE = 3;
+    static final int COUNT = 4;
+    private static final String[] NAMES = {"huffman", "raw", "single", "rle"};
+
+    private BlockType() { }
+
+    static String name(int type) { return NAMES[type]; }
+
+    // Entropy bound on the Huffman chunk body: the table plus length * H bits
+    static long estimateHuffmanBytes(int[] counts, int distinct, int length) {
+        double bits = 0;
+        for (int count : counts) {
+            if (count != 0) {
+                bits += count * (Math.log((double) length / count) / Math.log(2));
+            }
+        }
+        return 2 + 2L * distinct + 4 + (long) Math.ceil(bits / 8);
+    }
+
+    static int choose(int length, int distinct, long rleBytes, long huffmanEstimate) {
+        if (distinct == 1) { return SINGLE; }
+        if (huffmanEstimate < length - (length >> 6) && huffmanEstimate <= rleBytes) { return HUFFMAN; }
+        return rleBytes < length ? RLE : RAW;
+    }
+
+    // Exact RLE body size (without its int header) if at most `bound`; otherwise some value above bound
+    static long rleBytes(byte[] data, int offset, int length, long bound) {
+        return rleBytes(ByteBuffer.wrap(data), offset, length, bound);
+    }
+
+    // Same over src[start, start + length), by absolute index; the buffer's position is not used
+    static long rleBytes(ByteBuffer src, int start, int length, long bound) {
+        long size = 0;
+        int end = start + length;
+        int i = start;
+        while (i < end && size <= bound) {
+            int runStart = i;
+            byte value = src.get(i++);
+            while (i < end && src.get(i) == value) { i++; }
+            size += 1 + varintBytes(i - runStart);
+        }
+        return size;
+    }
+
+    static int varintBytes(int value) {
+        int bytes = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            bytes++;
+        }
+        return bytes;
+    }
+
+    static void writeRle(DataOutput out, byte[] data, int offset, int length, int bodyBytes) throws IOException {
+        byte[] body = new byte[bodyBytes];
+        writeRleBody(ByteBuffer.wrap(data), offset, length, ByteBuffer.wrap(body), 0);
+        out.writeInt(bodyBytes);
+        out.write(body);
+    }
+
+    // Writes the runs of src[start, start + length) at dst[out...] by absolute index; returns the end of the body
+    static int writeRleBody(ByteBuffer src, int start, int length, ByteBuffer dst, int out) {
+        int end = start + length;
+        int i = start;
+        while (i < end) {
+            int runStart = i;
+            byte value = src.get(i++);
+            while (i < end && src.get(i) == value) { i++; }
+            dst.put(out++, value);
+            int run = i - runStart;
+            while ((run & ~0x7F) != 0) {
+                dst.put(out++, (byte) ((run & 0x7F) | 0x80));
+                run >>>= 7;
+            }
+            dst.put(out++, (byte) run);
+        }
+        return out;
+    }
+
+    static void readRle(DataInput in, byte[] dst, int offset, int length) throws IOException {
+        int bodyBytes = in.readInt();
+        if (bodyBytes < 2 || bodyBytes > 2L * length + 8) {
+            throw new IOException("Corrupt RLE body length " + bodyBytes);
+        }
+        byte[] body = new byte[bodyBytes];
+        in.readFully(body);
+        readRleBody(ByteBuffer.wrap(body), 0, bodyBytes, ByteBuffer.wrap(dst), offset, length);
+    }
+
+    // Expands the body src[p, p + bodyBytes) into exactly dst[out, out + length), both by absolute index
+    static void readRleBody(ByteBuffer src, int p, int bodyBytes, ByteBuffer dst, int out, int length)
+            throws IOException {
+        int end = p + bodyBytes;
+        int filled = 0;
+        while (p < end) {
+            byte value = src.get(p++);
+            int run = 0;
+            for (int shift = 0; ; shift += 7) {
+                if (shift > 28 || p == end) { throw new IOException("Corrupt RLE run"); }
+                int b = src.get(p++) & 0xFF;
+                run |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) { break; }
+            }
+            if (run <= 0 || run > length - filled) {
+                throw new IOException("Corrupt RLE run of " + run + " bytes");
+            }
+            if (dst.hasArray()) {
+                int from = dst.arrayOffset() + out + filled;
+                Arrays.fill(dst.array(), from, from + run, value);
+            } else {
+                for (int i = 0; i < run; i++) {
+                    dst.put(out + filled + i, value);
+                }
+            }
+            filled += run;
+        }
+        if (filled != length) {
+            throw new IOException("RLE body decodes to " + filled + " bytes, expected " + length);
+        }
+    }
+}
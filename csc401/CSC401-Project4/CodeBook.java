@@ -0,0 +1,217 @@
+import java.util.*;
+
+/**
+ * Canonical Huffman code table. Only the code length of each symbol is needed
+ * to rebuild it: symbols are sorted by (length, symbol) and numbered
+ * consecutively, shifting left whenever the length grows.
+ *
+ * Instances never change after construction, so one table can be shared by
+ * any number of threads without locking (see HuffmanCodec).
+ *
+ * Lookups by symbol use flat arrays indexed by symbol for byte and char
+ * alphabets. A few code points spread over the whole Unicode range would make
+ * those arrays megabytes long, so sparse alphabets use a small open-addressing
+ * hash table instead.
+ */
+public final class CodeBook {
+    // Alphabets below this many symbols always get flat lookup arrays
+    static final int DENSE_SYMBOLS = 1 << 16;
+
+    private final int[] symbols;    // canonical order
+    private final int[] lengths;
+    private final long[] codes;
+    private final int maxSymbol;
+    private final int maxLength;
+    private final long[] codeBySymbol;      // dense lookup, empty when sparse
+    private final byte[] lengthBySymbol;
+    private final int[] slotSymbols;        // sparse lookup, null when dense; -1 marks a free slot
+    private final int[] slotIndex;
+    private volatile HuffmanTableDecoder decoder;
+
+    private CodeBook(int[] symbols, int[] lengths) {
+        int n = symbols.length;
+
+        // Sort by (length, symbol) using packed primitive keys
+        long[] order = new long[n];
+        for (int i = 0; i < n; i++) {
+            if (lengths[i] < 1 || lengths[i] > 63) {
+                throw new IllegalArgumentException("Code length " + lengths[i] + " out of range for symbol " + symbols[i]);
+            }
+            if (symbols[i] < 0 || symbols[i] > 0x1FFFFF) {
+                throw new IllegalArgumentException("Symbol " + symbols[i] + " out of range");
+            }
+            order[i] = (long) lengths[i] << 21 | symbols[i];
+        }
+        Arrays.sort(order);
+
+        this.symbols = new int[n];
+        this.lengths = new int[n];
+        this.codes = new long[n];
+
+        long code = 0;
+        int previousLength = n > 0 ? (int) (order[0] >>> 21) : 0;
+        int maxSym = 0;
+        for (int i = 0; i < n; i++) {
+            int length = (int) (order[i] >>> 21);
+            int sym = (int) (order[i] & 0x1FFFFF);
+            code <<= length - previousLength;
+            previousLength = length;
+
+            this.symbols[i] = sym;
+            this.lengths[i] = length;
+            this.codes[i] = code++;
+            maxSym = Math.max(maxSym, sym);
+        }
+
+        if (n > 1 && code != 1L << previousLength) {
+            throw new IllegalArgumentException("Code lengths do not form a complete prefix code");
+        }
+
+        this.maxSymbol = maxSym;
+        this.maxLength = previousLength;
+
+        if (maxSym < DENSE_SYMBOLS || maxSym < 16L * n) {
+            this.codeBySymbol = new long[n == 0 ? 0 : maxSym + 1];
+            this.lengthBySymbol = new byte[n == 0 ? 0 : maxSym + 1];
+            this.slotSymbols = null;
+            this.slotIndex = null;
+            for (int i = 0; i < n; i++) {
+                if (lengthBySymbol[this.symbols[i]] != 0) {
+                    throw new IllegalArgumentException("Duplicate symbol " + this.symbols[i]);
+                }
+                codeBySymbol[this.symbols[i]] = this.codes[i];
+                lengthBySymbol[this.symbols[i]] = (byte) this.lengths[i];
+            }
+        } else {
+            this.codeBySymbol = new long[0];
+            this.lengthBySymbol = new byte[0];
+            int slots = Integer.highestOneBit(Math.max(1, n)) << 2;
+            this.slotSymbols = new int[slots];
+            this.slotIndex = new int[slots];
+            Arrays.fill(slotSymbols, -1);
+            for (int i = 0; i < n; i++) {
+                int slot = slot(this.symbols[i]);
+                if (slotSymbols[slot] == this.symbols[i]) {
+                    throw new IllegalArgumentException("Duplicate symbol " + this.symbols[i]);
+                }
+                slotSymbols[slot] = this.symbols[i];
+                slotIndex[slot] = i;
+            }
+        }
+    }
+
+    // Hash slot holding symbol, or the free slot where it would go
+    private int slot(int symbol) {
+        int mask = slotSymbols.length - 1;
+        int slot = (symbol * 0x9E3779B1 >>> 16) & mask;
+        while (slotSymbols[slot] != symbol && slotSymbols[slot] != -1) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    // Index in canonical order, -1 if the symbol has no code
+    private int indexOf(int symbol) {
+        if (symbol < 0) { return -1; }
+        int slot = slot(symbol);
+        return slotSymbols[slot] == symbol ? slotIndex[slot] : -1;
+    }
+
+    public static CodeBook fromLengths(int[] symbols, int[] lengths) {
+        if (symbols.length != lengths.length) {
+            throw new IllegalArgumentException("Got " + symbols.length + " symbols but " + lengths.length + " lengths");
+        }
+        return new CodeBook(symbols, lengths);
+    }
+
+    public static CodeBook fromLengths(Map<Character, Integer> lengths) {
+        int[] symbols = new int[lengths.size()];
+        int[] lens = new int[lengths.size()];
+        int i = 0;
+        for (Map.Entry<Character, Integer> entry : lengths.entrySet()) {
+            symbols[i] = entry.getKey();
+            lens[i] = entry.getValue();
+            i++;
+        }
+        return new CodeBook(symbols, lens);
+    }
+
+    public int size() { return symbols.length; }
+
+    public int getMaxLength() { return maxLength; }
+
+    public int getMaxSymbol() { return maxSymbol; }
+
+    public int symbolAt(int index) { return symbols[index]; }
+
+    public int lengthAt(int index) { return lengths[index]; }
+
+    public long codeAt(int index) { return codes[index]; }
+
+    public boolean contains(int symbol) {
+        return lengthOf(symbol) != 0;
+    }
+
+    // Code length for a symbol, 0 if it has no code
+    public int lengthOf(int symbol) {
+        if (slotSymbols == null) {
+            return symbol >= 0 && symbol < lengthBySymbol.length ? lengthBySymbol[symbol] : 0;
+        }
+        int index = indexOf(symbol);
+        return index < 0 ? 0 : lengths[index];
+    }
+
+    public long codeOf(int symbol) {
+        return slotSymbols == null ? codeBySymbol[symbol] : codes[indexOf(symbol)];
+    }
+
+    public boolean isSparse() { return slotSymbols != null; }
+
+    public void encodeSymbol(BitWriter writer, int symbol) {
+        int length = lengthOf(symbol);
+        if (length == 0) {
+            throw new IllegalArgumentException("No code for symbol " + symbol);
+        }
+        writer.write(codeOf(symbol), length);
+    }
+
+    // Racing threads may each build one; the tables are immutable, so any of them is fine to keep
+    public HuffmanTableDecoder decoder() {
+        HuffmanTableDecoder d = decoder;
+        if (d == null) {
+            d = new HuffmanTableDecoder(symbols, codes, lengths);
+            decoder = d;
+        }
+        return d;
+    }
+
+    public String codeString(int index) {
+        String bits = Long.toBinaryString(codes[index]);
+        return "0".repeat(lengths[index] - bits.length()) + bits;
+    }
+
+    public Map<Character, String> toCodeMap() {
+        Map<Character, String> map = new HashMap<>();
+        for (int i = 0; i < symbols.length; i++) {
+            map.put((char) symbols[i], codeString(i));
+        }
+        return map;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof CodeBook)) { return false; }
+        CodeBook other = (CodeBook) o;
+        return Arrays.equals(symbols, other.symbols) && Arrays.equals(lengths, other.lengths);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(symbols) * 31 + Arrays.hashCode(lengths);
+    }
+
+    @Override
+    public String toString() {
+        return "CodeBook(" + symbols.length + " symbols, max length " + maxLength + ")";
+    }
+}
@@ -0,0 +1,86 @@
+import java.util.*;
+
+/**
+ * LRU cache of built code tables keyed by a histogram fingerprint, so
+ * messages with the same shape of symbol distribution reuse one table instead
+ * of building a tree each time.
+ *
+ * The fingerprint is the set of symbols present together with each count
+ * rounded down to a power of two. Every message with a given fingerprint has
+ * exactly the cached table's symbols, so the table always covers it, and the
+ * counts it was built from are within a factor of two of the message's own.
+ */
+public final class CodeBookCache {
+    private final int capacity;
+    private final LinkedHashMap<Fingerprint, CodeBook> entries;
+    private long hits;
+    private long misses;
+
+    public CodeBookCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Cache capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<Fingerprint, CodeBook>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Fingerprint, CodeBook> eldest) {
+                return size() > CodeBookCache.this.capacity;
+            }
+        };
+    }
+
+    // Cached table for counts built under the given length cap, or null
+    public synchronized CodeBook get(Histogram counts, int maxCodeLength) {
+        CodeBook book = entries.get(Fingerprint.of(counts, maxCodeLength));
+        if (book == null) misses++; else hits++;
+        return book;
+    }
+
+    public synchronized void put(Histogram counts, int maxCodeLength, CodeBook book) {
+        entries.put(Fingerprint.of(counts, maxCodeLength), book);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() { return entries.size(); }
+
+    public int getCapacity() { return capacity; }
+
+    public synchronized long getHits() { return hits; }
+
+    public synchronized long getMisses() { return misses; }
+
+
+    static final class Fingerprint {
+        private final int[] key;      // (symbol << 6 | floor(log2 count)) per present symbol, then the cap
+        private final int hash;
+
+        private Fingerprint(int[] key) {
+            this.key = key;
+            this.hash = Arrays.hashCode(key);
+        }
+
+        static Fingerprint of(Histogram histogram, int maxCodeLength) {
+            int[] counts = histogram.counts();
+            int[] key = new int[histogram.distinctSymbols() + 1];
+            int n = 0;
+            for (int s = 0; s < counts.length; s++) {
+                if (counts[s] != 0) {
+                    key[n++] = s << 6 | (31 - Integer.numberOfLeadingZeros(counts[s]));
+                }
+            }
+            key[n] = maxCodeLength;
+            return new Fingerprint(key);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Fingerprint && Arrays.equals(key, ((Fingerprint) o).key);
+        }
+
+        @Override
+        public int hashCode() { return hash; }
+    }
+}
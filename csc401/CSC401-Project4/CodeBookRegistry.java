@@ -0,0 +1,117 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Named, pre-trained code tables. A table is trained once from a sample
+ * corpus, saved, and loaded by name wherever messages are encoded, so short
+ * messages need no tree build and no table in their output.
+ *
+ * Training gives every symbol of the base alphabet a pseudo-count of one, so
+ * a trained table can encode any Latin-1 text even if the corpus never
+ * contained some of its characters.
+ *
+ * File layout: int magic, byte version, UTF name, int symbolCount,
+ * (char symbol, byte length)*
+ */
+public final class CodeBookRegistry {
+    static final int TABLE_MAGIC = 0x48554654; // "HUFT"
+    static final byte TABLE_VERSION = 1;
+    public static final int LATIN1_ALPHABET = 256;
+    public static final int DEFAULT_MAX_LENGTH = 15;
+
+    private final Map<String, CodeBook> books = new LinkedHashMap<>();
+
+    public static CodeBook train(Iterable<String> corpus) {
+        return train(corpus, LATIN1_ALPHABET, DEFAULT_MAX_LENGTH);
+    }
+
+    // Symbols below alphabetSize always get a code; maxLength caps the longest code
+    public static CodeBook train(Iterable<String> corpus, int alphabetSize, int maxLength) {
+        int[] counts = new int[Math.max(alphabetSize, 1)];
+        Arrays.fill(counts, 0, alphabetSize, 1);
+        for (String sample : corpus) {
+            int[] sampleCounts = Histogram.ofChars(sample).counts();
+            if (sampleCounts.length > counts.length) {
+                counts = Arrays.copyOf(counts, sampleCounts.length);
+            }
+            for (int s = 0; s < sampleCounts.length; s++) {
+                counts[s] += sampleCounts[s];
+            }
+        }
+        return HuffmanTree.build(counts).toCodeBook(maxLength);
+    }
+
+    public synchronized void register(String name, CodeBook book) {
+        books.put(Objects.requireNonNull(name, "name"), Objects.requireNonNull(book, "book"));
+    }
+
+    // Registered table, or null
+    public synchronized CodeBook get(String name) {
+        return books.get(name);
+    }
+
+    public synchronized Set<String> names() {
+        return new LinkedHashSet<>(books.keySet());
+    }
+
+    public void save(String name, String filename) throws IOException {
+        CodeBook book = get(name);
+        if (book == null) {
+            throw new IllegalArgumentException("No code table named " + name);
+        }
+        checkCharSymbols(name, book);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)))) {
+            write(out, name, book);
+        }
+    }
+
+    // Loads a saved table, registers it under its stored name and returns that name
+    public String load(String filename) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)))) {
+            if (in.readInt() != TABLE_MAGIC) {
+                throw new IOException(filename + " is not a Huffman code table");
+            }
+            byte version = in.readByte();
+            if (version != TABLE_VERSION) {
+                throw new IOException("Unsupported table version " + version);
+            }
+            String name = in.readUTF();
+            int symbolCount = in.readInt();
+            if (symbolCount < 0 || symbolCount > 65536) {
+                throw new IOException("Corrupt table: " + symbolCount + " symbols");
+            }
+            int[] symbols = new int[symbolCount];
+            int[] lengths = new int[symbolCount];
+            for (int i = 0; i < symbolCount; i++) {
+                symbols[i] = in.readChar();
+                lengths[i] = in.readByte();
+            }
+            try {
+                register(name, CodeBook.fromLengths(symbols, lengths));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Corrupt table " + name + ": " + e.getMessage());
+            }
+            return name;
+        }
+    }
+
+    // Symbols are stored as chars, so a table with a code point above 0xFFFF cannot be saved
+    static void checkCharSymbols(String name, CodeBook book) {
+        if (book.getMaxSymbol() > Character.MAX_VALUE) {
+            throw new IllegalArgumentException("Table " + name + " has symbol " + book.getMaxSymbol()
+                    + ", above the 0xFFFF a saved table can hold");
+        }
+    }
+
+    static void write(DataOutput out, String name, CodeBook book) throws IOException {
+        checkCharSymbols(name, book);
+        out.writeInt(TABLE_MAGIC);
+        out.writeByte(TABLE_VERSION);
+        out.writeUTF(name);
+        out.writeInt(book.size());
+        for (int i = 0; i < book.size(); i++) {
+            out.writeChar(book.symbolAt(i));
+            out.writeByte(book.lengthAt(i));
+        }
+    }
+}
@@ -0,0 +1,90 @@
+import jdk.jfr.*;
+
+/**
+ * JFR event for one HuffmanCoding encode or decode call, carrying the same
+ * figures as CompressionMetrics. Enable "huffman.Compression" in a
+ * recording (or run with -XX:StartFlightRecording) to collect them; when the
+ * event is disabled only the begin timestamp is taken.
+ *
+ * Only CompressionMetrics touches this class, and only when the jdk.jfr module
+ * is present, so runtimes built without JFR never load it.
+ */
+@Name("huffman.Compression")
+@Label("Huffman Compression")
+@Category("Huffman")
+@Description("One HuffmanCoding encode or decode call, with time per phase")
+@StackTrace(false)
+final class CompressionEvent extends Event {
+    @Label("Operation")
+    String operation;
+
+    @Label("Symbols")
+    long symbols;
+
+    @Label("Encoded Size")
+    @DataAmount(DataAmount.BITS)
+    long encodedBits;
+
+    @Label("Frequency Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long frequencyNanos;
+
+    @Label("Tree Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long treeNanos;
+
+    @Label("Codes Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long codesNanos;
+
+    @Label("Encode Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long encodeNanos;
+
+    @Label("Decode Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long decodeNanos;
+
+    @Label("Entropy")
+    @Description("Shannon entropy of the input in bits per symbol, NaN without a histogram")
+    double entropy;
+
+    @Label("Average Code Length")
+    double averageCodeLength;
+
+    @Label("Max Code Length")
+    int maxCodeLength;
+
+    @Label("Table Symbols")
+    int tableSymbols;
+
+    @Label("Allocated")
+    @DataAmount(DataAmount.BYTES)
+    long allocatedBytes;
+
+    static Object started() {
+        CompressionEvent event = new CompressionEvent();
+        event.begin();
+        return event;
+    }
+
+    static void finish(Object started, CompressionMetrics metrics) {
+        CompressionEvent event = (CompressionEvent) started;
+        event.end();
+        if (!event.shouldCommit()) { return; }
+        event.operation = metrics.getOperation();
+        event.symbols = metrics.getSymbols();
+        event.encodedBits = metrics.getEncodedBits();
+        event.frequencyNanos = metrics.getPhaseNanos(CompressionMetrics.Phase.FREQUENCY);
+        event.treeNanos = metrics.getPhaseNanos(CompressionMetrics.Phase.TREE);
+        event.codesNanos = metrics.getPhaseNanos(CompressionMetrics.Phase.CODES);
+        event.encodeNanos = metrics.getPhaseNanos(CompressionMetrics.Phase.ENCODE);
+        event.decodeNanos = metrics.getPhaseNanos(CompressionMetrics.Phase.DECODE);
+        event.entropy = metrics.getEntropy();
+        event.averageCodeLength = metrics.getAverageCodeLength();
+        event.maxCodeLength = metrics.getMaxCodeLength();
+        event.tableSymbols = metrics.getTableSymbols();
+        event.allocatedBytes = metrics.getAllocatedBytes();
+        event.commit();
+    }
+}
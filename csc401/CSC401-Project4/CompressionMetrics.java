@@ -0,0 +1,144 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measurements from one HuffmanCoding encode or decode call: nanoseconds
+ * spent in each phase, plus what the code achieved. The phases are counting
+ * symbol frequencies, building the tree, deriving the codes, and writing or
+ * reading the bits. The code figures are the Shannon entropy of the input,
+ * the average and longest code length, the table size, and the bytes the
+ * calling thread allocated.
+ *
+ * Each finished record goes to the HuffmanCoding's listener, if one is set.
+ * It is also committed as a "huffman.Compression" JFR event whenever a
+ * recording has that event enabled, so production latency can be attributed
+ * to a phase without attaching a profiler.
+ */
+public final class CompressionMetrics {
+    public enum Phase { FREQUENCY, TREE, CODES, ENCODE, DECODE }
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean ALLOCATION_COUNTER = THREADS instanceof com.sun.management.ThreadMXBean
+            && ((com.sun.management.ThreadMXBean) THREADS).isThreadAllocatedMemorySupported();
+    private static final boolean JFR_AVAILABLE = ModuleLayer.boot().findModule("jdk.jfr").isPresent();
+
+    private final String operation;
+    private final long[] phaseNanos = new long[Phase.values().length];
+    private final long startNanos;
+    private final long startAllocated;
+    private final Object event;         // CompressionEvent, or null when JFR is missing
+    private long totalNanos;
+    private long symbols;
+    private long encodedBits;
+    private double entropy = Double.NaN;
+    private int maxCodeLength;
+    private int tableSymbols;
+    private long decoderTableBytes;
+    private long allocatedBytes = -1;
+
+    private CompressionMetrics(String operation) {
+        this.operation = operation;
+        this.event = JFR_AVAILABLE ? CompressionEvent.started() : null;
+        this.startAllocated = allocatedSoFar();
+        this.startNanos = System.nanoTime();
+    }
+
+    static CompressionMetrics start(String operation) {
+        return new CompressionMetrics(operation);
+    }
+
+    // Adds the time since `since` (a System.nanoTime value) to the phase and returns the current time
+    long record(Phase phase, long since) {
+        long now = System.nanoTime();
+        phaseNanos[phase.ordinal()] += now - since;
+        return now;
+    }
+
+    // Completes the record; counts are per symbol in any order, or null when no histogram was taken (static tables)
+    CompressionMetrics finish(CodeBook book, int[] counts, long symbols, long encodedBits) {
+        this.totalNanos = System.nanoTime() - startNanos;
+        long allocatedNow = allocatedSoFar();
+        this.allocatedBytes = allocatedNow < 0 ? -1 : allocatedNow - startAllocated;
+        this.symbols = symbols;
+        this.encodedBits = encodedBits;
+        if (book != null) {
+            this.maxCodeLength = book.getMaxLength();
+            this.tableSymbols = book.size();
+            if (operation.equals("decode")) {
+                this.decoderTableBytes = book.decoder().getTableBytes();
+            }
+        }
+        if (counts != null) {
+            this.entropy = entropy(counts);
+        }
+        if (event != null) {
+            CompressionEvent.finish(event, this);
+        }
+        return this;
+    }
+
+    private static double entropy(int[] counts) {
+        long total = 0;
+        for (int count : counts) { total += count; }
+        double bits = 0;
+        for (int count : counts) {
+            if (count != 0) {
+                bits += count * (Math.log((double) total / count) / Math.log(2));
+            }
+        }
+        return total == 0 ? 0 : bits / total;
+    }
+
+    private static long allocatedSoFar() {
+        return ALLOCATION_COUNTER
+                ? ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId())
+                : -1;
+    }
+
+    public String getOperation() { return operation; }
+
+    public long getPhaseNanos(Phase phase) { return phaseNanos[phase.ordinal()]; }
+
+    public long getTotalNanos() { return totalNanos; }
+
+    public long getSymbols() { return symbols; }
+
+    public long getEncodedBits() { return encodedBits; }
+
+    // Shannon entropy in bits per symbol, NaN when the call took no histogram
+    public double getEntropy() { return entropy; }
+
+    public double getAverageCodeLength() {
+        return symbols == 0 ? 0.0 : (double) encodedBits / symbols;
+    }
+
+    public int getMaxCodeLength() { return maxCodeLength; }
+
+    public int getTableSymbols() { return tableSymbols; }
+
+    // Lookup table size of the decoder, only known after a decode
+    public long getDecoderTableBytes() { return decoderTableBytes; }
+
+    // Bytes allocated by the calling thread during the call, -1 if the JVM cannot tell
+    public long getAllocatedBytes() { return allocatedBytes; }
+
+    @Override
+    public String toString() {
+        StringBuilder phases = new StringBuilder();
+        for (Phase phase : Phase.values()) {
+            if (phaseNanos[phase.ordinal()] > 0) {
+                phases.append(String.format("%n  %-9s %,12d ns", phase.name().toLowerCase(), phaseNanos[phase.ordinal()]));
+            }
+        }
+        return String.format(
+                "Operation: %s (%,d ns)%s%n" +
+                "Entropy: %s%n" +
+                "Average code length: %.4f bits (longest: %d)%n" +
+                "Table: %d symbols%s%n" +
+                "Allocated: %,d bytes",
+                operation, totalNanos, phases,
+                Double.isNaN(entropy) ? "n/a" : String.format("%.4f bits/symbol", entropy), getAverageCodeLength(), maxCodeLength, tableSymbols,
+                decoderTableBytes > 0 ? String.format(", %,d decoder bytes", decoderTableBytes) : "",
+                allocatedBytes);
+    }
+}
@@ -0,0 +1,237 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Order-1 context-modeled Huffman coding: each symbol is coded with a table
+ * chosen by the symbol before it, so the "u" after "q" or the space after a
+ * period costs far fewer bits than under one global table.
+ *
+ * A context only gets its own table when that table pays for itself: its
+ * estimated payload saving over the global table must exceed the bytes needed
+ * to store it. Every other context falls back to the global table, which also
+ * codes the first symbol. Alphabets above MAX_CONTEXT_ALPHABET symbols use the
+ * global table alone.
+ *
+ * Context tables only list symbols that appear in the global table, so their
+ * entries are stored as gaps between global table indices (mostly one byte
+ * each) followed by the code length.
+ *
+ * Block layout:
+ *   int length, short globalCount, (char symbol, byte length)*,
+ *   varint contextCount, per context: varint context index gap, varint entries,
+ *   (varint symbol index gap, byte length)*, payload bits
+ */
+public class ContextHuffman {
+    public static final int MAX_CONTEXT_ALPHABET = 1024;
+
+    private final HuffmanCoding huffman;
+    private int contextTables;
+
+    public ContextHuffman() {
+        this.huffman = new HuffmanCoding();
+    }
+
+    public byte[] encode(String text) {
+        int length = text.length();
+        Histogram counts = Histogram.ofChars(text);
+        CodeBook global = huffman.buildCodeBook(counts.counts());
+
+        // Dense index of each symbol in canonical order of the global table
+        int[] indexOf = new int[Math.max(global.getMaxSymbol() + 1, 1)];
+        for (int i = 0; i < global.size(); i++) {
+            indexOf[global.symbolAt(i)] = i;
+        }
+
+        int n = global.size();
+        CodeBook[] byContext = new CodeBook[n];
+        ByteArrayOutputStream contexts = new ByteArrayOutputStream();
+        contextTables = 0;
+        if (n > 1 && n <= MAX_CONTEXT_ALPHABET) {
+            int[][] pairs = new int[n][n];
+            for (int i = 1; i < length; i++) {
+                pairs[indexOf[text.charAt(i - 1)]][indexOf[text.charAt(i)]]++;
+            }
+
+            int previousContext = 0;
+            for (int c = 0; c < n; c++) {
+                int[] row = pairs[c];
+                CodeBook table = worthwhileTable(row, global);
+                if (table == null) { continue; }
+
+                byContext[c] = table;
+                writeVarint(contexts, c - previousContext);
+                writeVarint(contexts, table.size());
+                previousContext = c;
+                int previousIndex = 0;
+                for (int s = 0; s < n; s++) {
+                    if (row[s] == 0) { continue; }
+                    writeVarint(contexts, s - previousIndex);
+                    contexts.write(table.lengthOf(s));
+                    previousIndex = s;
+                }
+                contextTables++;
+            }
+        }
+
+        BitWriter writer = new BitWriter(length * 8L);
+        int previous = -1;
+        for (int i = 0; i < length; i++) {
+            int index = indexOf[text.charAt(i)];
+            CodeBook table = previous >= 0 && byContext[previous] != null ? byContext[previous] : null;
+            if (table != null) {
+                table.encodeSymbol(writer, index);
+            } else {
+                char c = text.charAt(i);
+                writer.write(global.codeOf(c), global.lengthOf(c));
+            }
+            previous = index;
+        }
+        BitBuffer payload = writer.toBitBuffer();
+
+        ByteArrayOutputStream contextCount = new ByteArrayOutputStream();
+        writeVarint(contextCount, contextTables);
+        ByteBuffer out = ByteBuffer.allocate(4 + 2 + 3 * n + contextCount.size() + contexts.size() + payload.getByteLength());
+        out.putInt(length);
+        out.putShort((short) n);
+        for (int i = 0; i < n; i++) {
+            out.putChar((char) global.symbolAt(i));
+            out.put((byte) global.lengthAt(i));
+        }
+        out.put(contextCount.toByteArray());
+        out.put(contexts.toByteArray());
+        out.put(payload.toByteArray());
+        return out.array();
+    }
+
+    // Table over global indices for one context, or null if the global table is as cheap once the header is paid
+    private CodeBook worthwhileTable(int[] row, CodeBook global) {
+        int distinct = 0;
+        long globalBits = 0;
+        for (int s = 0; s < row.length; s++) {
+            if (row[s] != 0) {
+                distinct++;
+                globalBits += (long) row[s] * global.lengthAt(s);
+            }
+        }
+        if (distinct == 0) { return null; }
+
+        CodeBook table = huffman.buildCodeBook(row);
+        long contextBits = 0;
+        for (int s = 0; s < row.length; s++) {
+            contextBits += (long) row[s] * table.lengthOf(s);
+        }
+        long headerBits = 8L * (2 + 2 * distinct);
+        return contextBits + headerBits < globalBits ? table : null;
+    }
+
+    public String decode(byte[] block) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(block);
+        try {
+            int length = in.getInt();
+            int n = in.getShort() & 0xFFFF;
+            if (length < 0 || (length > 0 && n == 0)) {
+                throw new IOException("Corrupt context block header");
+            }
+            if (length == 0) { return ""; }
+
+            int[] symbols = new int[n];
+            int[] lengths = new int[n];
+            for (int i = 0; i < n; i++) {
+                symbols[i] = in.getChar();
+                lengths[i] = in.get();
+            }
+            CodeBook global = CodeBook.fromLengths(symbols, lengths);
+            int[] indexOf = new int[global.getMaxSymbol() + 1];
+            for (int i = 0; i < n; i++) {
+                indexOf[global.symbolAt(i)] = i;
+            }
+
+            HuffmanTableDecoder[] byContext = new HuffmanTableDecoder[n];
+            int contextCount = readVarint(in);
+            int context = 0;
+            for (int k = 0; k < contextCount; k++) {
+                context += readVarint(in);
+                int entries = readVarint(in);
+                if (context >= n || entries <= 0 || entries > n) {
+                    throw new IOException("Corrupt context table " + k);
+                }
+                int[] members = new int[entries];
+                int[] memberLengths = new int[entries];
+                int index = 0;
+                for (int e = 0; e < entries; e++) {
+                    index += readVarint(in);
+                    if (index >= n) { throw new IOException("Corrupt context table " + k); }
+                    members[e] = index;
+                    memberLengths[e] = in.get();
+                }
+                byContext[context] = CodeBook.fromLengths(members, memberLengths).decoder();
+            }
+
+            HuffmanTableDecoder globalDecoder = global.decoder();
+            int payloadBytes = in.remaining();
+            byte[] payload = new byte[payloadBytes];
+            in.get(payload);
+            BitReader reader = new BitReader(BitBuffer.fromByteArray(payload, payloadBytes * 8L));
+
+            char[] out = new char[length];
+            int previous = -1;
+            for (int i = 0; i < length; i++) {
+                HuffmanTableDecoder decoder = previous >= 0 ? byContext[previous] : null;
+                int index;
+                if (decoder != null) {
+                    index = decoder.decodeSymbol(reader);
+                    out[i] = (char) global.symbolAt(index);
+                } else {
+                    out[i] = (char) globalDecoder.decodeSymbol(reader);
+                    index = indexOf[out[i]];
+                }
+                previous = index;
+            }
+            if (reader.position() > payloadBytes * 8L) {
+                throw new IOException("Truncated context block payload");
+            }
+            return new String(out);
+        } catch (IllegalArgumentException | java.nio.BufferUnderflowException e) {
+            throw new IOException("Corrupt context block: " + e.getMessage());
+        }
+    }
+
+    // Number of contexts that got their own table in the last encode
+    public int getContextTables() { return contextTables; }
+
+    public CompressionStats getCompressionStats(String originalText, byte[] block) {
+        int originalBits = originalText.length() * 8;
+        int encodedBits = block.length * 8;
+        double compressionRatio = originalBits > 0 ? (1.0 - (double)encodedBits / originalBits) * 100 : 0.0;
+
+        CompressionStats stats = new CompressionStats(
+                originalText.length(),
+                originalBits,
+                encodedBits,
+                compressionRatio,
+                originalBits - encodedBits
+                );
+        stats.packedBytes = block.length;
+        return stats;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(ByteBuffer in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) { return value; }
+        }
+        throw new IOException("Corrupt varint");
+    }
+}
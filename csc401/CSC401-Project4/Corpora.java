@@ -0,0 +1,125 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Generated test corpora shared by HuffmanTest, HuffmanBenchmark and
+ * HuffmanLoadGenerator. Every generator is seeded, so a profile and size
+ * always give the same bytes, and a smaller size is a prefix of a larger one.
+ *
+ *   log        generated log lines, timestamps and request ids
+ *   english    letters and spaces drawn with English frequencies
+ *   fibonacci  Fibonacci counts, giving the deepest possible codes
+ *   random     uniform random bytes
+ */
+public final class Corpora {
+    static final String[] PROFILES = {"log", "english", "fibonacci", "random"};
+
+    private Corpora() { }
+
+    // Corpus for a profile, `size` bytes long
+    public static byte[] corpus(String profile, int size) throws IOException {
+        switch (profile) {
+            case "log":
+                return generatedLog(size).readAllBytes();
+            case "english": {
+                Map<Character, Integer> frequencies = getStandardFrequencies(1000);
+                List<Character> symbols = new ArrayList<>(new TreeMap<>(frequencies).keySet());
+                int[] cumulative = new int[symbols.size()];
+                int total = 0;
+                for (int i = 0; i < symbols.size(); i++) {
+                    total += frequencies.get(symbols.get(i));
+                    cumulative[i] = total;
+                }
+                Random random = new Random(401);
+                byte[] data = new byte[size];
+                for (int i = 0; i < size; i++) {
+                    int pick = Arrays.binarySearch(cumulative, random.nextInt(total) + 1);
+                    data[i] = (byte) (char) symbols.get(pick < 0 ? -pick - 1 : pick);
+                }
+                return data;
+            }
+            case "fibonacci":
+                return tile(fibonacciText(20).getBytes(StandardCharsets.ISO_8859_1), size);
+            case "random": {
+                byte[] data = new byte[size];
+                new Random(401).nextBytes(data);
+                return data;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown profile " + profile + ", expected one of " + Arrays.toString(PROFILES));
+        }
+    }
+
+    private static byte[] tile(byte[] pattern, int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i += pattern.length) {
+            System.arraycopy(pattern, 0, data, i, Math.min(pattern.length, size - i));
+        }
+        return data;
+    }
+
+    // Endless log-like text, cut off after `size` bytes
+    public static InputStream generatedLog(long size) {
+        return new InputStream() {
+            private final Random random = new Random(401);
+            private final String[] levels = {"INFO", "INFO", "INFO", "DEBUG", "WARN", "ERROR"};
+            private byte[] line = new byte[0];
+            private int index = 0;
+            private long produced = 0;
+
+            @Override
+            public int read() {
+                if (produced >= size) { return -1; }
+                if (index == line.length) {
+                    line = String.format("2025-10-%02d %02d:%02d:%02d %s worker-%d request %d took %d ms%n",
+                        1 + random.nextInt(28), random.nextInt(24), random.nextInt(60), random.nextInt(60),
+                        levels[random.nextInt(levels.length)], random.nextInt(16),
+                        random.nextInt(1000000), random.nextInt(5000)).getBytes();
+                    index = 0;
+                }
+                produced++;
+                return line[index++] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (produced >= size) { return -1; }
+                int n = 0;
+                while (n < len && produced < size) {
+                    b[off + n++] = (byte) read();
+                }
+                return n;
+            }
+        };
+    }
+
+    // Text whose character counts follow the Fibonacci sequence, giving maximally deep codes
+    public static String fibonacciText(int symbols) {
+        StringBuilder sb = new StringBuilder();
+        int a = 1, b = 1;
+        for (int i = 0; i < symbols; i++) {
+            sb.append(String.valueOf((char) ('A' + i)).repeat(a));
+            int next = a + b;
+            a = b;
+            b = next;
+        }
+        return sb.toString();
+    }
+
+    // Standard English letter and space frequencies, scaled to a text of textLength chars
+    public static Map<Character, Integer> getStandardFrequencies(int textLength) {
+        Map<Character, Double> standardProbs = new HashMap<>();
+        standardProbs.put('e', 0.127); standardProbs.put('t', 0.091);
+        standardProbs.put('a', 0.082); standardProbs.put('o', 0.075);
+        standardProbs.put('i', 0.070); standardProbs.put('n', 0.067);
+        standardProbs.put('s', 0.063); standardProbs.put(' ', 0.183);
+
+        Map<Character, Integer> scaled = new HashMap<>();
+        for (Map.Entry<Character, Double> entry : standardProbs.entrySet()) {
+            scaled.put(entry.getKey(),
+                Math.max(1, (int)(entry.getValue() * textLength)));
+        }
+        return scaled;
+    }
+}
@@ -0,0 +1,87 @@
+import java.io.*;
+
+/**
+ * A byte-oriented entropy coder split into its stages: count the symbols,
+ * build a coding table from the counts, then encode or decode with that table.
+ * The table type T is specific to each coder (a CodeBook for Huffman, state
+ * tables for tANS), and each coder knows how to store its own table.
+ *
+ * compress and decompress chain the stages into one self-contained block:
+ *   int length, table, int payloadBytes, payload
+ */
+public interface EntropyCodec<T> {
+
+    String getName();
+
+    default Histogram histogram(byte[] data) {
+        return Histogram.ofBytes(data);
+    }
+
+    T buildTable(Histogram counts);
+
+    void writeTable(T table, DataOutput out) throws IOException;
+
+    T readTable(DataInput in) throws IOException;
+
+    BitBuffer encode(T table, byte[] data);
+
+    // Decodes exactly `length` symbols
+    byte[] decode(T table, BitBuffer encoded, int length) throws IOException;
+
+    default byte[] compress(byte[] data) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 2 + 16);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(data.length);
+            if (data.length > 0) {
+                T table = buildTable(histogram(data));
+                writeTable(table, out);
+                BitBuffer payload = encode(table, data);
+                out.writeInt(payload.getByteLength());
+                out.write(payload.toByteArray());
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    default byte[] decompress(byte[] block) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(block));
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Corrupt block length " + length);
+        }
+        if (length == 0) { return new byte[0]; }
+
+        T table = readTable(in);
+        int payloadBytes = in.readInt();
+        if (payloadBytes < 0 || payloadBytes > in.available()) {
+            throw new IOException("Corrupt payload length " + payloadBytes);
+        }
+        byte[] payload = new byte[payloadBytes];
+        in.readFully(payload);
+        return decode(table, BitBuffer.fromByteArray(payload, payloadBytes * 8L), length);
+    }
+
+    default CompressionStats getCompressionStats(byte[] data, byte[] block) {
+        int originalBits = data.length * 8;
+        int encodedBits = block.length * 8;
+        double compressionRatio = originalBits > 0 ? (1.0 - (double)encodedBits / originalBits) * 100 : 0.0;
+
+        CompressionStats stats = new CompressionStats(
+                data.length,
+                originalBits,
+                encodedBits,
+                compressionRatio,
+                originalBits - encodedBits
+                );
+        stats.codec = getName();
+        stats.packedBytes = block.length;
+        // The codecs keep no running counters, so there are no bit totals to report
+        stats.bitsWritten = CompressionStats.UNMEASURED;
+        stats.bitsRead = CompressionStats.UNMEASURED;
+        return stats;
+    }
+}
@@ -0,0 +1,194 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Symbol counts kept in a plain int[] indexed by symbol, instead of a
+ * HashMap<Character, Integer> that boxes every character.
+ *
+ * Single-threaded counting spreads increments over four stripes so runs of
+ * the same symbol do not serialize on one counter; large inputs are split
+ * into slices counted on separate threads and merged at the end.
+ */
+public final class Histogram {
+    static final int PARALLEL_THRESHOLD = 1 << 22;
+    private static final int STRIPES = 4;
+
+    private final int[] counts;
+
+    private Histogram(int[] counts) {
+        this.counts = counts;
+    }
+
+    public static Histogram wrap(int[] counts) {
+        return new Histogram(counts);
+    }
+
+    public static Histogram ofMap(Map<Character, Integer> frequencies) {
+        int max = -1;
+        for (char c : frequencies.keySet()) { max = Math.max(max, c); }
+        int[] counts = new int[max + 1];
+        for (Map.Entry<Character, Integer> entry : frequencies.entrySet()) {
+            counts[entry.getKey()] = entry.getValue();
+        }
+        return new Histogram(counts);
+    }
+
+    public static Histogram ofBytes(byte[] data) {
+        return ofBytes(data, 0, data.length);
+    }
+
+    public static Histogram ofBytes(byte[] data, int offset, int length) {
+        int[] counts = new int[256];
+        countBytes(data, offset, length, counts);
+        return new Histogram(counts);
+    }
+
+    public static Histogram ofChars(CharSequence text) {
+        return new Histogram(countChars(text, 0, text.length()));
+    }
+
+    // Counting slices on `pool`; falls back to one thread for small inputs
+    public static Histogram ofBytesParallel(byte[] data, ForkJoinPool pool) {
+        if (data.length < PARALLEL_THRESHOLD || pool.getParallelism() == 1) {
+            return ofBytes(data);
+        }
+        List<Callable<int[]>> slices = new ArrayList<>();
+        for (int[] range : slices(data.length, pool.getParallelism())) {
+            slices.add(() -> {
+                int[] counts = new int[256];
+                countBytes(data, range[0], range[1] - range[0], counts);
+                return counts;
+            });
+        }
+        return new Histogram(merge(pool.invokeAll(slices), 256));
+    }
+
+    public static Histogram ofCharsParallel(CharSequence text, ForkJoinPool pool) {
+        if (text.length() < PARALLEL_THRESHOLD || pool.getParallelism() == 1) {
+            return ofChars(text);
+        }
+        List<Callable<int[]>> slices = new ArrayList<>();
+        for (int[] range : slices(text.length(), pool.getParallelism())) {
+            slices.add(() -> countChars(text, range[0], range[1]));
+        }
+        List<Future<int[]>> results = pool.invokeAll(slices);
+        int width = 0;
+        for (Future<int[]> result : results) {
+            width = Math.max(width, join(result).length);
+        }
+        return new Histogram(merge(results, width));
+    }
+
+    // Adds the byte counts of data[offset, offset + length) into counts[256]
+    public static void countBytes(byte[] data, int offset, int length, int[] counts) {
+        int[][] stripes = new int[STRIPES - 1][256];
+        int end = offset + length;
+        int i = offset;
+
+        for (; i + STRIPES <= end; i += STRIPES) {
+            counts[data[i] & 0xFF]++;
+            stripes[0][data[i + 1] & 0xFF]++;
+            stripes[1][data[i + 2] & 0xFF]++;
+            stripes[2][data[i + 3] & 0xFF]++;
+        }
+        for (; i < end; i++) {
+            counts[data[i] & 0xFF]++;
+        }
+
+        for (int s = 0; s < 256; s++) {
+            counts[s] += stripes[0][s] + stripes[1][s] + stripes[2][s];
+        }
+    }
+
+    // ASCII fast path: a 128-entry table until the first non-ASCII char, then the full char range
+    private static int[] countChars(CharSequence text, int from, int to) {
+        int[] ascii = new int[128];
+        int i = from;
+        for (; i < to; i++) {
+            char c = text.charAt(i);
+            if (c >= 128) { break; }
+            ascii[c]++;
+        }
+        if (i == to) {
+            return ascii;
+        }
+
+        int[] counts = new int[Character.MAX_VALUE + 1];
+        System.arraycopy(ascii, 0, counts, 0, 128);
+        for (; i < to; i++) {
+            counts[text.charAt(i)]++;
+        }
+        return counts;
+    }
+
+    private static List<int[]> slices(int length, int parallelism) {
+        int sliceCount = parallelism * 4;
+        int sliceSize = (length + sliceCount - 1) / sliceCount;
+        List<int[]> ranges = new ArrayList<>();
+        for (int from = 0; from < length; from += sliceSize) {
+            ranges.add(new int[]{from, Math.min(length, from + sliceSize)});
+        }
+        return ranges;
+    }
+
+    private static int[] merge(List<Future<int[]>> partials, int width) {
+        int[] merged = new int[width];
+        for (Future<int[]> partial : partials) {
+            int[] counts = join(partial);
+            for (int s = 0; s < counts.length; s++) {
+                merged[s] += counts[s];
+            }
+        }
+        return merged;
+    }
+
+    private static int[] join(Future<int[]> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while counting");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Counting slice failed", e.getCause());
+        }
+    }
+
+    public int count(int symbol) {
+        return symbol < counts.length ? counts[symbol] : 0;
+    }
+
+    public int[] counts() { return counts; }
+
+    // Highest symbol with a non-zero count, -1 if empty
+    public int maxSymbol() {
+        for (int s = counts.length - 1; s >= 0; s--) {
+            if (counts[s] != 0) { return s; }
+        }
+        return -1;
+    }
+
+    public int distinctSymbols() {
+        int distinct = 0;
+        for (int count : counts) {
+            if (count != 0) { distinct++; }
+        }
+        return distinct;
+    }
+
+    public long total() {
+        long total = 0;
+        for (int count : counts) { total += count; }
+        return total;
+    }
+
+    // Boxed view for the Map-based API
+    public Map<Character, Integer> asMap() {
+        Map<Character, Integer> map = new HashMap<>();
+        for (int s = 0; s < counts.length; s++) {
+            if (counts[s] != 0) {
+                map.put((char) s, counts[s]);
+            }
+        }
+        return map;
+    }
+}
@@ -2,87 +2,46 @@ import java.util.*;
 
 public class Huffman {
 
-    static class Node implements Comparable<Node> {
-        char character;
-        int frequency;
-        Node left, right;
-
-
-        Node(char c, int f) {
-            character = c;
-            frequency = f;
-        }
-
-        Node(int f) {
-            character = '\0';
-            frequency = f;
-        }
-
-        boolean isLeaf() { return left == null && right == null; }
-
-        @Override
-        public int compareTo(Node other) {
-            return this.frequency - other.frequency;
-        }
-    }
-
-
-    private Node root;
+    private HuffmanTree root;
     private Map<Character, String> codes;
+    private long[] codeBits;
+    private int[] codeLengths;
 
     public Huffman() { codes = new HashMap<>(); }
 
     public Map<Character, Integer> calculateFrequencies(String text) {
-        Map<Character, Integer> frequencies = new HashMap<>();
-        for (char c : text.toCharArray()) {
-            frequencies.put(c, frequencies.getOrDefault(c, 0) + 1);
-        }
-        return frequencies;
+        return Histogram.ofChars(text).asMap();
     }
 
-    public Node buildTree(Map<Character, Integer> frequencies) {
-        PriorityQueue<Node> pq = new PriorityQueue<>();
-
-        for (Map.Entry<Character, Integer> entry : frequencies.entrySet()) {
-            pq.offer(new Node(entry.getKey(), entry.getValue()));
-        }
-
-        if (pq.size() == 1) {
-            Node single = pq.poll();
-            Node newRoot = new Node(single.frequency);
-            newRoot.left = single;
-            return newRoot;
-        }
-
-        while (pq.size() > 1) {
-            Node left = pq.poll();
-            Node right = pq.poll();
-            Node parent = new Node(left.frequency + right.frequency);
-            parent.left = left;
-            parent.right = right;
-            pq.offer(parent);
-        }
-
-        return pq.poll();
+    public HuffmanTree buildTree(Map<Character, Integer> frequencies) {
+        return HuffmanTree.build(frequencies);
     }
 
-    private void generateCodes(Node node, String code) {
-        if (node == null) return;
-        if (node.isLeaf()) {
-            codes.put(node.character, code.isEmpty() ? "0" : code);
-            return;
+    // Codes are read off the tree arrays in one pass; no String concatenation per level
+    private void generateCodes(HuffmanTree tree) {
+        codes.clear();
+        int[] symbols = tree.leafSymbols();
+        long[] bits = tree.leafCodes();
+        int[] lengths = tree.leafCodeLengths();
+
+        int maxChar = 0;
+        for (int symbol : symbols) { maxChar = Math.max(maxChar, symbol); }
+        codeBits = new long[maxChar + 1];
+        codeLengths = new int[maxChar + 1];
+
+        for (int i = 0; i < symbols.length; i++) {
+            codeBits[symbols[i]] = bits[i];
+            codeLengths[symbols[i]] = lengths[i];
+            String code = Long.toBinaryString(bits[i]);
+            codes.put((char) symbols[i], "0".repeat(lengths[i] - code.length()) + code);
         }
-
-        generateCodes(node.left, code + "0");
-        generateCodes(node.right, code + "1");
     }
 
 
     private String encode(String text) {
         Map<Character, Integer> frequencies = calculateFrequencies(text);
         root = buildTree(frequencies);
-        codes.clear();
-        generateCodes(root, "");
+        generateCodes(root);
 
         StringBuilder encoded = new StringBuilder();
         for (char c : text.toCharArray()) {
@@ -91,16 +50,45 @@ public class Huffman {
         return encoded.toString();
     }
 
+    public BitBuffer encodePacked(String text) {
+        Map<Character, Integer> frequencies = calculateFrequencies(text);
+        root = buildTree(frequencies);
+        generateCodes(root);
+
+        BitWriter writer = new BitWriter(text.length() * 4L);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            writer.write(codeBits[c], codeLengths[c]);
+        }
+        return writer.toBitBuffer();
+    }
+
     public String decode(String encoded) {
         StringBuilder decoded = new StringBuilder();
-        Node current = root;
+        int current = root.getRoot();
 
         for (char bit : encoded.toCharArray()) {
-            current = (bit == '0') ? current.left : current.right;
+            current = (bit == '0') ? root.getLeft(current) : root.getRight(current);
 
-            if (current.isLeaf()) {
-                decoded.append(current.character);
-                current = root;
+            if (root.isLeaf(current)) {
+                decoded.append((char) root.getSymbol(current));
+                current = root.getRoot();
+            }
+        }
+        return decoded.toString();
+    }
+
+    public String decodePacked(BitBuffer encoded) {
+        StringBuilder decoded = new StringBuilder();
+        BitReader reader = new BitReader(encoded);
+        int current = root.getRoot();
+
+        while (reader.hasMore()) {
+            current = reader.readBit() ? root.getRight(current) : root.getLeft(current);
+
+            if (root.isLeaf(current)) {
+                decoded.append((char) root.getSymbol(current));
+                current = root.getRoot();
             }
         }
         return decoded.toString();
@@ -183,8 +171,7 @@ public class Huffman {
 
         Huffman huffmanStandard = new Huffman();
         huffmanStandard.root = huffmanStandard.buildTree(standardFreq);
-        huffmanStandard.codes.clear();
-        huffmanStandard.generateCodes(huffmanStandard.root, "");
+        huffmanStandard.generateCodes(huffmanStandard.root);
 
         StringBuilder encodedStandard = new StringBuilder();
         for (char c: text.toCharArray()) {
@@ -238,6 +225,10 @@ public class Huffman {
         System.out.println("Decoded: " + decoded);
         System.out.println("Success: " + text.equals(decoded));
         System.out.printf("Compression ratio: %.2f%%\n", huffman.getCompressionRatio(text, encoded));
+
+        BitBuffer packed = huffman.encodePacked(text);
+        System.out.println("Packed: " + packed.getBitLength() + " bits in " + packed.getByteLength() + " bytes");
+        System.out.println("Packed success: " + text.equals(huffman.decodePacked(packed)));
     }
 
 
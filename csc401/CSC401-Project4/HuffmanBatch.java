@@ -0,0 +1,208 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Many short records compressed together under one code table. Encoding a
+ * 100-byte record on its own spends more time building its tree than coding
+ * it, and its table is bigger than its bits. A batch counts every record into
+ * one histogram, builds one table and writes it once. The records are packed
+ * back to back after it, with no padding between them.
+ *
+ * An offset array gives the bit position of every record, so get(k) decodes
+ * record k alone. Because the codes are prefix-free, a record ends exactly
+ * where the next one starts and needs no length of its own.
+ *
+ * Layout:
+ *   int magic, byte version, int recordCount
+ *   int symbolCount, (char symbol, byte length)*
+ *   int bitOffset[recordCount + 1]     bitOffset[recordCount] is the body length
+ *   body                               packed bits, padded to a byte
+ *
+ * Offsets are ints, so one batch holds at most 2^31 - 1 bits (256 MB) of body.
+ */
+public final class HuffmanBatch {
+    static final int BATCH_MAGIC = 0x48554642; // "HUFB"
+    static final byte BATCH_VERSION = 1;
+    static final int HEADER_BYTES = 4 + 1 + 4 + 4;
+
+    private final CodeBook book;
+    private final int[] offsets;
+    private final BitBuffer body;
+
+    private HuffmanBatch(CodeBook book, int[] offsets, BitBuffer body) {
+        this.book = book;
+        this.offsets = offsets;
+        this.body = body;
+    }
+
+    // Counts of every char across the batch, indexed by char
+    public static Histogram histogram(Collection<? extends CharSequence> records) {
+        int[] counts = new int[256];
+        for (CharSequence record : records) {
+            for (int i = 0; i < record.length(); i++) {
+                char c = record.charAt(i);
+                if (c >= counts.length) {
+                    counts = Arrays.copyOf(counts, Math.max(c + 1, counts.length * 2));
+                }
+                counts[c]++;
+            }
+        }
+        return Histogram.wrap(counts);
+    }
+
+    // One table for the whole batch, no code longer than maxCodeLength bits (0 means no limit)
+    public static CodeBook codeBookFor(Collection<? extends CharSequence> records, int maxCodeLength) {
+        return HuffmanTree.build(histogram(records).counts()).toCodeBook(maxCodeLength);
+    }
+
+    public static byte[] encode(Collection<? extends CharSequence> records) {
+        return encode(codeBookFor(records, 0), records);
+    }
+
+    // The table is built after the whole stream is collected, so the stream must be finite
+    public static byte[] encode(Stream<? extends CharSequence> records) {
+        return encode(records.collect(Collectors.toList()));
+    }
+
+    // Encodes with a given table, e.g. a trained one; throws IllegalArgumentException if it lacks a code
+    public static byte[] encode(CodeBook book, Collection<? extends CharSequence> records) {
+        if (book.getMaxSymbol() > Character.MAX_VALUE) {
+            // The table is stored as chars
+            throw new IllegalArgumentException("Symbol " + book.getMaxSymbol() + " does not fit a batch table");
+        }
+        int[] offsets = new int[records.size() + 1];
+        BitWriter writer = new BitWriter();
+        int k = 0;
+        for (CharSequence record : records) {
+            HuffmanCodec.encode(book, record, writer);
+            if (writer.getBitLength() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Batch body exceeds 2^31 - 1 bits; split it into smaller batches");
+            }
+            offsets[++k] = (int) writer.getBitLength();
+        }
+        byte[] bits = writer.toBitBuffer().toByteArray();
+
+        ByteArrayOutputStream packed = new ByteArrayOutputStream(
+                HEADER_BYTES + 3 * book.size() + 4 * offsets.length + bits.length);
+        try (DataOutputStream out = new DataOutputStream(packed)) {
+            out.writeInt(BATCH_MAGIC);
+            out.writeByte(BATCH_VERSION);
+            out.writeInt(records.size());
+            out.writeInt(book.size());
+            for (int i = 0; i < book.size(); i++) {
+                out.writeChar(book.symbolAt(i));
+                out.writeByte(book.lengthAt(i));
+            }
+            for (int offset : offsets) {
+                out.writeInt(offset);
+            }
+            out.write(bits);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return packed.toByteArray();
+    }
+
+    // Parses the header and offsets; records are decoded only when asked for
+    public static HuffmanBatch open(byte[] packed) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(packed));
+        if (packed.length < HEADER_BYTES || in.readInt() != BATCH_MAGIC) {
+            throw new IOException("Not a Huffman batch");
+        }
+        byte version = in.readByte();
+        if (version != BATCH_VERSION) {
+            throw new IOException("Unsupported batch version " + version);
+        }
+        int recordCount = in.readInt();
+        int symbolCount = in.readInt();
+        if (symbolCount < 0 || symbolCount > 65536 || recordCount < 0
+                || HEADER_BYTES + 3L * symbolCount + 4L * (recordCount + 1L) > packed.length) {
+            throw new IOException("Corrupt batch header");
+        }
+
+        int[] symbols = new int[symbolCount];
+        int[] lengths = new int[symbolCount];
+        for (int i = 0; i < symbolCount; i++) {
+            symbols[i] = in.readChar();
+            lengths[i] = in.readByte();
+        }
+        CodeBook book;
+        try {
+            book = symbolCount == 0 ? null : CodeBook.fromLengths(symbols, lengths);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt batch table: " + e.getMessage());
+        }
+
+        int[] offsets = new int[recordCount + 1];
+        for (int k = 0; k <= recordCount; k++) {
+            offsets[k] = in.readInt();
+            if (offsets[k] < (k == 0 ? 0 : offsets[k - 1])) {
+                throw new IOException("Corrupt batch: offset " + k + " goes backwards");
+            }
+        }
+        int bodyStart = HEADER_BYTES + 3 * symbolCount + 4 * (recordCount + 1);
+        long bitLength = offsets[recordCount];
+        if (offsets[0] != 0 || bitLength > (packed.length - bodyStart) * 8L || (bitLength > 0 && book == null)) {
+            throw new IOException("Corrupt batch: body shorter than its offsets");
+        }
+        BitBuffer body = BitBuffer.fromByteArray(Arrays.copyOfRange(packed, bodyStart, packed.length), bitLength);
+        return new HuffmanBatch(book, offsets, body);
+    }
+
+    // bitOffset[recordCount] of a batch written by encode: the body length, without header or table
+    static long bodyBits(byte[] packed) {
+        ByteBuffer header = ByteBuffer.wrap(packed);
+        int recordCount = header.getInt(4 + 1);
+        int symbolCount = header.getInt(4 + 1 + 4);
+        return header.getInt(HEADER_BYTES + 3 * symbolCount + 4 * recordCount);
+    }
+
+    public static List<String> decode(byte[] packed) throws IOException {
+        return open(packed).toList();
+    }
+
+    public int size() { return offsets.length - 1; }
+
+    // The shared table, or null for a batch with no symbols
+    public CodeBook getCodeBook() { return book; }
+
+    // Bits of record k inside the body
+    public int bitLength(int k) {
+        return offsets[k + 1] - offsets[k];
+    }
+
+    // Decodes record k only; safe to call from many threads at once
+    public String get(int k) throws IOException {
+        if (k < 0 || k >= size()) {
+            throw new IndexOutOfBoundsException("Record " + k + " of " + size());
+        }
+        int end = offsets[k + 1];
+        if (offsets[k] == end) { return ""; }
+        HuffmanTableDecoder decoder = book.decoder();
+        BitReader reader = new BitReader(body);
+        reader.seek(offsets[k]);
+        StringBuilder record = new StringBuilder();
+        try {
+            while (reader.position() < end) {
+                record.append((char) decoder.decodeSymbol(reader));
+            }
+        } catch (IllegalStateException e) {
+            throw new IOException("Corrupt batch: record " + k + ": " + e.getMessage());
+        }
+        if (reader.position() != end) {
+            throw new IOException("Corrupt batch: record " + k + " overruns its offset");
+        }
+        return record.toString();
+    }
+
+    public List<String> toList() throws IOException {
+        List<String> records = new ArrayList<>(size());
+        for (int k = 0; k < size(); k++) {
+            records.add(get(k));
+        }
+        return records;
+    }
+}
@@ -0,0 +1,361 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Repeatable throughput and allocation benchmarks for each stage of the byte
+ * codec: histogram, tree build, code generation, encode and decode.
+ *
+ *   java HuffmanBenchmark [--sizes 1K,64K,1M,16M,256M] [--profiles log,english,fibonacci,random]
+ *                         [--warmup 3] [--iterations 5] [--time-ms 200] [--json results.json]
+ *
+ * Modelled on JMH's throughput mode: every iteration repeats the operation
+ * for a fixed time after untimed warm-up iterations, and the score is the
+ * mean over iterations with a 99.9% confidence interval. Allocation comes
+ * from the per-thread allocation counter, like JMH's gc profiler
+ * (gc.alloc.rate.norm, bytes per operation). The JSON export uses JMH's
+ * result layout, so the usual JMH comparison tools can read it.
+ *
+ * Encode runs once per HuffmanKernels implementation on hand: the scalar
+ * loop always, and the Vector API kernel too when it was built with
+ * vector/build.sh and the JVM was started with --add-modules
+ * jdk.incubator.vector. Other stages show "-".
+ *
+ * Input profiles are the Corpora profiles and span the entropy range:
+ * generated log lines, English letter frequencies, Fibonacci counts (the
+ * deepest possible codes) and uniform random bytes. Smaller sizes are
+ * prefixes of one generated corpus per profile. Sizes that would not fit
+ * in the heap are skipped; 256 MB needs about -Xmx2g.
+ */
+public class HuffmanBenchmark {
+    static final String[] BENCHMARKS = {"histogram", "tree", "codes", "encode", "decode"};
+    static final long[] DEFAULT_SIZES = {1L << 10, 64L << 10, 1L << 20, 16L << 20, 256L << 20};
+    static final int CODE_LENGTH_CAP = HuffmanEncoder.MAX_CODE_LENGTH;
+    // Corpus, encoded copy and decoded copy of the largest size must fit at once
+    private static final int HEAP_FACTOR = 6;
+
+    private final int warmupIterations;
+    private final int iterations;
+    private final long iterationNanos;
+    private final List<Result> results = new ArrayList<>();
+    private final com.sun.management.ThreadMXBean allocation;
+    private long sink;
+
+    public HuffmanBenchmark() {
+        this(3, 5, 200);
+    }
+
+    public HuffmanBenchmark(int warmupIterations, int iterations, long iterationMillis) {
+        if (warmupIterations < 0 || iterations < 1 || iterationMillis < 1) {
+            throw new IllegalArgumentException("Need at least one measured iteration of at least 1 ms");
+        }
+        this.warmupIterations = warmupIterations;
+        this.iterations = iterations;
+        this.iterationNanos = iterationMillis * 1_000_000L;
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        this.allocation = threads instanceof com.sun.management.ThreadMXBean
+                ? (com.sun.management.ThreadMXBean) threads : null;
+    }
+
+    /**
+     * One benchmark at one size and profile: per-iteration scores plus allocation per operation
+     */
+    public static final class Result {
+        final String benchmark;
+        final String kernel;
+        final String profile;
+        final long size;
+        final double entropy;       // bits per byte of the input
+        final String unit;
+        final double[] scores;
+        final double allocatedBytesPerOp;   // NaN when the JVM has no allocation counter
+
+        Result(String benchmark, String kernel, String profile, long size, double entropy, String unit,
+               double[] scores, double allocatedBytesPerOp) {
+            this.benchmark = benchmark;
+            this.kernel = kernel;
+            this.profile = profile;
+            this.size = size;
+            this.entropy = entropy;
+            this.unit = unit;
+            this.scores = scores;
+            this.allocatedBytesPerOp = allocatedBytesPerOp;
+        }
+
+        public double getScore() {
+            double sum = 0;
+            for (double score : scores) { sum += score; }
+            return sum / scores.length;
+        }
+
+        // Half-width of the 99.9% confidence interval, normal approximation (0 for a single iteration)
+        public double getScoreError() {
+            if (scores.length < 2) { return 0; }
+            double mean = getScore();
+            double squares = 0;
+            for (double score : scores) { squares += (score - mean) * (score - mean); }
+            return 3.291 * Math.sqrt(squares / (scores.length - 1)) / Math.sqrt(scores.length);
+        }
+
+        public String getBenchmark() { return benchmark; }
+
+        public String getKernel() { return kernel; }
+
+        public String getProfile() { return profile; }
+
+        public long getSize() { return size; }
+
+        public String getUnit() { return unit; }
+
+        public double getAllocatedBytesPerOp() { return allocatedBytesPerOp; }
+
+        @Override
+        public String toString() {
+            return String.format("%-9s %-9s %-9s %9s %6.3f %12.1f +- %8.1f %-5s %14.0f",
+                    benchmark, kernel, profile, sizeLabel(size), entropy, getScore(), getScoreError(), unit, allocatedBytesPerOp);
+        }
+    }
+
+    public List<Result> getResults() { return Collections.unmodifiableList(results); }
+
+    public List<Result> run(List<String> profiles, long[] sizes) throws IOException {
+        long largest = 0;
+        for (long size : sizes) {
+            if (size < 1 || size > Integer.MAX_VALUE - 8) {
+                throw new IllegalArgumentException("Input size out of range: " + size);
+            }
+            largest = Math.max(largest, size);
+        }
+        long fits = Runtime.getRuntime().maxMemory() / HEAP_FACTOR;
+
+        for (String profile : profiles) {
+            byte[] corpus = Corpora.corpus(profile, (int) Math.min(largest, fits));
+            for (long size : sizes) {
+                if (size > corpus.length) {
+                    System.out.printf("Skipping %s at %s: needs a heap of about %d MB%n",
+                            profile, sizeLabel(size), size * HEAP_FACTOR >> 20);
+                    continue;
+                }
+                runAll(profile, corpus, (int) size);
+            }
+        }
+        return getResults();
+    }
+
+    private void runAll(String profile, byte[] data, int size) {
+        int[] counts = Histogram.ofBytes(data, 0, size).counts();
+        double entropy = entropy(counts, size);
+        HuffmanTree tree = HuffmanTree.build(counts);
+        CodeBook book = tree.toCodeBook(CODE_LENGTH_CAP);
+        BitWriter writer = new BitWriter(size * 8L);
+        HuffmanCodec.encodeBytes(book, data, 0, size, writer);
+        BitBuffer encoded = writer.toBitBuffer();
+        long[] codes = new long[256];
+        int[] lengths = new int[256];
+        for (int i = 0; i < book.size(); i++) {
+            codes[book.symbolAt(i)] = book.codeAt(i);
+            lengths[book.symbolAt(i)] = book.lengthAt(i);
+        }
+
+        // Sanity check before timing anything
+        byte[] decoded = HuffmanCodec.decodeBytes(book, encoded);
+        if (decoded.length != size || !Arrays.equals(decoded, 0, size, data, 0, size)) {
+            throw new IllegalStateException("Round trip failed for " + profile + " at " + sizeLabel(size));
+        }
+
+        for (String benchmark : BENCHMARKS) {
+            boolean perKernel = benchmark.equals("encode");
+            for (HuffmanKernels kernels : perKernel ? kernels() : Collections.<HuffmanKernels>singletonList(null)) {
+                Runnable op;
+                boolean perByte = true;
+                switch (benchmark) {
+                    case "histogram":
+                        op = () -> {
+                            int[] histogram = new int[256];
+                            Histogram.countBytes(data, 0, size, histogram);
+                            sink += histogram[0];
+                        };
+                        break;
+                    case "tree":
+                        op = () -> sink += HuffmanTree.build(counts).getRoot();
+                        perByte = false;
+                        break;
+                    case "codes":
+                        op = () -> sink += tree.toCodeBook(CODE_LENGTH_CAP).getMaxLength();
+                        perByte = false;
+                        break;
+                    case "encode":
+                        op = () -> {
+                            writer.reset();
+                            kernels.encodeBytes(codes, lengths, data, 0, size, writer);
+                            sink += writer.getBitLength();
+                        };
+                        break;
+                    default:
+                        op = () -> sink += HuffmanCodec.decodeBytes(book, encoded).length;
+                        break;
+                }
+                String kernel = kernels == null ? "-" : kernels.getName();
+                Result result = measure(benchmark, kernel, profile, size, entropy, op, perByte);
+                results.add(result);
+                System.out.println(result);
+            }
+        }
+    }
+
+    // The scalar kernels, then the vector ones if they load, whichever was chosen at startup
+    static List<HuffmanKernels> kernels() {
+        HuffmanKernels scalar = HuffmanKernels.scalar();
+        HuffmanKernels vector = HuffmanKernels.vector();
+        return vector == null ? Collections.singletonList(scalar) : Arrays.asList(scalar, vector);
+    }
+
+    private Result measure(String benchmark, String kernel, String profile, int size, double entropy, Runnable op, boolean perByte) {
+        for (int i = 0; i < warmupIterations; i++) {
+            iteration(op, null);
+        }
+        double[] scores = new double[iterations];
+        long allocated = 0;
+        long ops = 0;
+        long[] allocatedOut = new long[1];
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            long count = iteration(op, allocatedOut);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            scores[i] = perByte ? count * (double) size / 1e6 / seconds : count / seconds;
+            allocated += allocatedOut[0];
+            ops += count;
+        }
+        double perOp = allocation == null ? Double.NaN : (double) allocated / ops;
+        return new Result(benchmark, kernel, profile, size, entropy, perByte ? "MB/s" : "ops/s", scores, perOp);
+    }
+
+    // Repeats op until the iteration time is up; returns the number of calls
+    private long iteration(Runnable op, long[] allocatedOut) {
+        long thread = Thread.currentThread().getId();
+        long before = allocation == null ? 0 : allocation.getThreadAllocatedBytes(thread);
+        long deadline = System.nanoTime() + iterationNanos;
+        long count = 0;
+        do {
+            op.run();
+            count++;
+        } while (System.nanoTime() < deadline);
+        if (allocatedOut != null && allocation != null) {
+            allocatedOut[0] = allocation.getThreadAllocatedBytes(thread) - before;
+        }
+        return count;
+    }
+
+    private static double entropy(int[] counts, int size) {
+        double bits = 0;
+        for (int count : counts) {
+            if (count != 0) {
+                bits += count * (Math.log((double) size / count) / Math.log(2));
+            }
+        }
+        return bits / size;
+    }
+
+    // JMH's JSON result layout, one entry per benchmark, size and profile
+    public void writeJson(Writer out) throws IOException {
+        PrintWriter json = new PrintWriter(out);
+        json.println("[");
+        for (int r = 0; r < results.size(); r++) {
+            Result result = results.get(r);
+            json.println("    {");
+            json.println("        \"benchmark\" : \"HuffmanBenchmark." + result.benchmark + "\",");
+            json.println("        \"mode\" : \"thrpt\",");
+            json.println("        \"threads\" : 1,");
+            json.println("        \"warmupIterations\" : " + warmupIterations + ",");
+            json.println("        \"measurementIterations\" : " + iterations + ",");
+            json.println("        \"measurementTime\" : \"" + iterationNanos / 1_000_000 + " ms\",");
+            json.println("        \"params\" : {");
+            json.println("            \"kernels\" : \"" + result.kernel + "\",");
+            json.println("            \"profile\" : \"" + result.profile + "\",");
+            json.println("            \"size\" : \"" + result.size + "\",");
+            json.println("            \"entropy\" : \"" + String.format(Locale.ROOT, "%.4f", result.entropy) + "\"");
+            json.println("        },");
+            json.println("        \"primaryMetric\" : {");
+            json.println("            \"score\" : " + number(result.getScore()) + ",");
+            json.println("            \"scoreError\" : " + number(result.getScoreError()) + ",");
+            json.println("            \"scoreUnit\" : \"" + result.unit + "\",");
+            StringBuilder raw = new StringBuilder();
+            for (int i = 0; i < result.scores.length; i++) {
+                raw.append(i == 0 ? "" : ", ").append(number(result.scores[i]));
+            }
+            json.println("            \"rawData\" : [ [ " + raw + " ] ]");
+            json.println("        },");
+            json.println("        \"secondaryMetrics\" : {");
+            json.println("            \"gc.alloc.rate.norm\" : {");
+            json.println("                \"score\" : " + number(result.allocatedBytesPerOp) + ",");
+            json.println("                \"scoreUnit\" : \"B/op\"");
+            json.println("            }");
+            json.println("        }");
+            json.println(r == results.size() - 1 ? "    }" : "    },");
+        }
+        json.println("]");
+        json.flush();
+    }
+
+    private static String number(double value) {
+        return Double.isNaN(value) ? "\"NaN\"" : String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    static String sizeLabel(long size) {
+        if (size >= 1 << 20 && size % (1 << 20) == 0) { return (size >> 20) + "M"; }
+        if (size >= 1 << 10 && size % (1 << 10) == 0) { return (size >> 10) + "K"; }
+        return Long.toString(size);
+    }
+
+    // "64K", "16M", "1G" or a plain byte count
+    static long parseSize(String text) {
+        String t = text.trim().toUpperCase(Locale.ROOT);
+        int shift = t.endsWith("K") ? 10 : t.endsWith("M") ? 20 : t.endsWith("G") ? 30 : 0;
+        if (shift != 0) { t = t.substring(0, t.length() - 1); }
+        return Long.parseLong(t) << shift;
+    }
+
+    public static void main(String[] args) {
+        long[] sizes = DEFAULT_SIZES;
+        List<String> profiles = Arrays.asList(Corpora.PROFILES);
+        int warmup = 3;
+        int iterations = 5;
+        long millis = 200;
+        String jsonFile = null;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String value = i + 1 < args.length ? args[i + 1] : null;
+                if (value == null) { throw new IllegalArgumentException("Missing value for " + args[i]); }
+                switch (args[i++]) {
+                    case "--sizes":
+                        String[] parts = value.split(",");
+                        sizes = new long[parts.length];
+                        for (int k = 0; k < parts.length; k++) { sizes[k] = parseSize(parts[k]); }
+                        break;
+                    case "--profiles": profiles = Arrays.asList(value.split(",")); break;
+                    case "--warmup": warmup = Integer.parseInt(value); break;
+                    case "--iterations": iterations = Integer.parseInt(value); break;
+                    case "--time-ms": millis = Long.parseLong(value); break;
+                    case "--json": jsonFile = value; break;
+                    default: throw new IllegalArgumentException("Unknown option " + args[i - 1]);
+                }
+            }
+
+            HuffmanBenchmark benchmark = new HuffmanBenchmark(warmup, iterations, millis);
+            System.out.printf("%-9s %-9s %-9s %9s %6s %23s %-5s %14s%n",
+                    "Benchmark", "Kernels", "Profile", "Size", "H", "Score +- Error", "Unit", "Alloc B/op");
+            benchmark.run(profiles, sizes);
+            if (jsonFile != null) {
+                try (Writer out = new OutputStreamWriter(new FileOutputStream(jsonFile), StandardCharsets.UTF_8)) {
+                    benchmark.writeJson(out);
+                }
+                System.out.println("Results written to " + jsonFile);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
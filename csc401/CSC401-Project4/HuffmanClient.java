@@ -0,0 +1,73 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Blocking client for HuffmanServer. One connection, one request at a time;
+ * open one client per thread for concurrency.
+ */
+public class HuffmanClient implements Closeable {
+    private static final int BUFFER_BYTES = 8192;
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    public HuffmanClient(int port) throws IOException {
+        this(InetAddress.getLoopbackAddress().getHostAddress(), port);
+    }
+
+    public HuffmanClient(String host, int port) throws IOException {
+        this.socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_BYTES));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_BYTES));
+    }
+
+    // Per-request table; the result is a self-describing HuffmanEncoder block
+    public byte[] compress(byte[] data) throws IOException {
+        return call(HuffmanServer.OP_COMPRESS, "", data);
+    }
+
+    // Shared table registered on the server under `table`
+    public byte[] compress(byte[] data, String table) throws IOException {
+        return call(HuffmanServer.OP_COMPRESS, table, data);
+    }
+
+    public byte[] decompress(byte[] packed) throws IOException {
+        return call(HuffmanServer.OP_DECOMPRESS, "", packed);
+    }
+
+    public byte[] decompress(byte[] packed, String table) throws IOException {
+        return call(HuffmanServer.OP_DECOMPRESS, table, packed);
+    }
+
+    public String stats() throws IOException {
+        return new String(call(HuffmanServer.OP_STATS, "", new byte[0]), StandardCharsets.UTF_8);
+    }
+
+    // Sends one request and waits for its response; server-side failures come back as IOException
+    byte[] call(byte op, String table, byte[] payload) throws IOException {
+        out.writeByte(op);
+        out.writeUTF(table);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.flush();
+
+        byte status = in.readByte();
+        if (status != HuffmanServer.STATUS_OK) {
+            throw new IOException("Server error: " + in.readUTF());
+        }
+        int length = in.readInt();
+        if (length < 0) { throw new IOException("Corrupt response length " + length); }
+        byte[] result = new byte[length];
+        in.readFully(result);
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
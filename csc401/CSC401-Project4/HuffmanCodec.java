@@ -0,0 +1,268 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.*;
+import java.util.*;
+
+/**
+ * Stateless encode and decode functions over an immutable CodeBook. Nothing
+ * here keeps state between calls, so any number of threads can share one
+ * table: build it once (from a histogram, a trained corpus or a saved file)
+ * and pass it to every call.
+ *
+ * The char decoders can also stream: the Writer, CharBuffer and channel
+ * variants hand the text on in DECODE_CHUNK pieces. Output memory stays
+ * bounded however large the input, and a slow sink holds the decoder back.
+ *
+ * Three alphabets are supported:
+ *   chars        UTF-16 units of a CharSequence (encode, decode)
+ *   bytes        256 symbols straight from a byte[], with no charset decoding;
+ *                the fast path for binary and UTF-8 data (encodeBytes, decodeBytes)
+ *   code points  full Unicode, so supplementary characters are one symbol
+ *                instead of two surrogates (encodeCodePoints, decodeCodePoints)
+ */
+public final class HuffmanCodec {
+    public static final int DECODE_CHUNK = 8192;
+
+    private HuffmanCodec() { }
+
+    public static CodeBook codeBookFor(CharSequence text) {
+        return codeBookFor(text, 0);
+    }
+
+    // Table for the symbol counts of text, no code longer than maxCodeLength bits (0 means no limit)
+    public static CodeBook codeBookFor(CharSequence text, int maxCodeLength) {
+        return HuffmanTree.build(Histogram.ofChars(text).counts()).toCodeBook(maxCodeLength);
+    }
+
+    // Throws IllegalArgumentException if the table has no code for a character of text
+    public static BitBuffer encode(CodeBook book, CharSequence text) {
+        BitWriter writer = new BitWriter(text.length() * 8L);
+        encode(book, text, writer);
+        return writer.toBitBuffer();
+    }
+
+    public static void encode(CodeBook book, CharSequence text, BitWriter writer) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int length = book.lengthOf(c);
+            if (length == 0) {
+                throw new IllegalArgumentException("No code for symbol " + (int) c + " at index " + i);
+            }
+            writer.write(book.codeOf(c), length);
+        }
+    }
+
+    public static String decode(CodeBook book, BitBuffer encoded) {
+        if (encoded.getBitLength() == 0) { return ""; }
+        HuffmanTableDecoder decoder = book.decoder();
+        StringBuilder decoded = new StringBuilder();
+        BitReader reader = new BitReader(encoded);
+        while (reader.hasMore()) {
+            decoded.append((char) decoder.decodeSymbol(reader));
+        }
+        return decoded.toString();
+    }
+
+    // Decodes into `out` until it is full or the bits run out and returns the chars added.
+    // Keep the reader and call again after draining `out` to resume where this call stopped.
+    public static int decode(CodeBook book, BitReader reader, CharBuffer out) {
+        HuffmanTableDecoder decoder = book.decoder();
+        int start = out.position();
+        while (out.hasRemaining() && reader.hasMore()) {
+            out.put((char) decoder.decodeSymbol(reader));
+        }
+        return out.position() - start;
+    }
+
+    // Writes the text to `out` one chunk at a time and returns the number of chars
+    public static long decode(CodeBook book, BitBuffer encoded, Writer out) throws IOException {
+        CharBuffer chunk = CharBuffer.allocate(DECODE_CHUNK);
+        BitReader reader = new BitReader(encoded);
+        long total = 0;
+        while (reader.hasMore()) {
+            total += decode(book, reader, chunk);
+            out.write(chunk.array(), 0, chunk.position());
+            chunk.clear();
+        }
+        return total;
+    }
+
+    // Same, encoding the chars with `charset` on the way out; unmappable chars become the charset's replacement.
+    // `out` must be in blocking mode: every chunk is written in full before decoding goes on.
+    public static long decode(CodeBook book, BitBuffer encoded, WritableByteChannel out, Charset charset)
+            throws IOException {
+        if (out instanceof SelectableChannel && !((SelectableChannel) out).isBlocking()) {
+            throw new IllegalArgumentException("Channel must be in blocking mode; decode into a CharBuffer instead");
+        }
+        CharsetEncoder encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer chars = CharBuffer.allocate(DECODE_CHUNK);
+        ByteBuffer bytes = ByteBuffer.allocate((int) Math.ceil(DECODE_CHUNK * encoder.maxBytesPerChar()));
+        BitReader reader = new BitReader(encoded);
+        long total = 0;
+        boolean endOfInput = false;
+        while (!endOfInput) {
+            total += decode(book, reader, chars);
+            endOfInput = !reader.hasMore();
+            chars.flip();
+            // A high surrogate at the end of a chunk stays in `chars` until its pair is decoded
+            CoderResult result = encoder.encode(chars, bytes, endOfInput);
+            if (result.isError()) { result.throwException(); }
+            drain(bytes, out);
+            chars.compact();
+        }
+        encoder.flush(bytes);
+        drain(bytes, out);
+        return total;
+    }
+
+    private static void drain(ByteBuffer bytes, WritableByteChannel out) throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            out.write(bytes);
+        }
+        bytes.clear();
+    }
+
+    // Same, for a String of '0' and '1' characters
+    public static String decode(CodeBook book, String encodedText) {
+        return decode(book, BitBuffer.fromBitString(encodedText));
+    }
+
+    public static CodeBook codeBookForBytes(byte[] data) {
+        return codeBookForBytes(data, 0);
+    }
+
+    public static CodeBook codeBookForBytes(byte[] data, int maxCodeLength) {
+        return HuffmanTree.build(Histogram.ofBytes(data).counts()).toCodeBook(maxCodeLength);
+    }
+
+    public static BitBuffer encodeBytes(CodeBook book, byte[] data) {
+        BitWriter writer = new BitWriter(data.length * 8L);
+        encodeBytes(book, data, 0, data.length, writer);
+        return writer.toBitBuffer();
+    }
+
+    // Copies the table into 256-entry arrays so the kernel does no bounds or hash lookups per symbol
+    public static void encodeBytes(CodeBook book, byte[] data, int offset, int length, BitWriter writer) {
+        long[] codes = new long[256];
+        int[] lengths = new int[256];
+        for (int i = 0; i < book.size(); i++) {
+            int symbol = book.symbolAt(i);
+            if (symbol < 256) {
+                codes[symbol] = book.codeAt(i);
+                lengths[symbol] = book.lengthAt(i);
+            }
+        }
+        HuffmanKernels.get().encodeBytes(codes, lengths, data, offset, length, writer);
+    }
+
+    public static byte[] decodeBytes(CodeBook book, BitBuffer encoded) {
+        if (book.getMaxSymbol() > 255) {
+            throw new IllegalArgumentException("Table has symbols outside the byte range: " + book);
+        }
+        if (book.size() == 0) {
+            throw new IllegalArgumentException("Empty table cannot decode " + encoded.getBitLength() + " bits");
+        }
+        if (encoded.getBitLength() == 0) { return new byte[0]; }
+        HuffmanTableDecoder decoder = book.decoder();
+        BitReader reader = new BitReader(encoded);
+        // At least one symbol per maxLength bits; grows if the codes are shorter
+        byte[] out = new byte[(int) Math.min(Integer.MAX_VALUE - 8, encoded.getBitLength() / book.getMaxLength() + 16)];
+        int n = 0;
+        while (reader.hasMore()) {
+            if (n == out.length) {
+                out = Arrays.copyOf(out, (int) Math.min(Integer.MAX_VALUE - 8, out.length * 2L));
+            }
+            out[n++] = (byte) decoder.decodeSymbol(reader);
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    public static CodeBook codeBookForCodePoints(CharSequence text) {
+        return codeBookForCodePoints(text, 0);
+    }
+
+    public static CodeBook codeBookForCodePoints(CharSequence text, int maxCodeLength) {
+        return codePointTree(countCodePoints(text)).toCodeBook(maxCodeLength);
+    }
+
+    // Present code points with their counts, packed as count << 21 | codePoint. BMP code points
+    // are counted in a flat table and supplementary ones in a map, so the tree only sees present symbols.
+    static long[] countCodePoints(CharSequence text) {
+        int[] bmp = new int[128];
+        Map<Integer, int[]> supplementary = new HashMap<>();
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = Character.codePointAt(text, i);
+            i += Character.charCount(codePoint);
+            if (codePoint >= bmp.length) {
+                if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                    supplementary.computeIfAbsent(codePoint, k -> new int[1])[0]++;
+                    continue;
+                }
+                bmp = Arrays.copyOf(bmp, Character.MIN_SUPPLEMENTARY_CODE_POINT);
+            }
+            bmp[codePoint]++;
+        }
+
+        int distinct = supplementary.size();
+        for (int count : bmp) {
+            if (count != 0) { distinct++; }
+        }
+        long[] packed = new long[distinct];
+        int n = 0;
+        for (int s = 0; s < bmp.length; s++) {
+            if (bmp[s] != 0) {
+                packed[n++] = (long) bmp[s] << 21 | s;
+            }
+        }
+        for (Map.Entry<Integer, int[]> entry : supplementary.entrySet()) {
+            packed[n++] = (long) entry.getValue()[0] << 21 | entry.getKey();
+        }
+        return packed;
+    }
+
+    static HuffmanTree codePointTree(long[] packedCounts) {
+        int[] symbols = new int[packedCounts.length];
+        long[] weights = new long[packedCounts.length];
+        for (int i = 0; i < packedCounts.length; i++) {
+            symbols[i] = (int) (packedCounts[i] & 0x1FFFFF);
+            weights[i] = packedCounts[i] >>> 21;
+        }
+        return HuffmanTree.build(symbols, weights);
+    }
+
+    public static BitBuffer encodeCodePoints(CodeBook book, CharSequence text) {
+        BitWriter writer = new BitWriter(text.length() * 8L);
+        encodeCodePoints(book, text, writer);
+        return writer.toBitBuffer();
+    }
+
+    public static void encodeCodePoints(CodeBook book, CharSequence text, BitWriter writer) {
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = Character.codePointAt(text, i);
+            int length = book.lengthOf(codePoint);
+            if (length == 0) {
+                throw new IllegalArgumentException("No code for code point " + codePoint + " at index " + i);
+            }
+            writer.write(book.codeOf(codePoint), length);
+            i += Character.charCount(codePoint);
+        }
+    }
+
+    public static String decodeCodePoints(CodeBook book, BitBuffer encoded) {
+        if (encoded.getBitLength() == 0) { return ""; }
+        HuffmanTableDecoder decoder = book.decoder();
+        StringBuilder decoded = new StringBuilder();
+        BitReader reader = new BitReader(encoded);
+        while (reader.hasMore()) {
+            decoded.appendCodePoint(decoder.decodeSymbol(reader));
+        }
+        return decoded.toString();
+    }
+}
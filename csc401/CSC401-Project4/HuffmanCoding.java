@@ -1,101 +1,496 @@
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 public class HuffmanCoding {
+    // On-disk format: magic, version, symbol count, (symbol, code length) pairs, bit length, packed bits.
+    // Version 1 stores symbols as chars; version 2, used only for tables with code points above
+    // the BMP, stores them as ints.
+    static final int FILE_MAGIC = 0x48554643; // "HUFC"
+    static final byte FILE_VERSION = 1;
+    static final byte FILE_VERSION_WIDE = 2;
+    private static final int IO_CHUNK_BYTES = 1 << 20;
+
+    private CodeBook codeBook;
+    private Histogram histogram;
+    // Built from codeBook only when the String/HuffmanNode API asks for them
     private HuffmanNode root;
     private Map<Character, String> codes;
-    private Map<String, Character> reverseCodes;
+    private int maxCodeLength;
+    // Cost of the uncapped tree for the last message; UNMEASURED when a cached or static table skipped the build
+    private long unconstrainedBits;
+    private long bitsWritten;
+    private long bitsRead;
+    // Pre-trained table tried before building one per message, and the table cache
+    private CodeBook staticCodeBook;
+    private CodeBookCache codeBookCache;
+    private long treeBuilds;
+    // Phase timings of the call in progress, and of the last finished encode and decode
+    private CompressionMetrics current;
+    private CompressionMetrics lastEncode;
+    private CompressionMetrics lastDecode;
+    private Consumer<CompressionMetrics> metricsListener;
 
     public HuffmanCoding() {
+        this.codeBook = null;
+        this.histogram = null;
         this.root = null;
-        this.codes = new HashMap<>();
-        this.reverseCodes = new HashMap<>();
+        this.codes = null;
+        this.maxCodeLength = 0;
+        this.unconstrainedBits = 0;
+        this.bitsWritten = 0;
+        this.bitsRead = 0;
+        this.staticCodeBook = null;
+        this.codeBookCache = null;
+        this.treeBuilds = 0;
+        this.current = null;
+        this.lastEncode = null;
+        this.lastDecode = null;
+        this.metricsListener = null;
     }
 
     public Map<Character, Integer> calculateFrequencies(String text) {
-        Map<Character, Integer> frequencies = new HashMap<>();
-
-        for (char c : text.toCharArray()) {
-            frequencies.put(c, frequencies.getOrDefault(c, 0) + 1);
-        }
+        return calculateHistogram(text).asMap();
+    }
 
-        return frequencies;
+    // Primitive counts; large texts are counted in parallel slices
+    public Histogram calculateHistogram(String text) {
+        return Histogram.ofCharsParallel(text, ForkJoinPool.commonPool());
     }
 
-    
+
+    // Linked-node view of the tree; encoding itself works on the array-based HuffmanTree
     public HuffmanNode buildHuffmanTree(Map<Character, Integer> frequencies) {
-        if (frequencies.isEmpty()) { return null; }
-        PriorityQueue<HuffmanNode> pq = new PriorityQueue<>();
+        return HuffmanTree.build(frequencies).toNode();
+    }
 
-        // Creating leaf nodes 
-        for (Map.Entry<Character, Integer> entry : frequencies.entrySet()) {
-            HuffmanNode node = new HuffmanNode(entry.getKey(), entry.getValue());
-            pq.offer(node);
-        }
 
-        if (pq.size() == 1) {
-            HuffmanNode single = pq.poll();
-            HuffmanNode newRoot = new HuffmanNode(single.frequency);
-            newRoot.left = single;
-            return newRoot;
+    // Canonical codes: only the depth of each leaf is taken from the tree, so the
+    // table can be rebuilt later from code lengths alone
+    public void generateCodes(HuffmanNode node) {
+        if (node == null) {
+            installCodeBook(null, (Histogram) null);
+            return;
         }
 
-        // Build tree - Greedy style
-        while (pq.size() > 1) {
-            HuffmanNode left = pq.poll();
-            HuffmanNode right = pq.poll();
+        Map<Character, Integer> lengths = new HashMap<>();
+        Map<Character, Integer> frequencies = new HashMap<>();
+        collectCodeLengths(node, 0, lengths, frequencies);
+        installCodeBook(CodeBook.fromLengths(lengths), frequencies);
+    }
+
+    // Code table for the given frequencies; leaves this instance's state alone
+    public CodeBook buildCodeBook(Map<Character, Integer> frequencies) {
+        return HuffmanTree.build(frequencies).toCodeBook(maxCodeLength);
+    }
 
-            HuffmanNode merged = new HuffmanNode(left.frequency + right.frequency);
-            merged.left = left;
-            merged.right = right;
+    // Same, for a dense histogram indexed by symbol
+    public CodeBook buildCodeBook(int[] counts) {
+        return HuffmanTree.build(counts).toCodeBook(maxCodeLength);
+    }
 
-            pq.offer(merged);
+    // Caps code lengths (e.g. 11, 12 or 15 bits) using optimal package-merge; 0 removes the cap
+    public void setMaxCodeLength(int maxCodeLength) {
+        if (maxCodeLength < 0 || maxCodeLength > 63) {
+            throw new IllegalArgumentException("Max code length must be between 0 and 63: " + maxCodeLength);
         }
+        this.maxCodeLength = maxCodeLength;
+    }
 
-        return pq.poll();
+    public int getMaxCodeLength() { return maxCodeLength; }
+
+    // Encodes with this table whenever it has a code for every symbol of the text; null turns it off
+    public void setStaticCodeBook(CodeBook book) {
+        this.staticCodeBook = book;
     }
 
+    public CodeBook getStaticCodeBook() { return staticCodeBook; }
+
+    // Looks up per-message tables in `cache` before building a tree; null turns it off
+    public void setCodeBookCache(CodeBookCache cache) {
+        this.codeBookCache = cache;
+    }
+
+    public CodeBookCache getCodeBookCache() { return codeBookCache; }
+
+    // Number of Huffman trees built by encode and encodeBits
+    public long getTreeBuilds() { return treeBuilds; }
 
-    public void generateCodes(HuffmanNode node, String code) {
+    // Called with the metrics of every encode and decode call, on the calling thread; null turns it off
+    public void setMetricsListener(Consumer<CompressionMetrics> listener) {
+        this.metricsListener = listener;
+    }
+
+    public CompressionMetrics getLastEncodeMetrics() { return lastEncode; }
+
+    public CompressionMetrics getLastDecodeMetrics() { return lastDecode; }
+
+    private void beginMetrics(String operation) {
+        current = CompressionMetrics.start(operation);
+    }
+
+    // Charges the time since `since` to a phase of the current call and returns the current time
+    private long phase(CompressionMetrics.Phase phase, long since) {
+        return current == null ? System.nanoTime() : current.record(phase, since);
+    }
+
+    private void endMetrics(int[] counts, long symbols, long bits) {
+        CompressionMetrics done = current.finish(codeBook, counts, symbols, bits);
+        current = null;
+        if (done.getOperation().equals("decode")) {
+            lastDecode = done;
+        } else {
+            lastEncode = done;
+        }
+        if (metricsListener != null) {
+            metricsListener.accept(done);
+        }
+    }
+
+    private void collectCodeLengths(HuffmanNode node, int depth, Map<Character, Integer> lengths, Map<Character, Integer> frequencies) {
         if (node == null) { return; }
 
         if (node.isLeaf()) {
-            String finalCode = code.isEmpty() ? "0" : code;
-            codes.put(node.character, finalCode);
-            reverseCodes.put(finalCode, node.character);
+            lengths.put(node.character, Math.max(1, depth));
+            frequencies.put(node.character, node.frequency);
             return;
         }
 
-        generateCodes(node.left, code + "0");
-        generateCodes(node.right, code + "1");
-    
+        collectCodeLengths(node.left, depth + 1, lengths, frequencies);
+        collectCodeLengths(node.right, depth + 1, lengths, frequencies);
+    }
+
+    // Builds the table straight from the histogram with no node objects or code Strings
+    private void buildCodes(Histogram counts) {
+        long start = System.nanoTime();
+        CodeBook cached = codeBookCache == null ? null : codeBookCache.get(counts, maxCodeLength);
+        if (cached != null) {
+            unconstrainedBits = CompressionStats.UNMEASURED;
+            installCodeBook(cached, counts);
+            phase(CompressionMetrics.Phase.CODES, start);
+            return;
+        }
+
+        HuffmanTree tree = HuffmanTree.build(counts.counts());
+        treeBuilds++;
+        unconstrainedBits = tree.cost();
+        start = phase(CompressionMetrics.Phase.TREE, start);
+        CodeBook book = tree.toCodeBook(maxCodeLength);
+        if (codeBookCache != null) {
+            codeBookCache.put(counts, maxCodeLength, book);
+        }
+        installCodeBook(book, counts);
+        phase(CompressionMetrics.Phase.CODES, start);
+    }
+
+    // Installs the static table if it covers the text; otherwise counts and builds (or finds) one
+    private Histogram chooseCodes(String text) {
+        long start = System.nanoTime();
+        if (staticCodeBook != null && covers(staticCodeBook, text)) {
+            unconstrainedBits = CompressionStats.UNMEASURED;
+            installCodeBook(staticCodeBook, (Histogram) null);
+            phase(CompressionMetrics.Phase.CODES, start);
+            return null;
+        }
+        Histogram counts = calculateHistogram(text);
+        phase(CompressionMetrics.Phase.FREQUENCY, start);
+        buildCodes(counts);
+        return counts;
+    }
+
+    private static boolean covers(CodeBook book, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (!book.contains(text.charAt(i))) { return false; }
+        }
+        return true;
+    }
+
+    private void installCodeBook(CodeBook book, Map<Character, Integer> frequencies) {
+        installCodeBook(book, frequencies == null ? null : Histogram.ofMap(frequencies));
+    }
+
+    private void installCodeBook(CodeBook book, Histogram counts) {
+        codeBook = book;
+        histogram = counts;
+        root = null;
+        codes = null;
+    }
+
+    private Map<Character, String> codes() {
+        if (codes == null) {
+            codes = codeBook == null ? new HashMap<>() : codeBook.toCodeMap();
+        }
+        return codes;
+    }
+
+    // Tree whose shape matches the canonical codes, with leaf frequencies when known
+    private HuffmanNode canonicalTree() {
+        HuffmanNode top = new HuffmanNode(0);
+        for (int i = 0; i < codeBook.size(); i++) {
+            int c = codeBook.symbolAt(i);
+            long code = codeBook.codeAt(i);
+            HuffmanNode current = top;
+            for (int bit = codeBook.lengthAt(i) - 1; bit > 0; bit--) {
+                boolean one = ((code >>> bit) & 1) != 0;
+                HuffmanNode next = one ? current.right : current.left;
+                if (next == null) {
+                    next = new HuffmanNode(0);
+                    if (one) current.right = next; else current.left = next;
+                }
+                current = next;
+            }
+            HuffmanNode leaf = HuffmanNode.leaf(c, histogram == null ? 0 : histogram.count(c));
+            if ((code & 1) != 0) current.right = leaf; else current.left = leaf;
+        }
+        sumFrequencies(top);
+        return top;
+    }
+
+    private static int sumFrequencies(HuffmanNode node) {
+        if (node == null) { return 0; }
+        if (!node.isLeaf()) {
+            node.frequency = sumFrequencies(node.left) + sumFrequencies(node.right);
+        }
+        return node.frequency;
     }
 
 
     public String encode(String text) {
         if (text == null || text.isEmpty()) { return ""; }
 
-        Map<Character, Integer> frequencies = calculateFrequencies(text);
-        root = buildHuffmanTree(frequencies);
-
-        codes.clear();
-        reverseCodes.clear();
-        generateCodes(root, "");
+        beginMetrics("encode");
+        Histogram counts = chooseCodes(text);
+        long start = System.nanoTime();
+        Map<Character, String> codes = codes();
+        start = phase(CompressionMetrics.Phase.CODES, start);
 
         StringBuilder encoded = new StringBuilder();
-        for (char c : text.toCharArray()) {
-            encoded.append(codes.get(c));
+        for (int i = 0; i < text.length(); i++) {
+            encoded.append(codes.get(text.charAt(i)));
         }
+        phase(CompressionMetrics.Phase.ENCODE, start);
 
+        endMetrics(counts == null ? null : counts.counts(), text.length(), encoded.length());
         return encoded.toString();
     }
 
 
+    // Same as encode, but packs the bits into a long[] instead of one char per bit
+    public BitBuffer encodeBits(String text) {
+        if (text == null || text.isEmpty()) { return new BitBuffer(new long[0], 0); }
+
+        beginMetrics("encode");
+        Histogram counts = chooseCodes(text);
+
+        long start = System.nanoTime();
+        long totalBits = 0;
+        if (counts == null) {
+            totalBits = text.length() * 8L;
+        } else {
+            for (int i = 0; i < codeBook.size(); i++) {
+                totalBits += (long) codeBook.lengthAt(i) * counts.count(codeBook.symbolAt(i));
+            }
+        }
+
+        BitWriter writer = new BitWriter(totalBits);
+        HuffmanCodec.encode(codeBook, text, writer);
+        BitBuffer encoded = writer.toBitBuffer();
+        phase(CompressionMetrics.Phase.ENCODE, start);
+
+        bitsWritten += writer.getBitLength();
+        endMetrics(counts == null ? null : counts.counts(), text.length(), encoded.getBitLength());
+        return encoded;
+    }
+
+
+    public String decodeBits(BitBuffer encoded) {
+        if (encoded == null || encoded.getBitLength() == 0 || codeBook == null) {
+            return "";
+        }
+
+        beginMetrics("decode");
+        long start = System.nanoTime();
+        String decoded = HuffmanCodec.decode(codeBook, encoded);
+        phase(CompressionMetrics.Phase.DECODE, start);
+        bitsRead += encoded.getBitLength();
+        endMetrics(null, decoded.length(), encoded.getBitLength());
+        return decoded;
+    }
+
+    // Streams the text to `out` in bounded chunks instead of building one String; returns the chars written
+    public long decodeBits(BitBuffer encoded, Writer out) throws IOException {
+        if (encoded == null || encoded.getBitLength() == 0 || codeBook == null) { return 0; }
+
+        beginMetrics("decode");
+        long start = System.nanoTime();
+        long chars = HuffmanCodec.decode(codeBook, encoded, out);
+        phase(CompressionMetrics.Phase.DECODE, start);
+        bitsRead += encoded.getBitLength();
+        endMetrics(null, chars, encoded.getBitLength());
+        return chars;
+    }
+
+    public long decodeBits(BitBuffer encoded, WritableByteChannel out, Charset charset) throws IOException {
+        if (encoded == null || encoded.getBitLength() == 0 || codeBook == null) { return 0; }
+
+        beginMetrics("decode");
+        long start = System.nanoTime();
+        long chars = HuffmanCodec.decode(codeBook, encoded, out, charset);
+        phase(CompressionMetrics.Phase.DECODE, start);
+        bitsRead += encoded.getBitLength();
+        endMetrics(null, chars, encoded.getBitLength());
+        return chars;
+    }
+
+
+    // Byte alphabet: counts and codes the bytes directly, with no charset decoding into a String
+    public BitBuffer encodeBytes(byte[] data) {
+        if (data == null || data.length == 0) { return new BitBuffer(new long[0], 0); }
+
+        beginMetrics("encode");
+        long start = System.nanoTime();
+        Histogram counts = null;
+        if (staticCodeBook != null && coversBytes(staticCodeBook, data)) {
+            unconstrainedBits = CompressionStats.UNMEASURED;
+            installCodeBook(staticCodeBook, (Histogram) null);
+            phase(CompressionMetrics.Phase.CODES, start);
+        } else {
+            counts = Histogram.ofBytesParallel(data, ForkJoinPool.commonPool());
+            phase(CompressionMetrics.Phase.FREQUENCY, start);
+            buildCodes(counts);
+        }
+
+        start = System.nanoTime();
+        long totalBits = 0;
+        if (counts == null) {
+            totalBits = data.length * 8L;
+        } else {
+            for (int i = 0; i < codeBook.size(); i++) {
+                totalBits += (long) codeBook.lengthAt(i) * counts.count(codeBook.symbolAt(i));
+            }
+        }
+
+        BitWriter writer = new BitWriter(totalBits);
+        HuffmanCodec.encodeBytes(codeBook, data, 0, data.length, writer);
+        BitBuffer encoded = writer.toBitBuffer();
+        phase(CompressionMetrics.Phase.ENCODE, start);
+
+        bitsWritten += writer.getBitLength();
+        endMetrics(counts == null ? null : counts.counts(), data.length, encoded.getBitLength());
+        return encoded;
+    }
+
+    public byte[] decodeBytes(BitBuffer encoded) {
+        if (encoded == null || encoded.getBitLength() == 0 || codeBook == null) {
+            return new byte[0];
+        }
+
+        beginMetrics("decode");
+        long start = System.nanoTime();
+        byte[] decoded = HuffmanCodec.decodeBytes(codeBook, encoded);
+        phase(CompressionMetrics.Phase.DECODE, start);
+        bitsRead += encoded.getBitLength();
+        endMetrics(null, decoded.length, encoded.getBitLength());
+        return decoded;
+    }
+
+    private static boolean coversBytes(CodeBook book, byte[] data) {
+        boolean[] present = new boolean[256];
+        for (byte b : data) { present[b & 0xFF] = true; }
+        for (int s = 0; s < 256; s++) {
+            if (present[s] && !book.contains(s)) { return false; }
+        }
+        return true;
+    }
+
+    // Many short records under one table and one header; HuffmanBatch.open decodes any record alone
+    public byte[] encodeBatch(List<String> records) {
+        beginMetrics("encode");
+        long start = System.nanoTime();
+        Histogram counts = null;
+        if (staticCodeBook != null && records.stream().allMatch(r -> covers(staticCodeBook, r))) {
+            unconstrainedBits = CompressionStats.UNMEASURED;
+            installCodeBook(staticCodeBook, (Histogram) null);
+            phase(CompressionMetrics.Phase.CODES, start);
+        } else {
+            counts = HuffmanBatch.histogram(records);
+            phase(CompressionMetrics.Phase.FREQUENCY, start);
+            buildCodes(counts);
+        }
+
+        start = System.nanoTime();
+        byte[] packed = HuffmanBatch.encode(codeBook, records);
+        phase(CompressionMetrics.Phase.ENCODE, start);
+
+        long symbols = 0;
+        for (String record : records) { symbols += record.length(); }
+        // Code bits only, as for the other encode calls; the header, table and offsets are not counted
+        long bodyBits = HuffmanBatch.bodyBits(packed);
+        bitsWritten += bodyBits;
+        endMetrics(counts == null ? null : counts.counts(), symbols, bodyBits);
+        return packed;
+    }
+
+    // Code point alphabet: a supplementary character is one symbol, and the table stays sparse
+    public BitBuffer encodeCodePoints(String text) {
+        if (text == null || text.isEmpty()) { return new BitBuffer(new long[0], 0); }
+
+        beginMetrics("encode");
+        long start = System.nanoTime();
+        long[] packedCounts = HuffmanCodec.countCodePoints(text);
+        start = phase(CompressionMetrics.Phase.FREQUENCY, start);
+        HuffmanTree tree = HuffmanCodec.codePointTree(packedCounts);
+        treeBuilds++;
+        unconstrainedBits = tree.cost();
+        start = phase(CompressionMetrics.Phase.TREE, start);
+        installCodeBook(tree.toCodeBook(maxCodeLength), (Histogram) null);
+        start = phase(CompressionMetrics.Phase.CODES, start);
+
+        BitWriter writer = new BitWriter(text.length() * 8L);
+        HuffmanCodec.encodeCodePoints(codeBook, text, writer);
+        BitBuffer encoded = writer.toBitBuffer();
+        phase(CompressionMetrics.Phase.ENCODE, start);
+
+        bitsWritten += writer.getBitLength();
+        int[] counts = new int[packedCounts.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = (int) (packedCounts[i] >>> 21);
+        }
+        endMetrics(counts, text.codePointCount(0, text.length()), encoded.getBitLength());
+        return encoded;
+    }
+
+    public String decodeCodePoints(BitBuffer encoded) {
+        if (encoded == null || encoded.getBitLength() == 0 || codeBook == null) {
+            return "";
+        }
+
+        beginMetrics("decode");
+        long start = System.nanoTime();
+        String decoded = HuffmanCodec.decodeCodePoints(codeBook, encoded);
+        phase(CompressionMetrics.Phase.DECODE, start);
+        bitsRead += encoded.getBitLength();
+        endMetrics(null, decoded.codePointCount(0, decoded.length()), encoded.getBitLength());
+        return decoded;
+    }
+
+
     public String decode(String encodedText) {
-        if (encodedText == null || encodedText.isEmpty() || root == null) {
+        if (encodedText == null || encodedText.isEmpty() || codeBook == null) {
             return "";
         }
 
+        beginMetrics("decode");
+        long start = System.nanoTime();
+        HuffmanNode root = getRoot();
+        start = phase(CompressionMetrics.Phase.CODES, start);
         StringBuilder decoded = new StringBuilder();
         HuffmanNode current = root;
 
@@ -106,20 +501,20 @@ public class HuffmanCoding {
                 current = current.right;
 
             if (current.isLeaf()) {
-                decoded.append(current.character);
+                decoded.appendCodePoint(current.symbol);
                 current = root;
             }
         }
+        phase(CompressionMetrics.Phase.DECODE, start);
 
+        endMetrics(null, decoded.length(), encodedText.length());
         return decoded.toString();
     }
 
     
+    // Replaces this instance's table; threads sharing one table should use HuffmanCodec instead
     public String decode(String encodedText, Map<Character, Integer> frequencies) {
-        root = buildHuffmanTree(frequencies);
-        codes.clear();
-        reverseCodes.clear();
-        generateCodes(root, "");
+        installCodeBook(buildCodeBook(frequencies), frequencies);
 
         return decode(encodedText);
     }
@@ -139,11 +534,33 @@ public class HuffmanCoding {
                 );
     }
 
+    public CompressionStats getCompressionStats(String originalText, BitBuffer encoded) {
+        int originalBits = originalText.length() * 8;
+        int encodedBits = (int) encoded.getBitLength();
+        double compressionRatio = originalBits > 0 ? (1.0 - (double)encodedBits / originalBits) * 100 : 0.0;
+
+        CompressionStats stats = new CompressionStats(
+                originalText.length(),
+                originalBits,
+                encodedBits,
+                compressionRatio,
+                originalBits - encodedBits
+                );
+        stats.packedBytes = encoded.getByteLength();
+        stats.bitsWritten = bitsWritten;
+        stats.bitsRead = bitsRead;
+        stats.codeLengthCap = maxCodeLength;
+        stats.maxCodeLength = codeBook == null ? 0 : codeBook.getMaxLength();
+        stats.unconstrainedBits = unconstrainedBits;
+        stats.metrics = lastEncode;
+        return stats;
+    }
+
     public void printCodes() {
         System.out.println("\nHuffman Codes: ");
         System.out.println("-".repeat(40));
 
-        List<Map.Entry<Character, String>> sortedCodes = new ArrayList<>(codes.entrySet());
+        List<Map.Entry<Character, String>> sortedCodes = new ArrayList<>(codes().entrySet());
         sortedCodes.sort(Comparator.comparingInt(e -> e.getValue().length()));
 
         for (Map.Entry<Character, String> entry : sortedCodes) {
@@ -161,28 +578,150 @@ public class HuffmanCoding {
     }
 
     public Map<Character, String> getCodes() {
-        return new HashMap<>(codes);
+        return new HashMap<>(codes());
     }
 
     public HuffmanNode getRoot() {
+        if (root == null && codeBook != null) {
+            root = canonicalTree();
+        }
         return root;
     }
 
-    public void saveEncodedData(String filename, String encodedText, Map<Character, Integer> frequencies) throws IOException {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(filename))) {
-            oos.writeObject(encodedText);
-            oos.writeObject(frequencies);
+    public long getBitsWritten() { return bitsWritten; }
+
+    public long getBitsRead() { return bitsRead; }
+
+    public CodeBook getCodeBook() {
+        return codeBook;
+    }
+
+    // Writes the current code lengths and the packed bits; no tree or frequencies are stored
+    public void saveEncodedData(String filename, BitBuffer encoded) throws IOException {
+        if (codeBook == null) {
+            throw new IllegalStateException("Nothing has been encoded yet");
+        }
+
+        boolean wide = codeBook.getMaxSymbol() > Character.MAX_VALUE;
+        int entryBytes = wide ? 5 : 3;
+        ByteBuffer header = ByteBuffer.allocate(4 + 1 + 4 + codeBook.size() * entryBytes + 8);
+        header.putInt(FILE_MAGIC);
+        header.put(wide ? FILE_VERSION_WIDE : FILE_VERSION);
+        header.putInt(codeBook.size());
+        for (int i = 0; i < codeBook.size(); i++) {
+            if (wide) {
+                header.putInt(codeBook.symbolAt(i));
+            } else {
+                header.putChar((char) codeBook.symbolAt(i));
+            }
+            header.put((byte) codeBook.lengthAt(i));
+        }
+        header.putLong(encoded.getBitLength());
+        header.flip();
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filename),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header);
+
+            ByteBuffer chunk = ByteBuffer.allocateDirect(IO_CHUNK_BYTES);
+            long remainingBytes = encoded.getByteLength();
+            int word = 0;
+            while (remainingBytes > 0) {
+                chunk.clear();
+                while (chunk.remaining() >= 8 && word < encoded.words.length) {
+                    chunk.putLong(encoded.words[word++]);
+                }
+                chunk.flip();
+                chunk.limit((int) Math.min(chunk.limit(), remainingBytes));
+                remainingBytes -= chunk.remaining();
+                writeFully(channel, chunk);
+            }
+        }
+    }
+
+    // Reads a file written by saveEncodedData and makes its code table active for decodeBits
+    public BitBuffer loadEncodedData(String filename) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            ByteBuffer fixed = readFully(channel, 4 + 1 + 4);
+            if (fixed.getInt() != FILE_MAGIC) {
+                throw new IOException(filename + " is not a Huffman encoded file");
+            }
+            byte version = fixed.get();
+            if (version != FILE_VERSION && version != FILE_VERSION_WIDE) {
+                throw new IOException("Unsupported file version " + version);
+            }
+            boolean wide = version == FILE_VERSION_WIDE;
+            int symbolCount = fixed.getInt();
+            if (symbolCount < 0 || symbolCount > (wide ? Character.MAX_CODE_POINT + 1 : 65536)) {
+                throw new IOException("Corrupt header: " + symbolCount + " symbols");
+            }
+
+            ByteBuffer table = readFully(channel, symbolCount * (wide ? 5 : 3) + 8);
+            int[] symbols = new int[symbolCount];
+            int[] lengths = new int[symbolCount];
+            for (int i = 0; i < symbolCount; i++) {
+                symbols[i] = wide ? table.getInt() : table.getChar();
+                lengths[i] = table.get();
+            }
+            long bitLength = table.getLong();
+
+            long byteLength = (bitLength + 7) >>> 3;
+            if (byteLength > channel.size() - channel.position()) {
+                throw new IOException("Truncated file: expected " + byteLength + " payload bytes");
+            }
+
+            long[] words = new long[(int) ((bitLength + 63) >>> 6)];
+            ByteBuffer chunk = ByteBuffer.allocateDirect(IO_CHUNK_BYTES);
+            int word = 0;
+            long remainingBytes = byteLength;
+            while (remainingBytes > 0) {
+                chunk.clear();
+                chunk.limit((int) Math.min(chunk.capacity(), remainingBytes));
+                while (chunk.hasRemaining()) {
+                    if (channel.read(chunk) < 0) { throw new EOFException(filename); }
+                }
+                remainingBytes -= chunk.position();
+                chunk.flip();
+                while (chunk.remaining() >= 8) {
+                    words[word++] = chunk.getLong();
+                }
+                if (chunk.hasRemaining()) {
+                    long last = 0;
+                    int shift = 56;
+                    while (chunk.hasRemaining()) {
+                        last |= (chunk.get() & 0xFFL) << shift;
+                        shift -= 8;
+                    }
+                    words[word++] = last;
+                }
+            }
+
+            CodeBook book;
+            try {
+                book = CodeBook.fromLengths(symbols, lengths);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Corrupt code table: " + e.getMessage());
+            }
+            installCodeBook(book, (Histogram) null);
+            return new BitBuffer(words, bitLength);
         }
     }
 
-    @SuppressWarnings("unchecked")
-    public Object[] loadEncodedData(String filename) throws IOException, ClassNotFoundException {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(filename))) {
-            String encodedText = (String) ois.readObject();
-            Map<Character, Integer> frequencies = (Map<Character, Integer>) ois.readObject();
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
 
-            return new Object[]{encodedText, frequencies};
+    private static ByteBuffer readFully(FileChannel channel, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Unexpected end of file");
+            }
         }
+        buffer.flip();
+        return buffer;
     }
 
 
@@ -225,11 +764,23 @@ public class HuffmanCoding {
 
 
 class CompressionStats {
+    String codec;
     int originalSize;
     int originalBits;
     int encodedBits;
     double compressionRatio;
     int spaceSaved;
+    int packedBytes;
+    long bitsWritten;
+    long bitsRead;
+    int codeLengthCap;
+    int maxCodeLength;
+    long unconstrainedBits;
+    CompressionMetrics metrics;
+
+    // unconstrainedBits when the table was reused and no tree was built for this message,
+    // bitsWritten and bitsRead for a codec that keeps no bit counters
+    static final long UNMEASURED = -1;
 
     public CompressionStats(int originalSize, int originalBits, int encodedBits, double compressionRatio, int spaceSaved) {
         this.originalSize = originalSize;
@@ -239,14 +790,55 @@ class CompressionStats {
         this.spaceSaved = spaceSaved;
     }
 
+    // Extra size caused by the code length cap, relative to unconstrained Huffman; NaN for a reused table
+    public double getCapCostPercent() {
+        if (unconstrainedBits == UNMEASURED) { return Double.NaN; }
+        return unconstrainedBits > 0 ? (encodedBits - unconstrainedBits) * 100.0 / unconstrainedBits : 0.0;
+    }
+
+    // Phase timings and entropy figures of the encode call, null if not measured
+    public CompressionMetrics getMetrics() { return metrics; }
+
     @Override
     public String toString() {
-        return String.format(
+        String summary = String.format(
                 "Original size: %d bits%n" + 
                 "Encoded size: %d bits%n" + 
                 "Compression ratio: %.2f%%%n" +
                 "Space saved: %d bits", 
                 originalBits, encodedBits, compressionRatio, spaceSaved
                 );
+        if (codec != null) {
+            summary = "Codec: " + codec + String.format("%n") + summary;
+        }
+        if (bitsWritten == UNMEASURED) {
+            summary += String.format("%nPacked size: %d bytes", packedBytes);
+        } else if (packedBytes > 0 || bitsWritten > 0 || bitsRead > 0) {
+            summary += String.format(
+                    "%nPacked size: %d bytes%n" +
+                    "Bits written: %d%n" +
+                    "Bits read: %d",
+                    packedBytes, bitsWritten, bitsRead
+                    );
+        }
+        if (codeLengthCap > 0 && unconstrainedBits == UNMEASURED) {
+            summary += String.format(
+                    "%nCode length cap: %d bits (longest code: %d)%n" +
+                    "Unconstrained size: n/a (reused table)%n" +
+                    "Cost of cap: n/a",
+                    codeLengthCap, maxCodeLength
+                    );
+        } else if (codeLengthCap > 0) {
+            summary += String.format(
+                    "%nCode length cap: %d bits (longest code: %d)%n" +
+                    "Unconstrained size: %d bits%n" +
+                    "Cost of cap: %.3f%%",
+                    codeLengthCap, maxCodeLength, unconstrainedBits, getCapCostPercent()
+                    );
+        }
+        if (metrics != null) {
+            summary += String.format("%n") + metrics;
+        }
+        return summary;
     }
 }
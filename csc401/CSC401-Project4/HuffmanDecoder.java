@@ -0,0 +1,208 @@
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Reusable decoder for blocks in the HuffmanStream chunk layout (as written by
+ * HuffmanEncoder or HuffmanStream), of any BlockType. Allocates nothing once
+ * constructed: the code table and lookup table are fields rebuilt in place
+ * for every block.
+ *
+ * Codes up to HuffmanEncoder.MAX_CODE_LENGTH bits decode with one lookup per
+ * symbol. Longer codes, which only HuffmanStream writes, fall back to a
+ * canonical decode that walks the code one bit at a time.
+ *
+ * Not thread-safe; give each thread its own instance.
+ */
+public final class HuffmanDecoder {
+    private static final int SYMBOLS = 256;
+    private static final int TABLE_BITS = HuffmanEncoder.MAX_CODE_LENGTH;
+    private static final int MAX_LENGTH = 63;
+
+    private final long[] keys = new long[SYMBOLS];
+    private final boolean[] seen = new boolean[SYMBOLS];
+    private final int[] table = new int[1 << TABLE_BITS];       // symbol << 8 | length, 0 if unused
+    private final int[] sortedSymbols = new int[SYMBOLS];
+    private final long[] firstCode = new long[MAX_LENGTH + 1];
+    private final int[] firstIndex = new int[MAX_LENGTH + 1];
+    private final int[] lengthCount = new int[MAX_LENGTH + 1];
+
+    // Decodes one block from src into dst and advances both; returns the decoded length,
+    // or 0 for an end marker. Nothing is consumed if the block is corrupt or dst is too small.
+    public int decode(ByteBuffer src, ByteBuffer dst) throws IOException {
+        int p = src.position();
+        int limit = src.limit();
+        if (limit - p < 4) { throw new IOException("Truncated block header"); }
+        int length = getInt(src, p);
+        p += 4;
+        if (length == 0) {
+            src.position(p);
+            return 0;
+        }
+        if (length < 0) { throw new IOException("Corrupt block length " + length); }
+
+        if (limit - p < 1) { throw new IOException("Truncated block header"); }
+        int type = src.get(p++) & 0xFF;
+        if (type != BlockType.HUFFMAN) {
+            return decodeOther(src, p, type, length, dst);
+        }
+
+        if (limit - p < 2) { throw new IOException("Truncated block header"); }
+        int symbolCount = (src.get(p) & 0xFF) << 8 | (src.get(p + 1) & 0xFF);
+        p += 2;
+        if (symbolCount == 0 || symbolCount > SYMBOLS || limit - p < 2 * symbolCount + 4) {
+            throw new IOException("Corrupt block header: " + symbolCount + " symbols");
+        }
+
+        Arrays.fill(seen, false);
+        for (int i = 0; i < symbolCount; i++) {
+            int symbol = src.get(p++) & 0xFF;
+            int codeLength = src.get(p++) & 0xFF;
+            if (codeLength < 1 || codeLength > MAX_LENGTH || seen[symbol]) {
+                throw new IOException("Corrupt code table entry for symbol " + symbol);
+            }
+            seen[symbol] = true;
+            keys[i] = (long) codeLength << 8 | symbol;
+        }
+        int maxLength = buildCanonical(symbolCount);
+
+        int payloadBytes = getInt(src, p);
+        p += 4;
+        if (payloadBytes < 0 || payloadBytes > limit - p || payloadBytes > (long) length * MAX_LENGTH / 8 + 1) {
+            throw new IOException("Corrupt payload length " + payloadBytes);
+        }
+        if (dst.remaining() < length) { throw new BufferOverflowException(); }
+
+        int out = dst.position();
+        if (maxLength <= TABLE_BITS) {
+            decodeWithTable(src, p, p + payloadBytes, dst, out, length, symbolCount, maxLength);
+        } else {
+            decodeCanonical(src, p, p + payloadBytes, dst, out, length);
+        }
+
+        src.position(p + payloadBytes);
+        dst.position(out + length);
+        return length;
+    }
+
+    // Raw, single-symbol and RLE blocks; p is just past the type byte
+    private static int decodeOther(ByteBuffer src, int p, int type, int length, ByteBuffer dst) throws IOException {
+        int limit = src.limit();
+        int out = dst.position();
+        if (type == BlockType.RAW) {
+            if (limit - p < length) { throw new IOException("Truncated raw block"); }
+            if (dst.remaining() < length) { throw new BufferOverflowException(); }
+            for (int i = 0; i < length; i++) {
+                dst.put(out + i, src.get(p + i));
+            }
+            p += length;
+        } else if (type == BlockType.SINGLE) {
+            if (limit - p < 1) { throw new IOException("Truncated single-symbol block"); }
+            if (dst.remaining() < length) { throw new BufferOverflowException(); }
+            byte value = src.get(p++);
+            for (int i = 0; i < length; i++) {
+                dst.put(out + i, value);
+            }
+        } else if (type == BlockType.RLE) {
+            if (limit - p < 4) { throw new IOException("Truncated RLE block"); }
+            int bodyBytes = getInt(src, p);
+            p += 4;
+            if (bodyBytes < 2 || bodyBytes > limit - p) { throw new IOException("Corrupt RLE body length " + bodyBytes); }
+            if (dst.remaining() < length) { throw new BufferOverflowException(); }
+            BlockType.readRleBody(src, p, bodyBytes, dst, out, length);
+            p += bodyBytes;
+        } else {
+            throw new IOException("Unknown block type " + type);
+        }
+        src.position(p);
+        dst.position(out + length);
+        return length;
+    }
+
+    // Canonical numbering from the (length, symbol) keys; checks the code is complete and returns its longest length
+    private int buildCanonical(int n) throws IOException {
+        Arrays.sort(keys, 0, n);
+        Arrays.fill(lengthCount, 0);
+        long code = 0;
+        int previousLength = (int) (keys[0] >>> 8);
+        for (int i = 0; i < n; i++) {
+            int codeLength = (int) (keys[i] >>> 8);
+            code <<= codeLength - previousLength;
+            if (codeLength != previousLength || i == 0) {
+                firstCode[codeLength] = code;
+                firstIndex[codeLength] = i;
+            }
+            previousLength = codeLength;
+            sortedSymbols[i] = (int) (keys[i] & 0xFF);
+            lengthCount[codeLength]++;
+            code++;
+        }
+        if (n > 1 && code != 1L << previousLength) {
+            throw new IOException("Code lengths do not form a complete prefix code");
+        }
+        return previousLength;
+    }
+
+    private void decodeWithTable(ByteBuffer src, int p, int end, ByteBuffer dst, int out, int length,
+                                 int n, int tableBits) throws IOException {
+        int size = 1 << tableBits;
+        Arrays.fill(table, 0, size, 0);
+        for (int i = 0; i < n; i++) {
+            int codeLength = (int) (keys[i] >>> 8);
+            int code = (int) (firstCode[codeLength] + (i - firstIndex[codeLength]));
+            int from = code << (tableBits - codeLength);
+            Arrays.fill(table, from, from + (1 << (tableBits - codeLength)), sortedSymbols[i] << 8 | codeLength);
+        }
+
+        long acc = 0;          // pending bits, left-aligned
+        int bits = 0;
+        int shift = 64 - tableBits;
+        for (int i = 0; i < length; i++) {
+            if (bits < tableBits) {
+                while (bits <= 56 && p < end) {
+                    acc |= (src.get(p++) & 0xFFL) << (56 - bits);
+                    bits += 8;
+                }
+            }
+            int entry = table[(int) (acc >>> shift)];
+            int codeLength = entry & 0xFF;
+            if (entry == 0 || codeLength > bits) {
+                throw new IOException("Corrupt or truncated payload at symbol " + i);
+            }
+            acc <<= codeLength;
+            bits -= codeLength;
+            dst.put(out + i, (byte) (entry >>> 8));
+        }
+    }
+
+    private void decodeCanonical(ByteBuffer src, int p, int end, ByteBuffer dst, int out, int length)
+            throws IOException {
+        int current = 0;
+        int bitsLeft = 0;
+        for (int i = 0; i < length; i++) {
+            long code = 0;
+            int codeLength = 0;
+            while (true) {
+                if (bitsLeft == 0) {
+                    if (p == end) { throw new IOException("Truncated payload at symbol " + i); }
+                    current = src.get(p++) & 0xFF;
+                    bitsLeft = 8;
+                }
+                code = code << 1 | ((current >>> --bitsLeft) & 1);
+                codeLength++;
+                if (codeLength > MAX_LENGTH) { throw new IOException("Corrupt payload at symbol " + i); }
+                long offset = code - firstCode[codeLength];
+                if (lengthCount[codeLength] != 0 && offset >= 0 && offset < lengthCount[codeLength]) {
+                    dst.put(out + i, (byte) sortedSymbols[firstIndex[codeLength] + (int) offset]);
+                    break;
+                }
+            }
+        }
+    }
+
+    private static int getInt(ByteBuffer src, int index) {
+        return (src.get(index) & 0xFF) << 24 | (src.get(index + 1) & 0xFF) << 16
+                | (src.get(index + 2) & 0xFF) << 8 | (src.get(index + 3) & 0xFF);
+    }
+}
@@ -0,0 +1,275 @@
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Reusable byte encoder that allocates nothing once constructed. All working
+ * arrays (histogram, tree, code table) are fields sized for the 256-symbol
+ * byte alphabet and overwritten on every call, and both buffers are accessed
+ * by absolute index, so heap and direct buffers work alike and compressed
+ * output can go straight to a channel.
+ *
+ * Each call writes one block in the HuffmanStream chunk layout (big-endian):
+ *   int length, byte blockType, body
+ * where the block type (Huffman, raw, single-symbol or RLE) is chosen from the
+ * histogram as described in BlockType. An empty source writes only the int 0,
+ * which HuffmanStream reads as its end marker.
+ *
+ * Codes are limited to MAX_CODE_LENGTH bits so HuffmanDecoder can decode with
+ * one lookup per symbol. The limit is applied by clamping and then repairing
+ * the Kraft sum in place, not with package-merge, which would allocate.
+ *
+ * Not thread-safe; give each thread its own instance.
+ */
+public final class HuffmanEncoder {
+    public static final int MAX_CODE_LENGTH = 11;
+    private static final int SYMBOLS = 256;
+
+    private final int[] counts = new int[SYMBOLS];
+    private final int[][] stripes = new int[3][SYMBOLS];
+    private final long[] keys = new long[SYMBOLS];
+    private final long[] weight = new long[2 * SYMBOLS - 1];
+    private final int[] parent = new int[2 * SYMBOLS - 1];
+    private final int[] depth = new int[2 * SYMBOLS - 1];
+    private final int[] leafSymbol = new int[SYMBOLS];
+    private final int[] lengths = new int[SYMBOLS];     // by symbol, 0 if absent
+    private final int[] codes = new int[SYMBOLS];
+    private int lastType;
+
+    // Largest block encode can write for a source of `length` bytes
+    public static int maxEncodedLength(int length) {
+        return 4 + 1 + 2 + 2 * SYMBOLS + 4 + (int) (((long) length * MAX_CODE_LENGTH + 7) >>> 3);
+    }
+
+    // Encodes all of src's remaining bytes into dst and advances both; returns bytes written.
+    // Throws BufferOverflowException, leaving both buffers untouched, if dst is too small.
+    public int encode(ByteBuffer src, ByteBuffer dst) {
+        int start = src.position();
+        int length = src.remaining();
+        if (length == 0) {
+            if (dst.remaining() < 4) { throw new BufferOverflowException(); }
+            int out = dst.position();
+            putInt(dst, out, 0);
+            dst.position(out + 4);
+            return 4;
+        }
+
+        count(src, start, length);
+        int distinct = 0;
+        int lastSymbol = 0;
+        for (int s = 0; s < SYMBOLS; s++) {
+            if (counts[s] != 0) {
+                distinct++;
+                lastSymbol = s;
+            }
+        }
+        long estimate = BlockType.estimateHuffmanBytes(counts, distinct, length);
+        long rleBytes = distinct == 1 ? 0 : BlockType.rleBytes(src, start, length, length);
+        int type = BlockType.choose(length, distinct, rleBytes, estimate);
+
+        int n = 0;
+        int payloadBytes = 0;
+        if (type == BlockType.HUFFMAN) {
+            n = buildLengths();
+            assignCodes(n);
+            long payloadBits = 0;
+            for (int s = 0; s < SYMBOLS; s++) {
+                payloadBits += (long) counts[s] * lengths[s];
+            }
+            payloadBytes = (int) ((payloadBits + 7) >>> 3);
+            if (2 + 2L * n + 4 + payloadBytes >= Math.min(length, rleBytes)) {
+                type = rleBytes < length ? BlockType.RLE : BlockType.RAW;
+            }
+        }
+        lastType = type;
+
+        int total = type == BlockType.SINGLE ? 4 + 1 + 1
+                : type == BlockType.RAW ? 4 + 1 + length
+                : type == BlockType.RLE ? 4 + 1 + 4 + (int) rleBytes
+                : 4 + 1 + 2 + 2 * n + 4 + payloadBytes;
+        if (dst.remaining() < total) { throw new BufferOverflowException(); }
+
+        int out = dst.position();
+        putInt(dst, out, length);
+        dst.put(out + 4, (byte) type);
+        out += 5;
+        if (type != BlockType.HUFFMAN) {
+            if (type == BlockType.SINGLE) {
+                dst.put(out, (byte) lastSymbol);
+            } else if (type == BlockType.RAW) {
+                for (int i = 0; i < length; i++) {
+                    dst.put(out + i, src.get(start + i));
+                }
+            } else {
+                putInt(dst, out, (int) rleBytes);
+                BlockType.writeRleBody(src, start, length, dst, out + 4);
+            }
+            src.position(start + length);
+            dst.position(dst.position() + total);
+            return total;
+        }
+
+        dst.put(out, (byte) (n >>> 8));
+        dst.put(out + 1, (byte) n);
+        out += 2;
+        for (int i = 0; i < n; i++) {
+            int symbol = (int) (keys[i] & 0xFF);
+            dst.put(out++, (byte) symbol);
+            dst.put(out++, (byte) lengths[symbol]);
+        }
+        putInt(dst, out, payloadBytes);
+        out += 4;
+
+        // Codes are at most 11 bits, so the accumulator never holds more than 43 pending bits
+        long acc = 0;
+        int bits = 0;
+        for (int i = start, end = start + length; i < end; i++) {
+            int symbol = src.get(i) & 0xFF;
+            acc = acc << lengths[symbol] | codes[symbol];
+            bits += lengths[symbol];
+            if (bits >= 32) {
+                bits -= 32;
+                putInt(dst, out, (int) (acc >>> bits));
+                out += 4;
+            }
+        }
+        while (bits >= 8) {
+            bits -= 8;
+            dst.put(out++, (byte) (acc >>> bits));
+        }
+        if (bits > 0) {
+            dst.put(out++, (byte) (acc << (8 - bits)));
+        }
+
+        src.position(start + length);
+        dst.position(out);
+        return total;
+    }
+
+    // BlockType of the last non-empty block written
+    public int getLastBlockType() { return lastType; }
+
+    private void count(ByteBuffer src, int start, int length) {
+        Arrays.fill(counts, 0);
+        for (int[] stripe : stripes) { Arrays.fill(stripe, 0); }
+        int end = start + length;
+        int i = start;
+        for (; i + 4 <= end; i += 4) {
+            counts[src.get(i) & 0xFF]++;
+            stripes[0][src.get(i + 1) & 0xFF]++;
+            stripes[1][src.get(i + 2) & 0xFF]++;
+            stripes[2][src.get(i + 3) & 0xFF]++;
+        }
+        for (; i < end; i++) {
+            counts[src.get(i) & 0xFF]++;
+        }
+        for (int s = 0; s < SYMBOLS; s++) {
+            counts[s] += stripes[0][s] + stripes[1][s] + stripes[2][s];
+        }
+    }
+
+    // Huffman code lengths into lengths[], by the same two-queue merge as HuffmanTree; returns the symbol count
+    private int buildLengths() {
+        Arrays.fill(lengths, 0);
+        int n = 0;
+        for (int s = 0; s < SYMBOLS; s++) {
+            if (counts[s] != 0) { keys[n++] = (long) counts[s] << 8 | s; }
+        }
+        if (n == 1) {
+            lengths[(int) (keys[0] & 0xFF)] = 1;
+            return 1;
+        }
+
+        Arrays.sort(keys, 0, n);
+        for (int i = 0; i < n; i++) {
+            weight[i] = keys[i] >>> 8;
+            leafSymbol[i] = (int) (keys[i] & 0xFF);
+        }
+        int nextLeaf = 0;
+        int nextInternal = n;
+        for (int created = n; created < 2 * n - 1; created++) {
+            int a = (nextInternal == created || (nextLeaf < n && weight[nextLeaf] <= weight[nextInternal]))
+                    ? nextLeaf++ : nextInternal++;
+            int b = (nextInternal == created || (nextLeaf < n && weight[nextLeaf] <= weight[nextInternal]))
+                    ? nextLeaf++ : nextInternal++;
+            parent[a] = created;
+            parent[b] = created;
+            weight[created] = weight[a] + weight[b];
+        }
+
+        int root = 2 * n - 2;
+        depth[root] = 0;
+        boolean tooLong = false;
+        for (int node = root - 1; node >= 0; node--) {
+            depth[node] = depth[parent[node]] + 1;
+        }
+        for (int i = 0; i < n; i++) {
+            lengths[leafSymbol[i]] = depth[i];
+            tooLong |= depth[i] > MAX_CODE_LENGTH;
+        }
+        if (tooLong) { limitLengths(); }
+        return n;
+    }
+
+    // Clamps to MAX_CODE_LENGTH, then lengthens rare codes until the Kraft sum fits and
+    // shortens frequent ones until it is exactly full again (the code stays complete)
+    private void limitLengths() {
+        int limit = MAX_CODE_LENGTH;
+        long capacity = 1L << limit;
+        long kraft = 0;
+        for (int s = 0; s < SYMBOLS; s++) {
+            if (lengths[s] > limit) { lengths[s] = limit; }
+            if (lengths[s] != 0) { kraft += 1L << (limit - lengths[s]); }
+        }
+
+        while (kraft > capacity) {
+            int best = -1;
+            for (int s = 0; s < SYMBOLS; s++) {
+                if (lengths[s] != 0 && lengths[s] < limit && (best < 0 || lengths[s] > lengths[best]
+                        || (lengths[s] == lengths[best] && counts[s] < counts[best]))) {
+                    best = s;
+                }
+            }
+            kraft -= 1L << (limit - lengths[best] - 1);
+            lengths[best]++;
+        }
+
+        while (kraft < capacity) {
+            int best = -1;
+            for (int s = 0; s < SYMBOLS; s++) {
+                if (lengths[s] > 1 && (1L << (limit - lengths[s])) <= capacity - kraft && (best < 0
+                        || lengths[s] > lengths[best] || (lengths[s] == lengths[best] && counts[s] > counts[best]))) {
+                    best = s;
+                }
+            }
+            kraft += 1L << (limit - lengths[best]);
+            lengths[best]--;
+        }
+    }
+
+    // Canonical codes, numbered in (length, symbol) order like CodeBook; leaves that order in keys[]
+    private void assignCodes(int n) {
+        int k = 0;
+        for (int s = 0; s < SYMBOLS; s++) {
+            if (lengths[s] != 0) { keys[k++] = (long) lengths[s] << 8 | s; }
+        }
+        Arrays.sort(keys, 0, n);
+
+        int code = 0;
+        int previousLength = (int) (keys[0] >>> 8);
+        for (int i = 0; i < n; i++) {
+            int length = (int) (keys[i] >>> 8);
+            code <<= length - previousLength;
+            previousLength = length;
+            codes[(int) (keys[i] & 0xFF)] = code++;
+        }
+    }
+
+    // Big-endian regardless of the buffer's own byte order
+    static void putInt(ByteBuffer dst, int index, int value) {
+        dst.put(index, (byte) (value >>> 24));
+        dst.put(index + 1, (byte) (value >>> 16));
+        dst.put(index + 2, (byte) (value >>> 8));
+        dst.put(index + 3, (byte) value);
+    }
+}
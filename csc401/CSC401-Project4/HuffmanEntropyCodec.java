@@ -0,0 +1,77 @@
+import java.io.*;
+
+/**
+ * Huffman coding as an EntropyCodec: tables come from HuffmanCoding (so its
+ * code length cap applies) and are stored as (symbol, code length) pairs.
+ */
+public class HuffmanEntropyCodec implements EntropyCodec<CodeBook> {
+    private final HuffmanCoding huffman;
+
+    public HuffmanEntropyCodec() {
+        this(new HuffmanCoding());
+    }
+
+    public HuffmanEntropyCodec(HuffmanCoding huffman) {
+        this.huffman = huffman;
+    }
+
+    @Override
+    public String getName() { return "huffman"; }
+
+    @Override
+    public CodeBook buildTable(Histogram counts) {
+        return huffman.buildCodeBook(counts.counts());
+    }
+
+    @Override
+    public void writeTable(CodeBook table, DataOutput out) throws IOException {
+        out.writeShort(table.size());
+        for (int i = 0; i < table.size(); i++) {
+            out.writeByte(table.symbolAt(i));
+            out.writeByte(table.lengthAt(i));
+        }
+    }
+
+    @Override
+    public CodeBook readTable(DataInput in) throws IOException {
+        int symbolCount = in.readUnsignedShort();
+        if (symbolCount == 0 || symbolCount > 256) {
+            throw new IOException("Corrupt code table: " + symbolCount + " symbols");
+        }
+        int[] symbols = new int[symbolCount];
+        int[] lengths = new int[symbolCount];
+        for (int i = 0; i < symbolCount; i++) {
+            symbols[i] = in.readUnsignedByte();
+            lengths[i] = in.readUnsignedByte();
+        }
+        try {
+            return CodeBook.fromLengths(symbols, lengths);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt code table: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public BitBuffer encode(CodeBook table, byte[] data) {
+        BitWriter writer = new BitWriter(data.length * 8L);
+        for (byte b : data) {
+            int symbol = b & 0xFF;
+            writer.write(table.codeOf(symbol), table.lengthOf(symbol));
+        }
+        return writer.toBitBuffer();
+    }
+
+    @Override
+    public byte[] decode(CodeBook table, BitBuffer encoded, int length) throws IOException {
+        HuffmanTableDecoder decoder = table.decoder();
+        BitReader reader = new BitReader(encoded);
+        byte[] out = new byte[length];
+        for (int i = 0; i < length; i++) {
+            out[i] = (byte) decoder.decodeSymbol(reader);
+        }
+        if (reader.position() > encoded.getBitLength()) {
+            throw new IOException("Truncated Huffman payload");
+        }
+        return out;
+    }
+}
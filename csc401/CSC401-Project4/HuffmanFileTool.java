@@ -0,0 +1,249 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Command-line file compressor over memory-mapped files, writing the
+ * HuffmanStream format so either tool can read the other's output.
+ *
+ *   java HuffmanFileTool compress <input> <output> [chunkSize]
+ *   java HuffmanFileTool decompress <input> <output>
+ *
+ * Input is mapped with FileChannel.map in windows of at most 1 GB, so files
+ * past the 2 GB limit of a single mapping work too. Compression encodes each
+ * chunk straight from the mapping into a direct buffer that is written to the
+ * output channel; decompression first sizes the output from the chunk headers,
+ * then maps it and decodes every chunk directly into the mapping. Each output
+ * window is forced to disk before the next one is mapped.
+ */
+public class HuffmanFileTool {
+    static final long DEFAULT_WINDOW_BYTES = 1L << 30;
+    public static final int MAX_CHUNK_SIZE = 1 << 26;
+    private static final int HEADER_BYTES = 9;
+
+    private final int chunkSize;
+    private final long windowBytes;
+    private final HuffmanEncoder encoder = new HuffmanEncoder();
+    private final HuffmanDecoder decoder = new HuffmanDecoder();
+    private long bytesIn;
+    private long bytesOut;
+    private int mappings;
+
+    public HuffmanFileTool() {
+        this(HuffmanStream.DEFAULT_CHUNK_SIZE);
+    }
+
+    public HuffmanFileTool(int chunkSize) {
+        this(chunkSize, DEFAULT_WINDOW_BYTES);
+    }
+
+    // Smaller windows force several mappings on small files
+    HuffmanFileTool(int chunkSize, long windowBytes) {
+        if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("Chunk size must be between 1 and " + MAX_CHUNK_SIZE + ": " + chunkSize);
+        }
+        if (windowBytes < HuffmanEncoder.maxEncodedLength(chunkSize) || windowBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Window of " + windowBytes + " bytes cannot hold a chunk of " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        this.windowBytes = windowBytes;
+    }
+
+    public void compress(String source, String target) throws IOException {
+        try (FileChannel in = FileChannel.open(Paths.get(source), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(Paths.get(target), StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            int maxBlock = HuffmanEncoder.maxEncodedLength(chunkSize);
+            ByteBuffer output = ByteBuffer.allocateDirect(Math.max(maxBlock, 4 << 20));
+            output.putInt(HuffmanStream.STREAM_MAGIC);
+            output.put(HuffmanStream.STREAM_VERSION);
+            output.putInt(chunkSize);
+
+            long size = in.size();
+            long window = windowBytes / chunkSize * chunkSize;
+            for (long offset = 0; offset < size; offset += window) {
+                MappedByteBuffer mapped = in.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(window, size - offset));
+                mappings++;
+                while (mapped.hasRemaining()) {
+                    if (output.remaining() < maxBlock) {
+                        flush(output, out);
+                    }
+                    int length = Math.min(chunkSize, mapped.remaining());
+                    ByteBuffer chunk = mapped.slice();
+                    chunk.limit(length);
+                    encoder.encode(chunk, output);
+                    mapped.position(mapped.position() + length);
+                    bytesIn += length;
+                }
+            }
+
+            if (output.remaining() < 4) {
+                flush(output, out);
+            }
+            output.putInt(0);
+            flush(output, out);
+        }
+    }
+
+    public void decompress(String source, String target) throws IOException {
+        Path sourcePath = Paths.get(source);
+        try (FileChannel in = FileChannel.open(sourcePath, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(Paths.get(target), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            readFully(in, header, 0);
+            header.flip();
+            if (header.getInt() != HuffmanStream.STREAM_MAGIC) {
+                throw new IOException(source + " is not a Huffman stream");
+            }
+            byte version = header.get();
+            if (version != HuffmanStream.STREAM_VERSION) {
+                throw new IOException("Unsupported stream version " + version);
+            }
+            int streamChunkSize = header.getInt();
+            if (streamChunkSize <= 0 || streamChunkSize > MAX_CHUNK_SIZE) {
+                throw new IOException("Corrupt header: chunk size " + streamChunkSize);
+            }
+
+            long total = decodedSize(in, streamChunkSize);
+            long inputSize = in.size();
+            long maxBlock = HuffmanEncoder.maxEncodedLength(streamChunkSize);
+            long inputWindow = Math.max(windowBytes, maxBlock + 4);
+            long outputWindow = Math.max(streamChunkSize, windowBytes / streamChunkSize * streamChunkSize);
+
+            long inBase = HEADER_BYTES;
+            MappedByteBuffer input = in.map(FileChannel.MapMode.READ_ONLY, inBase, Math.min(inputWindow, inputSize - inBase));
+            long outBase = 0;
+            MappedByteBuffer output = null;
+            mappings++;
+
+            while (true) {
+                // Remap so the whole next chunk lies inside the input window
+                if (input.remaining() < maxBlock + 4 && inBase + input.limit() < inputSize) {
+                    inBase += input.position();
+                    input = in.map(FileChannel.MapMode.READ_ONLY, inBase, Math.min(inputWindow, inputSize - inBase));
+                    mappings++;
+                }
+                if (output == null || output.remaining() < streamChunkSize && outBase + output.limit() < total) {
+                    if (output != null) {
+                        // The force() after the loop covers only the last window
+                        output.force();
+                        outBase += output.position();
+                    }
+                    output = out.map(FileChannel.MapMode.READ_WRITE, outBase, Math.min(outputWindow, total - outBase));
+                    mappings++;
+                }
+                int length = decoder.decode(input, output);
+                if (length == 0) { break; }
+                bytesOut += length;
+            }
+            output.force();
+        }
+    }
+
+    // Sum of the chunk lengths, read from the headers alone
+    private static long decodedSize(FileChannel in, int streamChunkSize) throws IOException {
+        ByteBuffer field = ByteBuffer.allocate(6);
+        long position = HEADER_BYTES;
+        long total = 0;
+        while (true) {
+            field.clear().limit(4);
+            readFully(in, field, position);
+            int length = field.getInt(0);
+            position += 4;
+            if (length == 0) { return total; }
+            if (length < 0 || length > streamChunkSize) {
+                throw new IOException("Corrupt chunk length " + length + " at offset " + (position - 4));
+            }
+
+            field.clear().limit(1);
+            readFully(in, field, position);
+            int type = field.get(0) & 0xFF;
+            position += 1;
+            if (type == BlockType.RAW) {
+                position += length;
+            } else if (type == BlockType.SINGLE) {
+                position += 1;
+            } else if (type == BlockType.RLE) {
+                field.clear().limit(4);
+                readFully(in, field, position);
+                position += 4 + (field.getInt(0) & 0xFFFFFFFFL);
+            } else if (type == BlockType.HUFFMAN) {
+                field.clear().limit(2);
+                readFully(in, field, position);
+                int symbolCount = field.getShort(0) & 0xFFFF;
+                position += 2 + 2L * symbolCount;
+
+                field.clear().limit(4);
+                readFully(in, field, position);
+                int payloadBytes = field.getInt(0);
+                if (payloadBytes < 0) {
+                    throw new IOException("Corrupt payload length " + payloadBytes);
+                }
+                position += 4 + payloadBytes;
+            } else {
+                throw new IOException("Unknown block type " + type + " at offset " + (position - 1));
+            }
+            total += length;
+        }
+    }
+
+    private static void readFully(FileChannel in, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = in.read(buffer, position);
+            if (n < 0) { throw new EOFException("Unexpected end of file at offset " + position); }
+            position += n;
+        }
+    }
+
+    private void flush(ByteBuffer output, FileChannel out) throws IOException {
+        output.flip();
+        while (output.hasRemaining()) {
+            bytesOut += out.write(output);
+        }
+        output.clear();
+    }
+
+    public long getBytesIn() { return bytesIn; }
+
+    public long getBytesOut() { return bytesOut; }
+
+    public int getMappings() { return mappings; }
+
+    public static void main(String[] args) {
+        if (args.length < 3 || !(args[0].equals("compress") || args[0].equals("decompress"))) {
+            System.err.println("Usage: java HuffmanFileTool compress <input> <output> [chunkSize]");
+            System.err.println("       java HuffmanFileTool decompress <input> <output>");
+            System.exit(2);
+        }
+
+        try {
+            boolean compressing = args[0].equals("compress");
+            HuffmanFileTool tool = compressing && args.length > 3
+                    ? new HuffmanFileTool(Integer.parseInt(args[3])) : new HuffmanFileTool();
+
+            long start = System.nanoTime();
+            if (compressing) {
+                tool.compress(args[1], args[2]);
+            } else {
+                tool.decompress(args[1], args[2]);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            long original = compressing ? tool.getBytesIn() : tool.getBytesOut();
+            long compressed = compressing ? tool.getBytesOut() : new File(args[1]).length();
+            System.out.printf("%s %s -> %s%n", compressing ? "Compressed" : "Decompressed", args[1], args[2]);
+            System.out.printf("Original: %,d bytes, compressed: %,d bytes (%.2f%% of original)%n",
+                original, compressed, original > 0 ? compressed * 100.0 / original : 0.0);
+            System.out.printf("Time: %.3f s, throughput: %.1f MB/s (%d mappings)%n",
+                seconds, original / 1e6 / seconds, tool.getMappings());
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * Code emission loop of the byte codec, with one implementation picked when
+ * the class is first used. The scalar loop is the default. VectorKernels, in
+ * vector/, uses the jdk.incubator.vector API and is built by vector/build.sh;
+ * it loads only on JDK 16 or later started with --add-modules
+ * jdk.incubator.vector, and is used only when -Dhuffman.kernels=vector asks
+ * for it, because it measured no faster than the scalar loop. The rest of the
+ * tree still builds and runs on Java 11.
+ *
+ * Scope: only HuffmanCodec.encodeBytes goes through here, i.e. the byte[]
+ * paths of HuffmanCoding.encodeBytes and HuffmanServer. HuffmanEncoder keeps
+ * its own loops because it allocates nothing and works on direct buffers by
+ * absolute index, and its 11-bit codes go straight into the output buffer
+ * without a BitWriter. The char path looks codes up in the CodeBook because
+ * copying a 65536-symbol alphabet into dense arrays would cost more than
+ * encoding a short message.
+ */
+public abstract class HuffmanKernels {
+    private static final HuffmanKernels SCALAR = new Scalar();
+    private static final HuffmanKernels VECTOR = loadVector();
+    private static final HuffmanKernels SELECTED =
+            "vector".equals(System.getProperty("huffman.kernels")) && VECTOR != null ? VECTOR : SCALAR;
+
+    private static HuffmanKernels loadVector() {
+        try {
+            return (HuffmanKernels) Class.forName("VectorKernels").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    // The kernels chosen at startup
+    public static HuffmanKernels get() { return SELECTED; }
+
+    public static HuffmanKernels scalar() { return SCALAR; }
+
+    // The Vector API kernels, or null if they were not built or cannot load
+    public static HuffmanKernels vector() { return VECTOR; }
+
+    public abstract String getName();
+
+    // Writes the code of every byte; codes and lengths are 256-entry tables indexed by byte value,
+    // with a length of 0 for bytes that have no code
+    public abstract void encodeBytes(long[] codes, int[] lengths, byte[] data, int offset, int length, BitWriter writer);
+
+    static IllegalArgumentException noCode(int symbol, int index) {
+        return new IllegalArgumentException("No code for byte " + symbol + " at index " + index);
+    }
+
+    /**
+     * Codes gathered into a 64-bit word before each BitWriter call
+     */
+    static final class Scalar extends HuffmanKernels {
+        @Override
+        public String getName() { return "scalar"; }
+
+        @Override
+        public void encodeBytes(long[] codes, int[] lengths, byte[] data, int offset, int length, BitWriter writer) {
+            long pending = 0;
+            int pendingBits = 0;
+            for (int i = offset; i < offset + length; i++) {
+                int symbol = data[i] & 0xFF;
+                int bits = lengths[symbol];
+                if (bits == 0) { throw noCode(symbol, i); }
+                if (pendingBits + bits > 64) {
+                    writer.write(pending, pendingBits);
+                    pending = 0;
+                    pendingBits = 0;
+                }
+                pending = pending << bits | codes[symbol];
+                pendingBits += bits;
+            }
+            writer.write(pending, pendingBits);
+        }
+    }
+}
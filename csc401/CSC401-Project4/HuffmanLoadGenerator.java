@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load generator for HuffmanServer. It opens many connections at once, each
+ * driven by its own thread (virtual when available). Every connection sends
+ * compress then decompress requests and checks the round trip. The generator
+ * reports throughput and client-side latency percentiles.
+ *
+ *   java HuffmanLoadGenerator <port> [connections] [requestsPerConnection] [payloadBytes] [table]
+ *
+ * A port of "-" starts a server in-process on a free port, with a code table
+ * named "log" trained on the payload. The payload is a slice of the log
+ * corpus in Corpora.
+ */
+public class HuffmanLoadGenerator {
+
+    /**
+     * Outcome of one run
+     */
+    public static final class Report {
+        final int connections;
+        final long requests;
+        final long errors;
+        final long bytes;
+        final double seconds;
+        final LatencyHistogram latency;
+        final boolean virtualThreads;
+
+        Report(int connections, long requests, long errors, long bytes, double seconds,
+               LatencyHistogram latency, boolean virtualThreads) {
+            this.connections = connections;
+            this.requests = requests;
+            this.errors = errors;
+            this.bytes = bytes;
+            this.seconds = seconds;
+            this.latency = latency;
+            this.virtualThreads = virtualThreads;
+        }
+
+        public long getRequests() { return requests; }
+
+        public long getErrors() { return errors; }
+
+        public double getRequestsPerSecond() { return requests / seconds; }
+
+        public LatencyHistogram getLatency() { return latency; }
+
+        @Override
+        public String toString() {
+            return String.format("%d connections (%s threads), %d requests, %d unsuccessful in %.2f s%n"
+                    + "Throughput: %.0f requests/s, %.1f MB/s of payload%n"
+                    + "Latency: %s",
+                    connections, virtualThreads ? "virtual" : "platform", requests, errors, seconds,
+                    getRequestsPerSecond(), bytes / 1e6 / seconds, latency);
+        }
+    }
+
+    // All connections are opened before any request is sent, so they are genuinely concurrent
+    public static Report run(int port, int connections, int requestsPerConnection, byte[] payload, String table)
+            throws InterruptedException {
+        ExecutorService virtual = HuffmanServer.newVirtualThreadExecutor();
+        ExecutorService clients = virtual != null ? virtual
+                : Executors.newFixedThreadPool(connections, HuffmanServer.daemonThreads("huffman-load"));
+        LatencyHistogram latency = new LatencyHistogram();
+        AtomicLong requests = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        AtomicLong bytes = new AtomicLong();
+        CountDownLatch connected = new CountDownLatch(connections);
+        CountDownLatch go = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(connections);
+
+        for (int c = 0; c < connections; c++) {
+            clients.execute(() -> {
+                boolean counted = false;
+                try (HuffmanClient client = new HuffmanClient(port)) {
+                    connected.countDown();
+                    counted = true;
+                    go.await();
+                    for (int r = 0; r < requestsPerConnection; r++) {
+                        long start = System.nanoTime();
+                        byte[] packed = client.compress(payload, table);
+                        latency.record(System.nanoTime() - start);
+                        start = System.nanoTime();
+                        byte[] restored = client.decompress(packed, table);
+                        latency.record(System.nanoTime() - start);
+                        requests.addAndGet(2);
+                        bytes.addAndGet(2L * payload.length);
+                        if (!Arrays.equals(restored, payload)) { errors.incrementAndGet(); }
+                    }
+                } catch (IOException e) {
+                    errors.incrementAndGet();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    if (!counted) { connected.countDown(); }
+                    done.countDown();
+                }
+            });
+        }
+
+        connected.await();
+        long start = System.nanoTime();
+        go.countDown();
+        done.await();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        clients.shutdown();
+        return new Report(connections, requests.get(), errors.get(), bytes.get(), seconds, latency, virtual != null);
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: java HuffmanLoadGenerator <port|-> [connections] [requestsPerConnection] [payloadBytes] [table]");
+            System.exit(2);
+        }
+        try {
+            int connections = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+            int requests = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+            int payloadBytes = args.length > 3 ? Integer.parseInt(args[3]) : 4096;
+            String table = args.length > 4 ? args[4] : "";
+            byte[] payload = Corpora.corpus("log", payloadBytes);
+
+            HuffmanServer server = null;
+            int port;
+            if (args[0].equals("-")) {
+                CodeBookRegistry registry = new CodeBookRegistry();
+                registry.register("log", CodeBookRegistry.train(
+                        Collections.singletonList(new String(payload, java.nio.charset.StandardCharsets.ISO_8859_1))));
+                server = new HuffmanServer(0, registry).start();
+                port = server.getPort();
+                System.out.println("Started in-process server on port " + port + " with code table \"log\"");
+            } else {
+                port = Integer.parseInt(args[0]);
+            }
+
+            Report report = run(port, connections, requests, payload, table);
+            System.out.println(report);
+            if (server != null) {
+                System.out.print("Server: " + server.statsText());
+                server.close();
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,6 +1,7 @@
 
 public class HuffmanNode implements Comparable<HuffmanNode> {
     char character;
+    int symbol;         // full code point; equals character inside the BMP
     int frequency;
     HuffmanNode left;
     HuffmanNode right;
@@ -8,11 +9,19 @@ public class HuffmanNode implements Comparable<HuffmanNode> {
     // Consturctor for leaf node
     public HuffmanNode(char character, int frequency) {
         this.character = character;
+        this.symbol = character;
         this.frequency = frequency;
         this.left = null;
         this.right = null;
     }
 
+    // Leaf for any symbol, including supplementary code points that do not fit in a char
+    public static HuffmanNode leaf(int symbol, int frequency) {
+        HuffmanNode node = new HuffmanNode((char) symbol, frequency);
+        node.symbol = symbol;
+        return node;
+    }
+
     // Consturctor for internal node
     public HuffmanNode(int frequency) {
         this.character = '\0';
@@ -29,7 +38,7 @@ public class HuffmanNode implements Comparable<HuffmanNode> {
     @Override
     public String toString() {
         if (isLeaf()) {
-            return "Leaf('" + character + "', freq=" + frequency + ")";
+            return "Leaf('" + new String(Character.toChars(symbol)) + "', freq=" + frequency + ")";
         }
 
         return "Internal (freq=" + frequency + ")";
@@ -0,0 +1,272 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loopback TCP compression service, meant to run as a sidecar next to the
+ * process that needs it. Each connection is served on its own thread: a
+ * virtual thread on JDK 21 and later (found by reflection, so the code still
+ * builds for Java 11), otherwise a pooled platform thread. Blocking socket
+ * code therefore scales to thousands of connections without an event loop.
+ *
+ *   java HuffmanServer [port] [tableFile ...]
+ *
+ * Frames are big-endian. A connection carries any number of requests in
+ * sequence:
+ *   request   byte op, UTF table, int length, payload
+ *   response  byte status, then int length, payload    (STATUS_OK)
+ *                          or UTF message              (STATUS_ERROR)
+ *
+ * With an empty table name, OP_COMPRESS builds a table per request and
+ * answers with one HuffmanEncoder block (table included). With the name of a
+ * table in the server's CodeBookRegistry, every connection shares that one
+ * CodeBook and the answer is just int length, long bitLength, packed bits;
+ * that is much smaller for short messages. OP_DECOMPRESS reverses either
+ * form. OP_STATS answers with request counts and latency percentiles as
+ * UTF-8 text.
+ */
+public class HuffmanServer implements Closeable {
+    public static final byte OP_COMPRESS = 1;
+    public static final byte OP_DECOMPRESS = 2;
+    public static final byte OP_STATS = 3;
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_ERROR = 1;
+    public static final int MAX_PAYLOAD = 1 << 24;
+    private static final int BACKLOG = 4096;
+    private static final int BUFFER_BYTES = 8192;
+
+    private final ServerSocket serverSocket;
+    private final CodeBookRegistry registry;
+    private final ExecutorService connections;
+    private final boolean virtualThreads;
+    private final Set<Socket> open = ConcurrentHashMap.newKeySet();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+    private Thread acceptor;
+    private volatile boolean closed;
+
+    // Binds to the loopback address; port 0 picks a free port (see getPort)
+    public HuffmanServer(int port, CodeBookRegistry registry) throws IOException {
+        this.serverSocket = new ServerSocket(port, BACKLOG, InetAddress.getLoopbackAddress());
+        this.registry = registry;
+        ExecutorService virtual = newVirtualThreadExecutor();
+        this.virtualThreads = virtual != null;
+        this.connections = virtual != null ? virtual : Executors.newCachedThreadPool(daemonThreads("huffman-connection"));
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() when the runtime has it, otherwise null
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    static ThreadFactory daemonThreads(String name) {
+        AtomicLong next = new AtomicLong();
+        return task -> {
+            Thread thread = new Thread(task, name + "-" + next.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public synchronized HuffmanServer start() {
+        if (acceptor == null) {
+            acceptor = daemonThreads("huffman-accept").newThread(this::acceptLoop);
+            acceptor.start();
+        }
+        return this;
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                accepted.incrementAndGet();
+                open.add(socket);
+                connections.execute(() -> serve(socket));
+            } catch (RejectedExecutionException e) {
+                return;
+            } catch (IOException e) {
+                if (closed) { return; }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        HuffmanEncoder encoder = new HuffmanEncoder();
+        HuffmanDecoder decoder = new HuffmanDecoder();
+        try (Socket s = socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), BUFFER_BYTES));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream(), BUFFER_BYTES))) {
+            while (true) {
+                int op = in.read();
+                if (op < 0) { return; }
+                String table = in.readUTF();
+                int length = in.readInt();
+                if (length < 0 || length > MAX_PAYLOAD) {
+                    // The stream cannot be resynchronized after a bad length, so the connection ends here
+                    errors.incrementAndGet();
+                    out.writeByte(STATUS_ERROR);
+                    out.writeUTF("Payload length " + length + " outside 0.." + MAX_PAYLOAD);
+                    out.flush();
+                    return;
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+
+                long start = System.nanoTime();
+                try {
+                    byte[] result = handle(op, table, payload, encoder, decoder);
+                    out.writeByte(STATUS_OK);
+                    out.writeInt(result.length);
+                    out.write(result);
+                    bytesOut.addAndGet(result.length);
+                } catch (IOException | IllegalArgumentException | IllegalStateException | BufferOverflowException e) {
+                    errors.incrementAndGet();
+                    out.writeByte(STATUS_ERROR);
+                    out.writeUTF(String.valueOf(e.getMessage()));
+                }
+                out.flush();
+                latency.record(System.nanoTime() - start);
+                requests.incrementAndGet();
+                bytesIn.addAndGet(length);
+            }
+        } catch (EOFException | SocketException e) {
+            // Client went away mid-frame, or the server is closing
+        } catch (IOException e) {
+            errors.incrementAndGet();
+        } finally {
+            open.remove(socket);
+        }
+    }
+
+    private byte[] handle(int op, String tableName, byte[] payload, HuffmanEncoder encoder, HuffmanDecoder decoder)
+            throws IOException {
+        if (op == OP_STATS) {
+            return statsText().getBytes(StandardCharsets.UTF_8);
+        }
+        CodeBook book = null;
+        if (!tableName.isEmpty()) {
+            book = registry == null ? null : registry.get(tableName);
+            if (book == null) { throw new IllegalArgumentException("No code table named " + tableName); }
+        }
+
+        if (op == OP_COMPRESS) {
+            if (book == null) {
+                ByteBuffer block = ByteBuffer.allocate(HuffmanEncoder.maxEncodedLength(payload.length));
+                encoder.encode(ByteBuffer.wrap(payload), block);
+                return Arrays.copyOf(block.array(), block.position());
+            }
+            BitBuffer bits = HuffmanCodec.encodeBytes(book, payload);
+            ByteArrayOutputStream packed = new ByteArrayOutputStream(12 + bits.getByteLength());
+            DataOutputStream out = new DataOutputStream(packed);
+            out.writeInt(payload.length);
+            out.writeLong(bits.getBitLength());
+            out.write(bits.toByteArray());
+            return packed.toByteArray();
+        }
+        if (op == OP_DECOMPRESS) {
+            return book == null ? decodeBlock(payload, decoder) : decodeShared(payload, book);
+        }
+        throw new IllegalArgumentException("Unknown operation " + op);
+    }
+
+    private static byte[] decodeBlock(byte[] payload, HuffmanDecoder decoder) throws IOException {
+        if (payload.length < 4) { throw new IOException("Truncated block"); }
+        int length = ByteBuffer.wrap(payload).getInt(0);
+        if (length < 0 || length > MAX_PAYLOAD) { throw new IOException("Corrupt block length " + length); }
+        ByteBuffer out = ByteBuffer.allocate(length);
+        decoder.decode(ByteBuffer.wrap(payload), out);
+        return out.array();
+    }
+
+    // Decodes exactly `length` symbols, so a corrupt header cannot make the server allocate more
+    private static byte[] decodeShared(byte[] payload, CodeBook book) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        if (payload.length < 12) { throw new IOException("Truncated message"); }
+        int length = in.readInt();
+        long bitLength = in.readLong();
+        if (length < 0 || length > MAX_PAYLOAD || bitLength < 0 || bitLength > (payload.length - 12) * 8L) {
+            throw new IOException("Corrupt message header");
+        }
+        BitBuffer bits = BitBuffer.fromByteArray(Arrays.copyOfRange(payload, 12, payload.length), bitLength);
+        HuffmanTableDecoder table = book.decoder();
+        BitReader reader = new BitReader(bits);
+        byte[] out = new byte[length];
+        for (int i = 0; i < length; i++) {
+            if (!reader.hasMore()) { throw new IOException("Truncated message at symbol " + i); }
+            out[i] = (byte) table.decodeSymbol(reader);
+        }
+        if (reader.position() != bitLength) { throw new IOException("Corrupt message: bit count mismatch"); }
+        return out;
+    }
+
+    public String statsText() {
+        return String.format("requests=%d errors=%d connections=%d open=%d bytesIn=%d bytesOut=%d threads=%s%n"
+                + "latency %s%n",
+                getRequests(), getErrors(), getAcceptedConnections(), getOpenConnections(),
+                bytesIn.get(), bytesOut.get(), virtualThreads ? "virtual" : "platform", latency);
+    }
+
+    public int getPort() { return serverSocket.getLocalPort(); }
+
+    public boolean usesVirtualThreads() { return virtualThreads; }
+
+    // Service time per request, from the end of reading it to the flush of the response
+    public LatencyHistogram getLatency() { return latency; }
+
+    public long getRequests() { return requests.get(); }
+
+    public long getErrors() { return errors.get(); }
+
+    public long getAcceptedConnections() { return accepted.get(); }
+
+    public int getOpenConnections() { return open.size(); }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        for (Socket socket : open) {
+            socket.close();
+        }
+        connections.shutdownNow();
+    }
+
+    public static void main(String[] args) {
+        try {
+            int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+            CodeBookRegistry registry = new CodeBookRegistry();
+            for (int i = 1; i < args.length; i++) {
+                System.out.println("Loaded code table " + registry.load(args[i]));
+            }
+            HuffmanServer server = new HuffmanServer(port, registry).start();
+            System.out.printf("Listening on %s:%d (%s threads)%n", InetAddress.getLoopbackAddress().getHostAddress(),
+                    server.getPort(), server.usesVirtualThreads() ? "virtual" : "platform");
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.print(server.statsText())));
+            Thread.currentThread().join();
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,245 @@
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.*;
+
+/**
+ * Streaming byte-oriented Huffman compressor. The input is cut into fixed-size
+ * chunks and each chunk gets its own code table, so heap use depends only on
+ * the chunk size and never on the total input size.
+ *
+ * Each chunk is stored as Huffman, raw, single-symbol or run-length data,
+ * whichever BlockType picks from its histogram, so incompressible input is
+ * copied through instead of growing.
+ *
+ * Stream layout:
+ *   int magic, byte version, int chunkSize
+ *   chunk*:  int originalLength, byte blockType, body (see BlockType)
+ *   int 0    end of stream
+ */
+public class HuffmanStream {
+    static final int STREAM_MAGIC = 0x48554653; // "HUFS"
+    static final byte STREAM_VERSION = 2;
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+    private final int chunkSize;
+    private long bytesIn;
+    private long bytesOut;
+    private final int[] blockTypes = new int[BlockType.COUNT];
+
+    public HuffmanStream() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    public HuffmanStream(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    public void compress(InputStream in, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+        data.writeInt(STREAM_MAGIC);
+        data.writeByte(STREAM_VERSION);
+        data.writeInt(chunkSize);
+        bytesOut += 9;
+
+        byte[] chunk = new byte[chunkSize];
+        int[] counts = new int[256];
+        BitWriter writer = new BitWriter((long) chunkSize * 8);
+        HuffmanCoding huffman = new HuffmanCoding();
+
+        int length;
+        while ((length = readChunk(in, chunk)) > 0) {
+            bytesOut += writeChunk(data, chunk, 0, length, counts, huffman, writer, blockTypes);
+            bytesIn += length;
+        }
+
+        data.writeInt(0);
+        data.flush();
+        bytesOut += 4;
+    }
+
+    public void decompress(InputStream in, OutputStream out) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+        if (data.readInt() != STREAM_MAGIC) {
+            throw new IOException("Not a Huffman stream");
+        }
+        byte version = data.readByte();
+        if (version != STREAM_VERSION) {
+            throw new IOException("Unsupported stream version " + version);
+        }
+        int streamChunkSize = data.readInt();
+        if (streamChunkSize <= 0) {
+            throw new IOException("Corrupt header: chunk size " + streamChunkSize);
+        }
+
+        byte[] decoded = new byte[streamChunkSize];
+
+        int length;
+        while ((length = readChunk(data, decoded, 0, streamChunkSize)) != 0) {
+            out.write(decoded, 0, length);
+            bytesOut += length;
+        }
+        out.flush();
+    }
+
+    public void compress(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+        compress(Channels.newInputStream(in), Channels.newOutputStream(out));
+    }
+
+    public void decompress(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+        decompress(Channels.newInputStream(in), Channels.newOutputStream(out));
+    }
+
+    public void compressFile(String source, String target) throws IOException {
+        try (InputStream in = new FileInputStream(source); OutputStream out = new FileOutputStream(target)) {
+            compress(in, out);
+        }
+    }
+
+    public void decompressFile(String source, String target) throws IOException {
+        try (InputStream in = new FileInputStream(source); OutputStream out = new FileOutputStream(target)) {
+            decompress(in, out);
+        }
+    }
+
+    public int getChunkSize() { return chunkSize; }
+
+    // Only counted by compress; decompress counts its output alone
+    public long getBytesIn() { return bytesIn; }
+
+    public long getBytesOut() { return bytesOut; }
+
+    // Chunks compressed as the given BlockType so far
+    public int getBlockCount(int blockType) { return blockTypes[blockType]; }
+
+    // Encodes data[offset, offset + length) as one self-contained chunk; returns bytes written.
+    // typeCounts, if not null, counts the block type chosen.
+    static int writeChunk(DataOutput out, byte[] data, int offset, int length, int[] counts,
+                          HuffmanCoding huffman, BitWriter writer, int[] typeCounts) throws IOException {
+        Arrays.fill(counts, 0);
+        Histogram.countBytes(data, offset, length, counts);
+        int distinct = 0;
+        int lastSymbol = 0;
+        for (int s = 0; s < 256; s++) {
+            if (counts[s] != 0) {
+                distinct++;
+                lastSymbol = s;
+            }
+        }
+
+        long estimate = BlockType.estimateHuffmanBytes(counts, distinct, length);
+        long rleBytes = distinct == 1 ? 0 : BlockType.rleBytes(data, offset, length, length);
+        int type = BlockType.choose(length, distinct, rleBytes, estimate);
+
+        CodeBook book = null;
+        if (type == BlockType.HUFFMAN) {
+            book = huffman.buildCodeBook(counts);
+            long bits = 0;
+            for (int i = 0; i < book.size(); i++) {
+                bits += (long) counts[book.symbolAt(i)] * book.lengthAt(i);
+            }
+            // The estimate is a lower bound; check the real size before writing any bits
+            if (2 + 2L * book.size() + 4 + (bits + 7) / 8 >= Math.min(length, rleBytes)) {
+                type = rleBytes < length ? BlockType.RLE : BlockType.RAW;
+            }
+        }
+        if (typeCounts != null) { typeCounts[type]++; }
+
+        out.writeInt(length);
+        out.writeByte(type);
+        switch (type) {
+            case BlockType.SINGLE:
+                out.writeByte(lastSymbol);
+                return 4 + 1 + 1;
+            case BlockType.RAW:
+                out.write(data, offset, length);
+                return 4 + 1 + length;
+            case BlockType.RLE:
+                BlockType.writeRle(out, data, offset, length, (int) rleBytes);
+                return 4 + 1 + 4 + (int) rleBytes;
+            default:
+                break;
+        }
+
+        writer.reset();
+        for (int i = offset; i < offset + length; i++) {
+            int symbol = data[i] & 0xFF;
+            writer.write(book.codeOf(symbol), book.lengthOf(symbol));
+        }
+        writer.alignToByte();
+
+        out.writeShort(book.size());
+        for (int i = 0; i < book.size(); i++) {
+            out.writeByte(book.symbolAt(i));
+            out.writeByte(book.lengthAt(i));
+        }
+        BitBuffer bits = writer.toBitBuffer();
+        out.writeInt(bits.getByteLength());
+        out.write(bits.toByteArray());
+
+        return 4 + 1 + 2 + 2 * book.size() + 4 + bits.getByteLength();
+    }
+
+    // Decodes one chunk into dst[offset...]; returns its original length, or 0 at the end marker
+    static int readChunk(DataInput in, byte[] dst, int offset, int maxLength) throws IOException {
+        int length = in.readInt();
+        if (length == 0) { return 0; }
+        if (length < 0 || length > maxLength) {
+            throw new IOException("Corrupt chunk length " + length);
+        }
+
+        int type = in.readUnsignedByte();
+        switch (type) {
+            case BlockType.HUFFMAN:
+                break;
+            case BlockType.RAW:
+                in.readFully(dst, offset, length);
+                return length;
+            case BlockType.SINGLE:
+                Arrays.fill(dst, offset, offset + length, in.readByte());
+                return length;
+            case BlockType.RLE:
+                BlockType.readRle(in, dst, offset, length);
+                return length;
+            default:
+                throw new IOException("Unknown block type " + type);
+        }
+
+        int symbolCount = in.readUnsignedShort();
+        int[] symbols = new int[symbolCount];
+        int[] lengths = new int[symbolCount];
+        for (int i = 0; i < symbolCount; i++) {
+            symbols[i] = in.readUnsignedByte();
+            lengths[i] = in.readUnsignedByte();
+        }
+        CodeBook book = CodeBook.fromLengths(symbols, lengths);
+
+        int payloadBytes = in.readInt();
+        if (payloadBytes < 0 || payloadBytes > (long) length * 8) {
+            throw new IOException("Corrupt payload length " + payloadBytes);
+        }
+        byte[] payload = new byte[payloadBytes];
+        in.readFully(payload);
+
+        BitReader reader = new BitReader(BitBuffer.fromByteArray(payload, payloadBytes * 8L));
+        HuffmanTableDecoder decoder = book.decoder();
+        for (int i = offset; i < offset + length; i++) {
+            dst[i] = (byte) decoder.decodeSymbol(reader);
+        }
+        return length;
+    }
+
+    private static int readChunk(InputStream in, byte[] chunk) throws IOException {
+        int filled = 0;
+        while (filled < chunk.length) {
+            int n = in.read(chunk, filled, chunk.length - filled);
+            if (n < 0) { break; }
+            filled += n;
+        }
+        return filled;
+    }
+}
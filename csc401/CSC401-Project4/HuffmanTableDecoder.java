@@ -0,0 +1,133 @@
+import java.util.*;
+
+/**
+ * Decodes a whole symbol per table lookup instead of walking the tree one bit
+ * at a time. The root table is indexed by the next ROOT_BITS bits; codes longer
+ * than that go through secondary tables hanging off the root entry.
+ *
+ * Entry layout (int):
+ *   0                  unused slot (not a valid code prefix)
+ *   leaf     >= 1      symbol << 8 | bits consumed at this level
+ *   link     < 0       0x80000000 | subtable offset << 5 | subtable width
+ */
+public class HuffmanTableDecoder {
+    static final int ROOT_BITS = 11;
+    static final int MAX_SUB_BITS = 8;
+
+    private final int[] table;
+    private final int rootBits;
+    private final long tableBytes;
+
+    public HuffmanTableDecoder(int[] symbols, long[] codes, int[] lengths) {
+        int maxLength = 0;
+        for (int length : lengths) { maxLength = Math.max(maxLength, length); }
+
+        this.rootBits = Math.max(1, Math.min(ROOT_BITS, maxLength));
+
+        Integer[] order = new Integer[symbols.length];
+        for (int i = 0; i < order.length; i++) { order[i] = i; }
+
+        List<int[]> pieces = new ArrayList<>();
+        int[] size = {0};
+        buildLevel(symbols, codes, lengths, Arrays.asList(order), 0, rootBits, pieces, size);
+
+        this.table = new int[size[0]];
+        int offset = 0;
+        for (int[] piece : pieces) {
+            System.arraycopy(piece, 0, table, offset, piece.length);
+            offset += piece.length;
+        }
+        this.tableBytes = (long) table.length * Integer.BYTES;
+    }
+
+    public static HuffmanTableDecoder fromCodes(Map<Character, String> codes) {
+        int[] symbols = new int[codes.size()];
+        long[] bits = new long[codes.size()];
+        int[] lengths = new int[codes.size()];
+        int i = 0;
+        for (Map.Entry<Character, String> entry : codes.entrySet()) {
+            symbols[i] = entry.getKey();
+            bits[i] = Long.parseUnsignedLong(entry.getValue(), 2);
+            lengths[i] = entry.getValue().length();
+            i++;
+        }
+        return new HuffmanTableDecoder(symbols, bits, lengths);
+    }
+
+    // Fills one table of 2^width entries covering code bits [consumed, consumed + width).
+    // Returns the table's offset in the final array.
+    private int buildLevel(int[] symbols, long[] codes, int[] lengths, List<Integer> members,
+                           int consumed, int width, List<int[]> pieces, int[] size) {
+        int[] level = new int[1 << width];
+        int offset = size[0];
+        pieces.add(level);
+        size[0] += level.length;
+
+        int end = consumed + width;
+        Map<Integer, List<Integer>> overflow = new TreeMap<>();
+
+        for (int m : members) {
+            int length = lengths[m];
+            if (length <= end) {
+                int span = end - length;
+                int index = (int) (bitsBetween(codes[m], length, consumed, length) << span);
+                int leaf = symbols[m] << 8 | (length - consumed);
+                Arrays.fill(level, index, index + (1 << span), leaf);
+            } else {
+                int index = (int) bitsBetween(codes[m], length, consumed, end);
+                overflow.computeIfAbsent(index, k -> new ArrayList<>()).add(m);
+            }
+        }
+
+        for (Map.Entry<Integer, List<Integer>> group : overflow.entrySet()) {
+            int longest = 0;
+            for (int m : group.getValue()) { longest = Math.max(longest, lengths[m]); }
+            int subWidth = Math.min(MAX_SUB_BITS, longest - end);
+            int subOffset = buildLevel(symbols, codes, lengths, group.getValue(), end, subWidth, pieces, size);
+            level[group.getKey()] = 0x80000000 | subOffset << 5 | subWidth;
+        }
+
+        return offset;
+    }
+
+    // Bits [from, to) of a code of the given length, counted from its most significant bit
+    private static long bitsBetween(long code, int length, int from, int to) {
+        long shifted = code >>> (length - to);
+        return shifted & ((1L << (to - from)) - 1);
+    }
+
+    public int decodeSymbol(BitReader reader) {
+        int width = rootBits;
+        int entry = table[(int) reader.peek(width)];
+
+        while (entry < 0) {
+            reader.skip(width);
+            width = entry & 31;
+            entry = table[((entry >>> 5) & 0x3FFFFFF) + (int) reader.peek(width)];
+        }
+
+        if (entry == 0) {
+            throw new IllegalStateException("Invalid Huffman code at bit " + reader.position());
+        }
+
+        reader.skip(entry & 0xFF);
+        return entry >>> 8;
+    }
+
+    public String decode(BitBuffer encoded) {
+        StringBuilder decoded = new StringBuilder();
+        BitReader reader = new BitReader(encoded);
+
+        while (reader.hasMore()) {
+            decoded.append((char) decodeSymbol(reader));
+        }
+        return decoded.toString();
+    }
+
+    public int getRootBits() { return rootBits; }
+
+    // The entries themselves, laid out as above, for decode loops that inline the lookup; not a copy
+    int[] table() { return table; }
+
+    public long getTableBytes() { return tableBytes; }
+}
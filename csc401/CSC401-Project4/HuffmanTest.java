@@ -1,5 +1,9 @@
 import java.util.*;
+import java.util.concurrent.*;
 import java.io.*;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 public class HuffmanTest {
 
@@ -229,7 +233,7 @@ public class HuffmanTest {
             CompressionStats statsActual = huffmanActual.getCompressionStats(text, encodedActual);
             
             // Standard frequencies (simplified - using uniform distribution as proxy)
-            Map<Character, Integer> standardFreq = getStandardFrequencies(text.length());
+            Map<Character, Integer> standardFreq = Corpora.getStandardFrequencies(text.length());
             HuffmanCoding huffmanStandard = new HuffmanCoding();
             huffmanStandard.buildHuffmanTree(standardFreq);
             
@@ -295,54 +299,1913 @@ public class HuffmanTest {
         
         try {
             HuffmanCoding huffman = new HuffmanCoding();
-            String encoded = huffman.encode(text);
-            Map<Character, Integer> frequencies = huffman.calculateFrequencies(text);
+            BitBuffer encoded = huffman.encodeBits(text);
             
             // Save to file
-            huffman.saveEncodedData(filename, encoded, frequencies);
-            System.out.println("Saved encoded data to " + filename);
+            huffman.saveEncodedData(filename, encoded);
+            System.out.println("Saved encoded data to " + filename + " (" + new File(filename).length() + " bytes)");
             
-            // Load from file
-            Object[] loaded = huffman.loadEncodedData(filename);
-            String loadedEncoded = (String) loaded[0];
-            @SuppressWarnings("unchecked")
-            Map<Character, Integer> loadedFrequencies = (Map<Character, Integer>) loaded[1];
+            // Load from file - rebuilds the canonical codes from lengths only
+            HuffmanCoding huffman2 = new HuffmanCoding();
+            BitBuffer loadedEncoded = huffman2.loadEncodedData(filename);
             System.out.println("Loaded encoded data from " + filename);
             
             // Decode loaded data
-            HuffmanCoding huffman2 = new HuffmanCoding();
-            String decoded = huffman2.decode(loadedEncoded, loadedFrequencies);
+            String decoded = huffman2.decodeBits(loadedEncoded);
             
             System.out.println("\nOriginal text: " + text);
             System.out.println("Decoded text: " + decoded);
+            System.out.println("Same code table: " + huffman2.getCodeBook().equals(huffman.getCodeBook()));
             System.out.println("Save/Load test PASSED: " + decoded.equals(text));
             
             // Clean up
             new File(filename).delete();
+
+            // Larger payload spanning several I/O chunks
+            String large = "The quick brown fox jumps over the lazy dog. 0123456789\n".repeat(200000);
+            BitBuffer largeEncoded = huffman.encodeBits(large);
+            long start = System.nanoTime();
+            huffman.saveEncodedData(filename, largeEncoded);
+            long saveNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            BitBuffer largeLoaded = huffman2.loadEncodedData(filename);
+            long loadNanos = System.nanoTime() - start;
+            System.out.printf("%nLarge file: %,d bytes, save %.1f ms, load %.1f ms%n",
+                new File(filename).length(), saveNanos / 1e6, loadNanos / 1e6);
+            System.out.println("Large Save/Load test PASSED: " + huffman2.decodeBits(largeLoaded).equals(large));
+            new File(filename).delete();
+
+            // Files that are not in the expected format are rejected
+            try (FileOutputStream out = new FileOutputStream(filename)) {
+                out.write("not huffman".getBytes());
+            }
+            try {
+                huffman2.loadEncodedData(filename);
+                System.out.println("Bad header rejected: false");
+            } catch (IOException e) {
+                System.out.println("Bad header rejected: true (" + e.getMessage() + ")");
+            }
+            new File(filename).delete();
             
-        } catch (IOException | ClassNotFoundException e) {
+        } catch (IOException e) {
             System.out.println("Test FAILED: " + e.getMessage());
         }
     }
     
     /**
-     * Helper method to get standard English frequencies
+     * Test 8: Bit-packed encoding
      */
-    private static Map<Character, Integer> getStandardFrequencies(int textLength) {
-        Map<Character, Double> standardProbs = new HashMap<>();
-        standardProbs.put('e', 0.127); standardProbs.put('t', 0.091);
-        standardProbs.put('a', 0.082); standardProbs.put('o', 0.075);
-        standardProbs.put('i', 0.070); standardProbs.put('n', 0.067);
-        standardProbs.put('s', 0.063); standardProbs.put(' ', 0.183);
-        
-        Map<Character, Integer> scaled = new HashMap<>();
-        for (Map.Entry<Character, Double> entry : standardProbs.entrySet()) {
-            scaled.put(entry.getKey(), 
-                Math.max(1, (int)(entry.getValue() * textLength)));
+    public static void testPackedBitstream() {
+        System.out.println("\n" + "=".repeat(70));
+        System.out.println("TEST 8: BIT-PACKED ENCODING");
+        System.out.println("=".repeat(70));
+
+        String[] texts = {
+            "a",
+            "hello world",
+            "the quick brown fox jumps over the lazy dog ".repeat(50),
+            "Hello, World! How are you?"
+        };
+
+        for (String text : texts) {
+            HuffmanCoding huffman = new HuffmanCoding();
+            String encoded = huffman.encode(text);
+            BitBuffer packed = huffman.encodeBits(text);
+            String decoded = huffman.decodeBits(packed);
+            CompressionStats stats = huffman.getCompressionStats(text, packed);
+
+            String label = text.length() > 30 ? text.substring(0, 30) + "..." : text;
+            System.out.println("\nText: '" + label + "'");
+            System.out.println("  Matches String encoding: " + packed.toBitString().equals(encoded));
+            System.out.println("  Round trip: " + decoded.equals(text));
+            System.out.println("  Byte round trip: " + BitBuffer.fromByteArray(packed.toByteArray(), packed.getBitLength()).equals(packed));
+            System.out.printf("  String encoding heap: %,d bytes, packed: %,d bytes%n", encoded.length() * 2, stats.packedBytes);
+            System.out.println("  Bits written/read: " + stats.bitsWritten + "/" + stats.bitsRead);
+        }
+
+        // Codes that straddle word boundaries
+        BitWriter writer = new BitWriter(1);
+        for (int i = 1; i <= 64; i++) {
+            writer.write(i, i);
+        }
+        BitReader reader = new BitReader(writer.toBitBuffer());
+        boolean straddle = true;
+        for (int i = 1; i <= 64; i++) {
+            long expected = i == 64 ? 64 : i & ((1L << i) - 1);
+            straddle &= reader.read(i) == expected;
         }
-        return scaled;
+        System.out.println("\nWord boundary test PASSED: " + straddle);
     }
-    
+
+    /**
+     * Test 9: Table-driven decoder against the tree-walk decoder
+     */
+    public static void testTableDecoder() {
+        System.out.println("\n" + "=".repeat(70));
+        System.out.println("TEST 9: TABLE-DRIVEN DECODER");
+        System.out.println("=".repeat(70));
+
+        Map<String, String> texts = new LinkedHashMap<>();
+        texts.put("Single character", "aaaaaaa");
+        texts.put("English", "The quick brown fox jumps over the lazy dog. ".repeat(100));
+        texts.put("Skewed (long codes)", Corpora.fibonacciText(22));
+
+        for (Map.Entry<String, String> entry : texts.entrySet()) {
+            String text = entry.getValue();
+            HuffmanCoding huffman = new HuffmanCoding();
+            BitBuffer packed = huffman.encodeBits(text);
+
+            String oracle = treeWalkDecode(huffman.getRoot(), packed);
+            String table = huffman.decodeBits(packed);
+            int maxCode = huffman.getCodes().values().stream().mapToInt(String::length).max().orElse(0);
+
+            System.out.println("\n" + entry.getKey() + ":");
+            System.out.println("  Max code length: " + maxCode);
+            System.out.println("  Matches tree walk: " + table.equals(oracle));
+            System.out.println("  Round trip: " + table.equals(text));
+        }
+
+        // Throughput on a few MB of text
+        String large = ("Computer science is the study of computation, information, and automation. " +
+                        "Algorithms and data structures are central to computer science. ").repeat(30000);
+        HuffmanCoding huffman = new HuffmanCoding();
+        BitBuffer packed = huffman.encodeBits(large);
+        HuffmanTableDecoder decoder = HuffmanTableDecoder.fromCodes(huffman.getCodes());
+
+        String oracle = null, table = null;
+        long treeNanos = Long.MAX_VALUE, tableNanos = Long.MAX_VALUE;
+        for (int run = 0; run < 5; run++) {
+            long start = System.nanoTime();
+            oracle = treeWalkDecode(huffman.getRoot(), packed);
+            treeNanos = Math.min(treeNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            table = decoder.decode(packed);
+            tableNanos = Math.min(tableNanos, System.nanoTime() - start);
+        }
+
+        double mb = large.length() / 1e6;
+        System.out.printf("%nDecode throughput on %.1f MB:%n", mb);
+        System.out.printf("  Tree walk: %.1f MB/s%n", mb / (treeNanos / 1e9));
+        System.out.printf("  Table (%d-bit root, %,d table bytes): %.1f MB/s%n",
+            decoder.getRootBits(), decoder.getTableBytes(), mb / (tableNanos / 1e9));
+        System.out.println("  Outputs match: " + table.equals(oracle));
+    }
+
+    /**
+     * Test 10: Streaming compression with bounded memory
+     */
+    public static void testStreaming() {
+        System.out.println("\n" + "=".repeat(70));
+        System.out.println("TEST 10: STREAMING COMPRESSION");
+        System.out.println("=".repeat(70));
+
+        String filename = "test_stream.huf";
+        long totalBytes = 24L << 20;
+
+        try {
+            // Input is generated on the fly and never held in memory as a whole
+            java.util.zip.CRC32 sourceCrc = new java.util.zip.CRC32();
+            InputStream source = new java.util.zip.CheckedInputStream(Corpora.generatedLog(totalBytes), sourceCrc);
+
+            HuffmanStream compressor = new HuffmanStream(1 << 20);
+            long start = System.nanoTime();
+            try (OutputStream out = new FileOutputStream(filename)) {
+                compressor.compress(source, out);
+            }
+            long compressNanos = System.nanoTime() - start;
+
+            java.util.zip.CRC32 decodedCrc = new java.util.zip.CRC32();
+            long[] decodedBytes = {0};
+            OutputStream sink = new OutputStream() {
+                @Override
+                public void write(int b) { decodedCrc.update(b); decodedBytes[0]++; }
+
+                @Override
+                public void write(byte[] b, int off, int len) { decodedCrc.update(b, off, len); decodedBytes[0] += len; }
+            };
+
+            HuffmanStream decompressor = new HuffmanStream();
+            start = System.nanoTime();
+            try (InputStream in = new FileInputStream(filename)) {
+                decompressor.decompress(in, sink);
+            }
+            long decompressNanos = System.nanoTime() - start;
+
+            double mb = totalBytes / (double) (1 << 20);
+            System.out.printf("Input: %.0f MB in %d KB chunks%n", mb, compressor.getChunkSize() >> 10);
+            System.out.printf("Compressed: %,d bytes (%.2f%% smaller)%n", compressor.getBytesOut(),
+                (1.0 - (double) compressor.getBytesOut() / totalBytes) * 100);
+            System.out.printf("Compress: %.1f MB/s, decompress: %.1f MB/s%n",
+                mb / (compressNanos / 1e9), mb / (decompressNanos / 1e9));
+            System.out.println("Byte count matches: " + (decodedBytes[0] == totalBytes));
+            System.out.println("Streaming round trip PASSED: " + (decodedCrc.getValue() == sourceCrc.getValue()));
+
+            // Empty input and channel overloads
+            ByteArrayOutputStream empty = new ByteArrayOutputStream();
+            new HuffmanStream().compress(new ByteArrayInputStream(new byte[0]), empty);
+            ByteArrayOutputStream emptyOut = new ByteArrayOutputStream();
+            new HuffmanStream().decompress(java.nio.channels.Channels.newChannel(new ByteArrayInputStream(empty.toByteArray())),
+                java.nio.channels.Channels.newChannel(emptyOut));
+            System.out.println("Empty stream round trip: " + (emptyOut.size() == 0));
+
+        } catch (IOException e) {
+            System.out.println("Test FAILED: " + e.getMessage());
+        } finally {
+            new File(filename).delete();
+        }
+    }
+
+    /**
+     * Test 11: Parallel block compression with random access
+     */
+    public static void testParallelBlocks() {
+        System.out.println("\n" + "=".repeat(70));
+        System.out.println("TEST 11: PARALLEL BLOCK COMPRESSION");
+        System.out.println("=".repeat(70));
+
+        try {
+            byte[] input = Corpora.generatedLog(32L << 20).readAllBytes();
+            int cores = Runtime.getRuntime().availableProcessors();
+            double mb = input.length / (double) (1 << 20);
+
+            byte[] container = null;
+            byte[] decoded = null;
+            int[] threadCounts = cores > 1 ? new int[]{1, cores} : new int[]{1};
+            for (int threads : threadCounts) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                ParallelHuffman parallel = new ParallelHuffman(1 << 20, pool);
+
+                long compressNanos = Long.MAX_VALUE, decompressNanos = Long.MAX_VALUE;
+                for (int run = 0; run < 3; run++) {
+                    long start = System.nanoTime();
+                    container = parallel.compress(input);
+                    compressNanos = Math.min(compressNanos, System.nanoTime() - start);
+
+                    start = System.nanoTime();
+                    decoded = parallel.decompress(container);
+                    decompressNanos = Math.min(decompressNanos, System.nanoTime() - start);
+                }
+                pool.shutdown();
+
+                System.out.printf("%d thread(s): compress %.1f MB/s, decompress %.1f MB/s%n",
+                    threads, mb / (compressNanos / 1e9), mb / (decompressNanos / 1e9));
+            }
+
+            ParallelHuffman parallel = new ParallelHuffman();
+            int blocks = parallel.getBlockCount(container);
+            System.out.printf("Blocks: %d, container: %,d bytes for %,d input bytes%n", blocks, container.length, input.length);
+            System.out.println("Parallel round trip PASSED: " + Arrays.equals(decoded, input));
+
+            // Random access to a single block, including the short last one
+            boolean blocksMatch = true;
+            for (int k : new int[]{0, blocks / 2, blocks - 1}) {
+                byte[] block = parallel.decompressBlock(container, k);
+                int from = k * parallel.getBlockSize();
+                blocksMatch &= Arrays.equals(block, Arrays.copyOfRange(input, from, Math.min(input.length, from + parallel.getBlockSize())));
+            }
+            System.out.println("Single block decode PASSED: " + blocksMatch);
+
+            byte[] odd = Arrays.copyOf(input, 3 * 1000 + 17);
+            ParallelHuffman small = new ParallelHuffman(1000, ForkJoinPool.commonPool());
+            System.out.println("Partial last block round trip: " + Arrays.equals(small.decompress(small.compress(odd)), odd));
+            System.out.println("Empty input round trip: " + (small.decompress(small.compress(new byte[0])).length == 0));
+
+        } catch (IOException e) {
+            System.out.println("Test FAILED: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Test 12: Primitive-array histograms
+     */
+    public static void testHistogram() {
+        System.out.println("\n" + "=".repeat(70));
+        System.out.println("TEST 12: PRIMITIVE HISTOGRAM");
+        System.out.println("=".repeat(70));
+
+        String ascii = "the quick brown fox jumps over the lazy dog ".repeat(20);
+        String unicode = "Plankalkül, naïve café, 東京, emoji \uD83D\uDE00 ".repeat(20);
+        for (String text : new String[]{"", ascii, unicode}) {
+            boolean matches = Histogram.ofChars(text).asMap().equals(boxedFrequencies(text));
+            System.out.println("Matches HashMap counts (" + text.length() + " chars): " + matches);
+        }
+
+        try {
+            byte[] bytes = Corpora.generatedLog(8L << 20).readAllBytes();
+            int[] reference = new int[256];
+            for (byte b : bytes) { reference[b & 0xFF]++; }
+            System.out.println("Byte counts match: " + Arrays.equals(Histogram.ofBytes(bytes).counts(), reference));
+            System.out.println("Parallel byte counts match: "
+                + Arrays.equals(Histogram.ofBytesParallel(bytes, ForkJoinPool.commonPool()).counts(), reference));
+
+            String large = new String(bytes, "ISO-8859-1");
+            long boxedNanos = Long.MAX_VALUE, arrayNanos = Long.MAX_VALUE, parallelNanos = Long.MAX_VALUE;
+            Map<Character, Integer> boxed = null;
+            Histogram array = null, parallel = null;
+            for (int run = 0; run < 3; run++) {
+                long start = System.nanoTime();
+                boxed = boxedFrequencies(large);
+                boxedNanos = Math.min(boxedNanos, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                array = Histogram.ofChars(large);
+                arrayNanos = Math.min(arrayNanos, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                parallel = Histogram.ofCharsParallel(large, ForkJoinPool.commonPool());
+                parallelNanos = Math.min(parallelNanos, System.nanoTime() - start);
+            }
+
+            double mb = large.length() / 1e6;
+            System.out.printf("%nCounting %.1f MB of chars:%n", mb);
+            System.out.printf("  HashMap<Character, Integer>: %.1f MB/s%n", mb / (boxedNanos / 1e9));
+            System.out.printf("  int[] histogram: %.1f MB/s%n", mb / (arrayNanos / 1e9));
+            System.out.printf("  Parallel int[] histogram: %.1f MB/s%n", mb / (parallelNanos / 1e9));
+            System.out.println("  All agree: " + (array.asMap().equals(boxed) && parallel.asMap().equals(boxed)));
+        } catch (IOException e) {
+            System.out.println("Test FAILED: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Test 13: Array-based tree construction
+     */
+    public static void testArrayTree() {
+        System.out.println("\n" + "=".repeat(70));
+        System.out.println("TEST 13: ARRAY-BASED HUFFMAN TREE");
+        System.out.println("=".repeat(70));
+
+        Map<String, String> texts = new LinkedHashMap<>();
+        texts.put("Single character", "aaaa");
+        texts.put("Two characters", "ababababab");
+        texts.put("English", "The quick brown fox jumps over the lazy dog. ".repeat(100));
+        texts.put("Fibonacci", Corpora.fibonacciText(22));
+        texts.put("Unicode", "Plankalkül, naïve café, 東京 ".repeat(20));
+
+        for (Map.Entry<String, String> entry : texts.entrySet()) {
+            Map<Character, Integer> frequencies = boxedFrequencies(entry.getValue());
+            HuffmanTree tree = HuffmanTree.build(frequencies);
+
+            long arrayCost = 0;
+            int[] symbols = tree.leafSymbols();
+            int[] lengths = tree.leafCodeLengths();
+            for (int i = 0; i < symbols.length; i++) {
+                arrayCost += (long) lengths[i] * frequencies.get((char) symbols[i]);
+            }
+
+            System.out.println("\n" + entry.getKey() + ":");
+            System.out.println("  Nodes: " + tree.getNodeCount() + " for " + tree.getLeafCount() + " symbols");
+            System.out.println("  Optimal (matches PriorityQueue build): " + (arrayCost == priorityQueueCost(frequencies)));
+        }
+
+        // Build + code generation cost for a full byte alphabet
+        int[] counts = new int[256];
+        Random random = new Random(7);
+        for (int i = 0; i < counts.length; i++) { counts[i] = 1 + random.nextInt(100000); }
+        Map<Character, Integer> boxed = Histogram.wrap(counts).asMap();
+
+        int iterations = 20000;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            priorityQueueCost(boxed);
+        }
+        long nodeNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            HuffmanTree.build(counts).toCodeBook();
+        }
+        long arrayNanos = System.nanoTime() - start;
+
+        System.out.printf("%n256-symbol build + codes: PriorityQueue/nodes %.2f us, arrays %.2f us%n",
+            nodeNanos / 1e3 / iterations, arrayNanos / 1e3 / iterations);
+    }
+
+    /**
+     * Test 14: Length-limited codes
+     */
+    public static void testLengthLimitedCodes() {
+        System.out.println("\n" + "=".repeat(70));
+        System.out.println("TEST 14: LENGTH-LIMITED CODES (PACKAGE-MERGE)");
+        System.out.println("=".repeat(70));
+
+        String text = Corpora.fibonacciText(24) + "The quick brown fox jumps over the lazy dog. 0123456789".repeat(10);
+
+        HuffmanCoding unlimited = new HuffmanCoding();
+        BitBuffer unlimitedBits = unlimited.encodeBits(text);
+        System.out.println("Unconstrained longest code: " + unlimited.getCodeBook().getMaxLength()
+            + " bits, " + unlimitedBits.getBitLength() + " bits total");
+
+        long previousBits = Long.MAX_VALUE;
+        boolean monotonic = true;
+        for (int cap : new int[]{8, 11, 12, 15}) {
+            HuffmanCoding huffman = new HuffmanCoding();
+            huffman.setMaxCodeLength(cap);
+            BitBuffer packed = huffman.encodeBits(text);
+            CodeBook book = huffman.getCodeBook();
+            CompressionStats stats = huffman.getCompressionStats(text, packed);
+
+            System.out.println("\nCap " + cap + " bits:");
+            System.out.println("  Longest code: " + book.getMaxLength() + " (within cap: " + (book.getMaxLength() <= cap) + ")");
+            System.out.println("  Round trip: " + huffman.decodeBits(packed).equals(text));
+            System.out.printf("  Encoded: %d bits, unconstrained: %d bits, cost of cap: %.3f%%%n",
+                stats.encodedBits, stats.unconstrainedBits, stats.getCapCostPercent());
+
+            monotonic &= packed.getBitLength() <= previousBits && packed.getBitLength() >= unlimitedBits.getBitLength();
+            previousBits = packed.getBitLength();
+        }
+        System.out.println("\nCost shrinks as the cap grows: " + monotonic);
+
+        // Exhaustive check on a small alphabet
+        long[] weights = {1, 1, 2, 3, 5, 8, 13, 21};
+        boolean optimal = true;
+        for (int cap = 3; cap <= 7; cap++) {
+            int[] lengths = PackageMerge.codeLengths(weights, cap);
+            optimal &= weightedLength(weights, lengths) == bruteForceLimitedCost(weights, cap, 0, new int[weights.length]);
+        }
+        System.out.println("Matches exhaustive search: " + optimal);
+
+        try {
+            PackageMerge.codeLengths(weights, 2);
+            System.out.println("Impossible cap rejected: false");
+        } catch (IllegalArgumentException e) {
+            System.out.println("Impossible cap rejected: true");
+        }
+    }
+
+    /**
+     * Test 15: Adaptive (one-pass) Huffman against static Huffman
+     */
+    public static void testAdaptiveHuffman() {
+        System.out.println("\n" + "=".repeat(70));
+        System.out.println("TEST 15: ADAPTIVE HUFFMAN (FGK)");
+        System.out.println("=".repeat(70));
+
+        Map<String, String> texts = new LinkedHashMap<>();
+        texts.put("Short", "hello world");
+        texts.put("Single character", "aaaaaaa");
+        texts.put("English", ("Computer science is the study of computation, information, and automation. " +
+                              "Algorithms and data structures are central to computer science. ").repeat(40));
+        texts.put("Unicode", "Plankalkül, naïve café, 東京 ".repeat(20));
+        texts.put("Fibonacci", Corpora.fibonacciText(18));
+
+        System.out.printf("%n%-18s %12s %12s %10s%n", "Text", "Static", "Adaptive", "Round trip");
+        System.out.println("-".repeat(70));
+        for (Map.Entry<String, String> entry : texts.entrySet()) {
+            String text = entry.getValue();
+            HuffmanCoding huffman = new HuffmanCoding();
+            CompressionStats staticStats = huffman.getCompressionStats(text, huffman.encodeBits(text));
+
+            AdaptiveHuffman adaptive = AdaptiveHuffman.forChars();
+            BitBuffer adaptiveBits = adaptive.encodeBits(text);
+            CompressionStats adaptiveStats = adaptive.getCompressionStats(text, adaptiveBits);
+            boolean roundTrip = AdaptiveHuffman.forChars().decodeBits(adaptiveBits).equals(text)
+                && adaptive.decode(adaptive.encode(text)).equals(text);
+
+            System.out.printf("%-18s %11.2f%% %11.2f%% %10s%n",
+                entry.getKey(), staticStats.compressionRatio, adaptiveStats.compressionRatio, roundTrip);
+        }
+
+        BitBuffer whole = AdaptiveHuffman.forChars().encodeBits("hello world");
+        BitBuffer truncated = BitBuffer.fromByteArray(whole.toByteArray(), whole.getBitLength() - 1);
+        String truncation = "";
+        try {
+            AdaptiveHuffman.forChars().decodeBits(truncated);
+        } catch (IllegalStateException e) {
+            truncation = e.getMessage();
+        }
+        System.out.println("\nTruncated bits reported cleanly: " + truncation.startsWith("Truncated"));
+
+        // Speed on a larger text, best of 5 so the first runs can warm up
+        String large = texts.get("English").repeat(50);
+        HuffmanCoding staticCoder = new HuffmanCoding();
+        AdaptiveHuffman adaptiveCoder = AdaptiveHuffman.forChars();
+        BitBuffer staticBits = null, adaptiveBits = null;
+        long staticEncode = Long.MAX_VALUE, adaptiveEncode = Long.MAX_VALUE;
+        long staticDecode = Long.MAX_VALUE, adaptiveDecode = Long.MAX_VALUE;
+        boolean largeRoundTrip = true;
+        for (int run = 0; run < 5; run++) {
+            long start = System.nanoTime();
+            staticBits = staticCoder.encodeBits(large);
+            staticEncode = Math.min(staticEncode, System.nanoTime() - start);
+            start = System.nanoTime();
+            adaptiveBits = adaptiveCoder.encodeBits(large);
+            adaptiveEncode = Math.min(adaptiveEncode, System.nanoTime() - start);
+            start = System.nanoTime();
+            String staticText = staticCoder.decodeBits(staticBits);
+            staticDecode = Math.min(staticDecode, System.nanoTime() - start);
+            start = System.nanoTime();
+            String adaptiveText = adaptiveCoder.decodeBits(adaptiveBits);
+            adaptiveDecode = Math.min(adaptiveDecode, System.nanoTime() - start);
+            largeRoundTrip &= staticText.equals(large) && adaptiveText.equals(large);
+        }
+        double mb = large.length() / 1e6;
+        System.out.printf("%nEncode %.1f MB: static %.1f MB/s (%,d bits), adaptive %.1f MB/s (%,d bits)%n",
+            mb, mb / (staticEncode / 1e9), staticBits.getBitLength(), mb / (adaptiveEncode / 1e9), adaptiveBits.getBitLength());
+        System.out.printf("Decode %.1f MB: static %.1f MB/s, adaptive %.1f MB/s%n",
+            mb, mb / (staticDecode / 1e9), mb / (adaptiveDecode / 1e9));
+        System.out.println("Large text round trip: " + largeRoundTrip);
+
+        // Live stream: output must start flowing before the input ends
+        try {
+            ByteArrayOutputStream sink = new ByteArrayOutputStream();
+            AdaptiveHuffman.CompressingOutputStream out = new AdaptiveHuffman.CompressingOutputStream(sink);
+            byte[] line = "GET /index.html HTTP/1.1\n".getBytes();
+            out.write(line);
+            boolean flowing = sink.size() > 0;
+            for (int i = 0; i < 1000; i++) { out.write(line); }
+            out.close();
+
+            InputStream in = new AdaptiveHuffman.DecompressingInputStream(new ByteArrayInputStream(sink.toByteArray()));
+            byte[] restored = in.readAllBytes();
+            byte[] expected = new String(line).repeat(1001).getBytes();
+
+            // Only the bytes of the first line have arrived; reading past them would hit end of stream
+            ByteArrayOutputStream firstLine = new ByteArrayOutputStream();
+            new AdaptiveHuffman.CompressingOutputStream(firstLine).write(line);
+            InputStream live = new AdaptiveHuffman.DecompressingInputStream(new ByteArrayInputStream(firstLine.toByteArray()));
+            byte[] buffer = new byte[8192];
+            int got = live.read(buffer, 0, buffer.length);
+
+            System.out.println("\nOutput flows after first write: " + flowing);
+            System.out.println("Partial read returns what has arrived: " + (got > 0 && got <= line.length
+                && Arrays.equals(Arrays.copyOf(buffer, got), Arrays.copyOf(line, got))));
+            System.out.printf("Stream: %,d bytes -> %,d bytes%n", expected.length, sink.size());
+            System.out.println("Stream round trip PASSED: " + Arrays.equals(restored, expected));
+        } catch (IOException e) {
+            System.out.println("Test FAILED: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Test 16: Interleaved four-stream decoding
+     */
+    public static void testInterleavedStreams() {
+        System.out.println("\n" + "=".repeat(70));
+        System.out.println("TEST 16: INTERLEAVED MULTI-STREAM DECODING");
+        System.out.println("=".repeat(70));
+
+        try {
+            InterleavedHuffman interleaved = new InterleavedHuffman();
+            for (String text : new String[]{"", "a", "abc", "hello world", Corpora.fibonacciText(20)}) {
+                String label = text.length() > 20 ? text.substring(0, 20) + "..." : text;
+                System.out.println("Round trip '" + label + "': " + interleaved.decode(interleaved.encode(text)).equals(text));
+            }
+
+            byte[] good = interleaved.encode("hello world");
+            int symbolCount = (good[5] & 0xFF) << 8 | good[6] & 0xFF;
+            byte[] negativeSize = good.clone();
+            negativeSize[7 + 3 * symbolCount] = (byte) 0x80;
+            byte[] badTable = good.clone();
+            badTable[7 + 2] = 100;
+            int rejected = 0;
+            for (byte[] corrupt : new byte[][]{negativeSize, Arrays.copyOf(good, good.length - 2), Arrays.copyOf(good, 9), badTable}) {
+                try {
+                    interleaved.decode(corrupt);
+                } catch (IOException e) {
+                    rejected++;
+                }
+            }
+            System.out.println("Corrupt and truncated blocks rejected: " + (rejected == 4));
+
+            boolean shared = java.util.stream.IntStream.range(0, 64).parallel().allMatch(n -> {
+                String text = "x".repeat(n * 50) + Corpora.fibonacciText(n % 20 + 1);
+                try {
+                    return interleaved.decode(interleaved.encode(text)).equals(text);
+                } catch (IOException e) {
+                    return false;
+                }
+            });
+            System.out.println("One instance shared by many threads: " + shared);
+            StringBuilder everyChar = new StringBuilder();
+            for (int c = 0; c <= 0xFFFF; c++) { everyChar.append((char) c); }
+            boolean tooMany = false;
+            try {
+                interleaved.encode(everyChar.toString());
+            } catch (IllegalArgumentException e) {
+                tooMany = true;
+            }
+            System.out.println("65536-symbol alphabet refused: " + tooMany);
+
+            String large = new String(Corpora.generatedLog(16L << 20).readAllBytes(), "ISO-8859-1");
+            double mb = large.length() / 1e6;
+
+            HuffmanCoding huffman = new HuffmanCoding();
+            BitBuffer single = huffman.encodeBits(large);
+            InterleavedHuffman oneStream = new InterleavedHuffman(1);
+            byte[] oneBlock = oneStream.encode(large);
+            byte[] fourBlock = interleaved.encode(large);
+
+            long codingNanos = Long.MAX_VALUE, oneNanos = Long.MAX_VALUE, fourNanos = Long.MAX_VALUE;
+            boolean matches = true;
+            for (int run = 0; run < 5; run++) {
+                long start = System.nanoTime();
+                String a = huffman.decodeBits(single);
+                codingNanos = Math.min(codingNanos, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                String b = oneStream.decode(oneBlock);
+                oneNanos = Math.min(oneNanos, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                String c = interleaved.decode(fourBlock);
+                fourNanos = Math.min(fourNanos, System.nanoTime() - start);
+
+                matches &= a.equals(large) && b.equals(large) && c.equals(large);
+            }
+
+            System.out.printf("%nDecode %.1f MB on one thread:%n", mb);
+            System.out.printf("  HuffmanCoding.decodeBits:  %.1f MB/s%n", mb / (codingNanos / 1e9));
+            System.out.printf("  1 stream (11-bit cap):     %.1f MB/s (%,d bytes)%n", mb / (oneNanos / 1e9), oneBlock.length);
+            System.out.printf("  4 streams (11-bit cap):    %.1f MB/s (%,d bytes)%n", mb / (fourNanos / 1e9), fourBlock.length);
+            System.out.printf("  4-stream speedup over decodeBits: %.2fx, over 1 stream: %.2fx%n",
+                (double) codingNanos / fourNanos, (double) oneNanos / fourNanos);
+            System.out.println("  All outputs correct: " + matches);
+            System.out.println("  4 streams faster than decodeBits: " + (fourNanos < codingNanos));
+        } catch (IOException e) {
+            System.out.println("Test FAILED: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Test 17: Pre-trained code tables and the code table cache
+     */
+    public static void testStaticCodeBooks() {
+        System.out.println("\n" + "=".repeat(70));
+        System.out.println("TEST 17: PRE-TRAINED CODE TABLES AND TABLE CACHE");
+        System.out.println("=".repeat(70));
+
+        try {
+            String[] lines = new String(Corpora.generatedLog(4L << 20).readAllBytes(), "ISO-8859-1").split("\n");
+            List<String> corpus = Arrays.asList(lines).subList(0, lines.length / 2);
+            List<String> messages = Arrays.asList(lines).subList(lines.length / 2, lines.length);
+
+            CodeBookRegistry registry = new CodeBookRegistry();
+            registry.register("logs", CodeBookRegistry.train(corpus));
+            File tableFile = File.createTempFile("huffman_table", ".huft");
+            tableFile.deleteOnExit();
+            registry.save("logs", tableFile.getPath());
+            CodeBookRegistry loaded = new CodeBookRegistry();
+            String name = loaded.load(tableFile.getPath());
+            System.out.println("Saved table loads under its name: " + (name.equals("logs") && loaded.get("logs").equals(registry.get("logs"))));
+
+            registry.register("emoji", CodeBook.fromLengths(new int[] { 'a', 0x1F600 }, new int[] { 1, 1 }));
+            boolean wideRefused = false;
+            try {
+                registry.save("emoji", tableFile.getPath());
+            } catch (IllegalArgumentException e) {
+                wideRefused = true;
+            }
+            System.out.println("Symbol above 0xFFFF refused on save: " + wideRefused);
+
+            HuffmanCoding perMessage = new HuffmanCoding();
+            HuffmanCoding trained = new HuffmanCoding();
+            trained.setStaticCodeBook(loaded.get("logs"));
+
+            long dynamicBits = 0, staticBits = 0;
+            long dynamicNanos = 0, staticNanos = 0;
+            boolean roundTrips = true;
+            for (String message : messages) {
+                long start = System.nanoTime();
+                BitBuffer a = perMessage.encodeBits(message);
+                dynamicNanos += System.nanoTime() - start;
+                roundTrips &= perMessage.decodeBits(a).equals(message);
+
+                start = System.nanoTime();
+                BitBuffer b = trained.encodeBits(message);
+                staticNanos += System.nanoTime() - start;
+                roundTrips &= trained.decodeBits(b).equals(message);
+
+                dynamicBits += a.getBitLength();
+                staticBits += b.getBitLength();
+            }
+            long chars = 0;
+            for (String message : messages) { chars += message.length(); }
+            System.out.printf("%n%,d messages, average %d chars:%n", messages.size(), chars / messages.size());
+            System.out.printf("  Per-message tables: %,d trees, %,d payload bits, %.0f ns/message%n",
+                perMessage.getTreeBuilds(), dynamicBits, (double) dynamicNanos / messages.size());
+            System.out.printf("  Trained table:      %,d trees, %,d payload bits, %.0f ns/message%n",
+                trained.getTreeBuilds(), staticBits, (double) staticNanos / messages.size());
+            System.out.println("Trained table builds no trees: " + (trained.getTreeBuilds() == 0));
+            System.out.println("All messages round trip: " + roundTrips);
+
+            String uncovered = "price: 5\u20ac";
+            BitBuffer fallback = trained.encodeBits(uncovered);
+            System.out.println("Uncovered symbol falls back to a built table: "
+                + (trained.getTreeBuilds() == 1 && trained.decodeBits(fallback).equals(uncovered)));
+
+            HuffmanCoding cachedCoding = new HuffmanCoding();
+            CodeBookCache cache = new CodeBookCache(64);
+            cachedCoding.setCodeBookCache(cache);
+            boolean cachedRoundTrips = true;
+            for (int round = 0; round < 100; round++) {
+                for (String message : messages.subList(0, 50)) {
+                    cachedRoundTrips &= cachedCoding.decodeBits(cachedCoding.encodeBits(message)).equals(message);
+                }
+            }
+            System.out.printf("%nCache: %d trees for 5,000 encodes of 50 messages, %d hits, %d misses%n",
+                cachedCoding.getTreeBuilds(), cache.getHits(), cache.getMisses());
+            System.out.println("Cache reuses tables: " + (cachedCoding.getTreeBuilds() <= 50 && cache.getHits() >= 4950));
+            System.out.println("Cached tables round trip: " + cachedRoundTrips);
+
+            // A cache hit builds no tree, so there is no uncapped cost to compare against
+            HuffmanCoding capped = new HuffmanCoding();
+            capped.setMaxCodeLength(12);
+            capped.setCodeBookCache(new CodeBookCache(4));
+            String message = messages.get(0);
+            CompressionStats built = capped.getCompressionStats(message, capped.encodeBits(message));
+            CompressionStats reused = capped.getCompressionStats(message, capped.encodeBits(message));
+            System.out.println("Cap cost measured on a built table, n/a on a cache hit: "
+                + (!Double.isNaN(built.getCapCostPercent()) && Double.isNaN(reused.getCapCostPercent())
+                    && reused.toString().contains("Cost of cap: n/a")));
+
+            CodeBookCache small = new CodeBookCache(2);
+            HuffmanCoding evicting = new HuffmanCoding();
+            evicting.setCodeBookCache(small);
+            evicting.encodeBits("aab");
+            evicting.encodeBits("xyz");
+            evicting.encodeBits("aab");
+            evicting.encodeBits("hello");
+            evicting.encodeBits("xyz");
+            System.out.println("Least recently used table is evicted: " + (small.size() == 2 && evicting.getTreeBuilds() == 4));
+        } catch (IOException e) {
+            System.out.println("Test FAILED: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Test 18: One immutable table shared by many threads
+     */
+    public static void testSharedCodeBook() {
+        System.out.println("\n" + "=".repeat(70));
+        System.out.println("TEST 18: SHARED CODE TABLE ACROSS THREADS");
+        System.out.println("=".repeat(70));
+
+        try {
+            String[] lines = new String(Corpora.generatedLog(1L << 20).readAllBytes(), "ISO-8859-1").split("\n");
+            CodeBook shared = HuffmanCodec.codeBookFor(String.join("\n", lines));
+            BitBuffer[] expected = new BitBuffer[lines.length];
+            for (int i = 0; i < lines.length; i++) {
+                expected[i] = HuffmanCodec.encode(shared, lines[i]);
+            }
+
+            int threads = 8;
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int first = t;
+                results.add(pool.submit(() -> {
+                    boolean ok = true;
+                    for (int round = 0; round < 4; round++) {
+                        for (int i = first; i < lines.length; i += 3) {
+                            BitBuffer encoded = HuffmanCodec.encode(shared, lines[i]);
+                            ok &= encoded.equals(expected[i]);
+                            ok &= HuffmanCodec.decode(shared, encoded).equals(lines[i]);
+                        }
+                    }
+                    return ok;
+                }));
+            }
+            boolean allMatch = true;
+            for (Future<Boolean> result : results) {
+                allMatch &= result.get();
+            }
+            pool.shutdown();
+
+            System.out.printf("%d threads x %,d messages on one table%n", threads, lines.length * 4 / 3);
+            System.out.println("Every thread encodes and decodes correctly: " + allMatch);
+            System.out.println("String form decodes: "
+                + HuffmanCodec.decode(shared, expected[0].toBitString()).equals(lines[0]));
+
+            boolean rejected = false;
+            try {
+                HuffmanCodec.encode(shared, "\u20ac");
+            } catch (IllegalArgumentException e) {
+                rejected = true;
+            }
+            System.out.println("Missing symbol rejected: " + rejected);
+        } catch (IOException | InterruptedException | ExecutionException e) {
+            System.out.println("Test FAILED: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Test 19: Allocation-free ByteBuffer encoder and decoder
+     */
+    public static void testByteBufferCodec() {
+        System.out.println("\n" + "=".repeat(70));
+        System.out.println("TEST 19: ALLOCATION-FREE BYTEBUFFER ENCODER/DECODER");
+        System.out.println("=".repeat(70));
+
+        try {
+            // Geometric distribution over all 256 bytes: unconstrained codes go well past 11 bits
+            Random random = new Random(19);
+            byte[] skewed = new byte[200000];
+            for (int i = 0; i < skewed.length; i++) {
+                int symbol = 0;
+                while (symbol < 255 && random.nextInt(3) != 0) { symbol++; }
+                skewed[i] = (byte) symbol;
+            }
+            byte[] log = Corpora.generatedLog(1L << 20).readAllBytes();
+
+            HuffmanEncoder encoder = new HuffmanEncoder();
+            HuffmanDecoder decoder = new HuffmanDecoder();
+            byte[][] inputs = {new byte[0], {42}, "aaaaaaaa".getBytes(), "hello world".getBytes(), skewed, log};
+            for (byte[] input : inputs) {
+                boolean ok = true;
+                for (boolean direct : new boolean[]{false, true}) {
+                    ByteBuffer src = direct ? ByteBuffer.allocateDirect(input.length) : ByteBuffer.allocate(input.length);
+                    src.put(input).flip();
+                    int capacity = HuffmanEncoder.maxEncodedLength(input.length);
+                    ByteBuffer block = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+                    ByteBuffer out = direct ? ByteBuffer.allocateDirect(input.length) : ByteBuffer.allocate(input.length);
+                    int written = encoder.encode(src, block);
+                    block.flip();
+                    ok &= written == block.remaining() && !src.hasRemaining();
+                    ok &= decoder.decode(block, out) == input.length && !block.hasRemaining();
+                    out.flip();
+                    ok &= out.equals(ByteBuffer.wrap(input));
+                }
+                System.out.printf("Round trip %,d bytes (heap and direct): %s%n", input.length, ok);
+            }
+
+            ByteBuffer block = ByteBuffer.allocate(HuffmanEncoder.maxEncodedLength(skewed.length));
+            encoder.encode(ByteBuffer.wrap(skewed), block);
+            byte[] viaStream = new byte[skewed.length];
+            HuffmanStream.readChunk(new DataInputStream(new ByteArrayInputStream(block.array(), 0, block.position())),
+                viaStream, 0, skewed.length);
+            System.out.println("Block reads as a HuffmanStream chunk: " + Arrays.equals(viaStream, skewed));
+
+            ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+            HuffmanStream.writeChunk(new DataOutputStream(chunk), skewed, 0, skewed.length, new int[256],
+                new HuffmanCoding(), new BitWriter(), null);
+            ByteBuffer fromStream = ByteBuffer.allocate(skewed.length);
+            decoder.decode(ByteBuffer.wrap(chunk.toByteArray()), fromStream);
+            System.out.println("Decodes HuffmanStream chunks with long codes: "
+                + Arrays.equals(fromStream.array(), skewed));
+
+            ByteBuffer small = ByteBuffer.allocate(8);
+            ByteBuffer logSource = ByteBuffer.wrap(log);
+            boolean overflow = false;
+            try {
+                encoder.encode(logSource, small);
+            } catch (BufferOverflowException e) {
+                overflow = logSource.position() == 0 && small.position() == 0;
+            }
+            System.out.println("Small destination rejected without consuming input: " + overflow);
+
+            // Compressed bytes go from a direct buffer to a file channel and back with no heap copy
+            File file = File.createTempFile("huffman_direct", ".bin");
+            file.deleteOnExit();
+            ByteBuffer direct = ByteBuffer.allocateDirect(HuffmanEncoder.maxEncodedLength(log.length));
+            ByteBuffer logDirect = ByteBuffer.allocateDirect(log.length);
+            logDirect.put(log).flip();
+            encoder.encode(logDirect, direct);
+            direct.flip();
+            try (java.nio.channels.FileChannel channel = new RandomAccessFile(file, "rw").getChannel()) {
+                while (direct.hasRemaining()) { channel.write(direct); }
+                direct.clear();
+                channel.position(0);
+                while (channel.read(direct) > 0) { }
+            }
+            direct.flip();
+            ByteBuffer restored = ByteBuffer.allocateDirect(log.length);
+            decoder.decode(direct, restored);
+            restored.flip();
+            System.out.println("Direct buffers through a FileChannel: " + restored.equals(ByteBuffer.wrap(log)));
+
+            // Steady state: a 4 KB message encoded and decoded repeatedly into the same buffers
+            java.lang.management.ThreadMXBean threads = java.lang.management.ManagementFactory.getThreadMXBean();
+            if (threads instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+                ByteBuffer message = ByteBuffer.allocateDirect(4096);
+                message.put(log, 0, 4096).flip();
+                ByteBuffer encoded = ByteBuffer.allocateDirect(HuffmanEncoder.maxEncodedLength(4096));
+                ByteBuffer decoded = ByteBuffer.allocateDirect(4096);
+                int calls = 20000;
+                long[] bytes = new long[2];
+                for (int phase = 0; phase < 2; phase++) {
+                    long before = allocation.getThreadAllocatedBytes(Thread.currentThread().getId());
+                    for (int i = 0; i < calls; i++) {
+                        message.rewind();
+                        encoded.clear();
+                        decoded.clear();
+                        encoder.encode(message, encoded);
+                        encoded.flip();
+                        decoder.decode(encoded, decoded);
+                    }
+                    bytes[phase] = allocation.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+                }
+                System.out.printf("%nAllocated after warm-up: %,d bytes over %,d encode+decode calls%n", bytes[1], calls);
+                System.out.println("No per-call allocation: " + (bytes[1] / calls == 0));
+            }
+        } catch (IOException e) {
+            System.out.println("Test FAILED: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Test 20: Memory-mapped file compression tool
+     */
+    public static void testMappedFileTool() {
+        System.out.println("\n" + "=".repeat(70));
+        System.out.println("TEST 20: MEMORY-MAPPED FILE TOOL");
+        System.out.println("=".repeat(70));
+
+        try {
+            File original = File.createTempFile("huffman_mapped", ".log");
+            File packed = File.createTempFile("huffman_mapped", ".hufs");
+            File restored = File.createTempFile("huffman_mapped", ".out");
+            original.deleteOnExit();
+            packed.deleteOnExit();
+            restored.deleteOnExit();
+            byte[] data = Corpora.generatedLog(8L << 20).readAllBytes();
+            try (OutputStream out = new FileOutputStream(original)) {
+                out.write(data);
+            }
+
+            HuffmanFileTool.main(new String[]{"compress", original.getPath(), packed.getPath()});
+            HuffmanFileTool.main(new String[]{"decompress", packed.getPath(), restored.getPath()});
+            System.out.println("CLI round trip: " + Arrays.equals(data, java.nio.file.Files.readAllBytes(restored.toPath())));
+
+            // 1 MB windows over 256 KB chunks: the same code path a file above 2 GB takes with 1 GB windows
+            HuffmanFileTool windowed = new HuffmanFileTool(256 << 10, 1 << 20);
+            windowed.compress(original.getPath(), packed.getPath());
+            int compressMappings = windowed.getMappings();
+            HuffmanFileTool reader = new HuffmanFileTool(256 << 10, 1 << 20);
+            reader.decompress(packed.getPath(), restored.getPath());
+            System.out.printf("%nSmall windows: %d input mappings to compress, %d mappings to decompress%n",
+                compressMappings, reader.getMappings());
+            System.out.println("Round trip across many mappings: "
+                + (compressMappings > 1 && Arrays.equals(data, java.nio.file.Files.readAllBytes(restored.toPath()))));
+
+            File streamed = File.createTempFile("huffman_mapped", ".hufs");
+            streamed.deleteOnExit();
+            new HuffmanStream(256 << 10).compressFile(original.getPath(), streamed.getPath());
+            new HuffmanFileTool().decompress(streamed.getPath(), restored.getPath());
+            boolean readsStream = Arrays.equals(data, java.nio.file.Files.readAllBytes(restored.toPath()));
+            new HuffmanStream().decompressFile(packed.getPath(), restored.getPath());
+            boolean streamReads = Arrays.equals(data, java.nio.file.Files.readAllBytes(restored.toPath()));
+            System.out.println("Reads HuffmanStream files and vice versa: " + (readsStream && streamReads));
+
+            File empty = File.createTempFile("huffman_mapped", ".empty");
+            empty.deleteOnExit();
+            HuffmanFileTool emptyTool = new HuffmanFileTool();
+            emptyTool.compress(empty.getPath(), packed.getPath());
+            emptyTool.decompress(packed.getPath(), restored.getPath());
+            System.out.println("Empty file round trip: " + (restored.length() == 0 && packed.length() == 13));
+
+            boolean rejected = false;
+            try {
+                new HuffmanFileTool().decompress(original.getPath(), restored.getPath());
+            } catch (IOException e) {
+                rejected = true;
+            }
+            System.out.println("Non-Huffman input rejected: " + rejected);
+        } catch (IOException e) {
+            System.out.println("Test FAILED: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Test 21: Order-1 context-modeled coding
+     */
+    public static void testContextModel() {
+        System.out.println("\n" + "=".repeat(70));
+        System.out.println("TEST 21: ORDER-1 CONTEXT MODEL");
+        System.out.println("=".repeat(70));
+
+        try {
+            ContextHuffman context = new ContextHuffman();
+            for (String text : new String[]{"", "a", "aaaa", "abababab", "hello world", Corpora.fibonacciText(15)}) {
+                String label = text.length() > 20 ? text.substring(0, 20) + "..." : text;
+                System.out.println("Round trip '" + label + "': " + context.decode(context.encode(text)).equals(text));
+            }
+
+            String english = ("Computer science is the study of computation, information, and automation. " +
+                "Algorithms and data structures are central to computer science. The quick brown fox jumps " +
+                "over the lazy dog while the theory of computation concerns abstract models of computation " +
+                "and the general classes of problems that can be solved using them. ").repeat(20);
+            String log = new String(Corpora.generatedLog(4L << 20).readAllBytes(), "ISO-8859-1");
+
+            System.out.printf("%n%-10s %12s %14s %14s %9s %10s%n", "Text", "Original", "Order-0 bytes", "Order-1 bytes", "Contexts", "Decode MB/s");
+            for (String[] sample : new String[][]{{"English", english}, {"Log", log}}) {
+                String text = sample[1];
+                HuffmanCoding huffman = new HuffmanCoding();
+                int order0 = huffman.encodeBits(text).getByteLength() + 2 + huffman.getCodeBook().size() * 3;
+
+                byte[] block = context.encode(text);
+                long start = System.nanoTime();
+                String decoded = context.decode(block);
+                double seconds = (System.nanoTime() - start) / 1e9;
+
+                System.out.printf("%-10s %12d %14d %14d %9d %10.1f%n", sample[0], text.length(), order0,
+                    block.length, context.getContextTables(), text.length() / 1e6 / seconds);
+                System.out.println(sample[0] + " round trip: " + decoded.equals(text));
+                System.out.println(sample[0] + " order-1 smaller than order-0: " + (block.length < order0));
+            }
+
+            String wide = "\u4e2d\u6587\u6d4b\u8bd5abc".repeat(50);
+            System.out.println("\nNon-Latin text round trip: " + context.decode(context.encode(wide)).equals(wide));
+
+            byte[] truncated = Arrays.copyOf(context.encode(english), 40);
+            boolean rejected = false;
+            try {
+                context.decode(truncated);
+            } catch (IOException e) {
+                rejected = true;
+            }
+            System.out.println("Truncated block rejected: " + rejected);
+        } catch (IOException e) {
+            System.out.println("Test FAILED: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Test 22: Entropy coder interface with Huffman and tANS backends
+     */
+    public static void testEntropyCodecs() {
+        System.out.println("\n" + "=".repeat(70));
+        System.out.println("TEST 22: PLUGGABLE ENTROPY CODERS (HUFFMAN AND tANS)");
+        System.out.println("=".repeat(70));
+
+        try {
+            Random random = new Random(22);
+            byte[] skewed = new byte[1 << 20];
+            for (int i = 0; i < skewed.length; i++) {
+                int r = random.nextInt(100);
+                skewed[i] = (byte) (r < 92 ? 0 : r < 97 ? 1 : r < 99 ? 2 : 3 + random.nextInt(8));
+            }
+            byte[] uniform = new byte[1 << 18];
+            random.nextBytes(uniform);
+            byte[] log = Corpora.generatedLog(1L << 20).readAllBytes();
+
+            List<EntropyCodec<?>> codecs = Arrays.asList(new HuffmanEntropyCodec(), new TansCodec());
+            for (EntropyCodec<?> codec : codecs) {
+                boolean ok = true;
+                for (byte[] input : new byte[][]{new byte[0], {7}, "aaaa".getBytes(), "abracadabra".getBytes()}) {
+                    ok &= Arrays.equals(codec.decompress(codec.compress(input)), input);
+                }
+                System.out.println(codec.getName() + " small inputs round trip: " + ok);
+            }
+
+            System.out.printf("%n%-8s %-8s %10s %10s %10s %10s %10s%n",
+                "Data", "Codec", "Bytes", "Bits/sym", "Entropy", "Enc MB/s", "Dec MB/s");
+            long[] skewedSizes = new long[2];
+            for (Object[] sample : new Object[][]{{"skewed", skewed}, {"log", log}, {"uniform", uniform}}) {
+                byte[] data = (byte[]) sample[1];
+                double entropy = entropyBitsPerSymbol(data);
+                for (int c = 0; c < codecs.size(); c++) {
+                    EntropyCodec<?> codec = codecs.get(c);
+                    byte[] block = null;
+                    byte[] restored = null;
+                    long encodeNanos = Long.MAX_VALUE, decodeNanos = Long.MAX_VALUE;
+                    for (int run = 0; run < 3; run++) {
+                        long start = System.nanoTime();
+                        block = codec.compress(data);
+                        encodeNanos = Math.min(encodeNanos, System.nanoTime() - start);
+                        start = System.nanoTime();
+                        restored = codec.decompress(block);
+                        decodeNanos = Math.min(decodeNanos, System.nanoTime() - start);
+                    }
+                    if (sample[0].equals("skewed")) { skewedSizes[c] = block.length; }
+                    double mb = data.length / 1e6;
+                    System.out.printf("%-8s %-8s %10d %10.3f %10.3f %10.1f %10.1f%n", sample[0], codec.getName(),
+                        block.length, block.length * 8.0 / data.length, entropy,
+                        mb / (encodeNanos / 1e9), mb / (decodeNanos / 1e9));
+                    if (!Arrays.equals(restored, data)) {
+                        System.out.println("  Round trip: false");
+                    }
+                }
+            }
+            double entropyBytes = entropyBitsPerSymbol(skewed) * skewed.length / 8;
+            System.out.printf("%nSkewed data: tANS within %.2f%% of entropy, Huffman %.2f%% above it%n",
+                (skewedSizes[1] - entropyBytes) * 100 / entropyBytes, (skewedSizes[0] - entropyBytes) * 100 / entropyBytes);
+            System.out.println("tANS beats Huffman on skewed data: " + (skewedSizes[1] < skewedSizes[0]));
+            System.out.println("tANS within 1% of entropy: " + (skewedSizes[1] < entropyBytes * 1.01));
+
+            String tansStats = codecs.get(1).getCompressionStats(skewed, codecs.get(1).compress(skewed)).toString();
+            System.out.println("\n" + tansStats);
+            System.out.println("No bit counters claimed for tANS: " + !tansStats.contains("Bits written"));
+
+            byte[] corrupt = codecs.get(1).compress(log);
+            corrupt[corrupt.length / 2] ^= 0x5A;
+            boolean rejected = false;
+            try {
+                rejected = !Arrays.equals(codecs.get(1).decompress(corrupt), log);
+            } catch (IOException e) {
+                rejected = true;
+            }
+            System.out.println("Corrupted tANS block detected: " + rejected);
+        } catch (IOException e) {
+            System.out.println("Test FAILED: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Test 23: Incompressible-block detection and raw/RLE/single-symbol fallback
+     */
+    public static void testBlockTypes() {
+        System.out.println("\n" + "=".repeat(70));
+        System.out.println("TEST 23: BLOCK TYPE SELECTION");
+        System.out.println("=".repeat(70));
+
+        try {
+            Random random = new Random(23);
+            byte[] randomBytes = new byte[1 << 20];
+            random.nextBytes(randomBytes);
+            byte[] zeros = new byte[1 << 20];
+            byte[] runs = new byte[1 << 20];
+            for (int i = 0; i < runs.length; ) {
+                int run = 200 + random.nextInt(800);
+                Arrays.fill(runs, i, Math.min(runs.length, i + run), (byte) random.nextInt(256));
+                i += run;
+            }
+            byte[] log = Corpora.generatedLog(1L << 20).readAllBytes();
+
+            System.out.printf("%-8s %10s %12s %10s %10s%n", "Data", "Original", "Compressed", "Type", "MB/s");
+            String[][] expectedTypes = {{"random", "raw"}, {"zeros", "single"}, {"runs", "rle"}, {"log", "huffman"}};
+            byte[][] inputs = {randomBytes, zeros, runs, log};
+            HuffmanEncoder encoder = new HuffmanEncoder();
+            HuffmanDecoder decoder = new HuffmanDecoder();
+            for (int k = 0; k < inputs.length; k++) {
+                byte[] data = inputs[k];
+                HuffmanStream stream = new HuffmanStream();
+                ByteArrayOutputStream packed = new ByteArrayOutputStream();
+                long start = System.nanoTime();
+                stream.compress(new ByteArrayInputStream(data), packed);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                String type = "?";
+                for (int t = 0; t < BlockType.COUNT; t++) {
+                    if (stream.getBlockCount(t) > 0) { type = BlockType.name(t); }
+                }
+                System.out.printf("%-8s %10d %12d %10s %10.1f%n", expectedTypes[k][0], data.length, packed.size(),
+                    type, data.length / 1e6 / seconds);
+
+                ByteArrayOutputStream restored = new ByteArrayOutputStream();
+                new HuffmanStream().decompress(new ByteArrayInputStream(packed.toByteArray()), restored);
+                System.out.println("  Stream round trip: " + Arrays.equals(restored.toByteArray(), data));
+                System.out.println("  Chose " + expectedTypes[k][1] + ": " + type.equals(expectedTypes[k][1]));
+                System.out.println("  Never larger than raw: " + (packed.size() <= data.length + 9 + 4 + 5));
+
+                ByteBuffer block = ByteBuffer.allocate(HuffmanEncoder.maxEncodedLength(data.length));
+                encoder.encode(ByteBuffer.wrap(data), block);
+                block.flip();
+                ByteBuffer out = ByteBuffer.allocate(data.length);
+                decoder.decode(block, out);
+                System.out.println("  ByteBuffer codec agrees: "
+                    + (BlockType.name(encoder.getLastBlockType()).equals(type) && Arrays.equals(out.array(), data)));
+            }
+
+            ParallelHuffman parallel = new ParallelHuffman(256 << 10, ForkJoinPool.commonPool());
+            byte[] mixed = new byte[randomBytes.length + log.length];
+            System.arraycopy(randomBytes, 0, mixed, 0, randomBytes.length);
+            System.arraycopy(log, 0, mixed, randomBytes.length, log.length);
+            System.out.println("\nMixed raw and Huffman blocks (parallel): "
+                + Arrays.equals(parallel.decompress(parallel.compress(mixed)), mixed));
+        } catch (IOException e) {
+            System.out.println("Test FAILED: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Test 24: Byte alphabet and full Unicode code point alphabet
+     */
+    public static void testSymbolAlphabets() {
+        System.out.println("\n" + "=".repeat(70));
+        System.out.println("TEST 24: BYTE AND CODE POINT ALPHABETS");
+        System.out.println("=".repeat(70));
+
+        try {
+            // Byte path: UTF-8 data is coded as is, with no decode into a String
+            byte[] utf8 = Corpora.generatedLog(4L << 20).readAllBytes();
+            HuffmanCoding bytes = new HuffmanCoding();
+            HuffmanCoding chars = new HuffmanCoding();
+            for (int warm = 0; warm < 3; warm++) {
+                bytes.encodeBytes(utf8);
+                chars.encodeBits(new String(utf8, StandardCharsets.UTF_8));
+            }
+            long start = System.nanoTime();
+            BitBuffer packedBytes = bytes.encodeBytes(utf8);
+            long byteNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            BitBuffer packedChars = chars.encodeBits(new String(utf8, StandardCharsets.UTF_8));
+            long charNanos = System.nanoTime() - start;
+            System.out.printf("UTF-8 log, %d bytes: byte path %.1f MB/s, String path %.1f MB/s%n",
+                utf8.length, utf8.length * 1e3 / byteNanos, utf8.length * 1e3 / charNanos);
+            System.out.println("Byte path round trip: " + Arrays.equals(bytes.decodeBytes(packedBytes), utf8));
+            System.out.println("Byte path at most as large as char path: "
+                + (packedBytes.getBitLength() <= packedChars.getBitLength()));
+
+            byte[] binary = new byte[1 << 16];
+            new Random(24).nextBytes(binary);
+            for (int i = 0; i < binary.length; i += 3) { binary[i] = 0; }
+            CodeBook byteBook = HuffmanCodec.codeBookForBytes(binary, 11);
+            System.out.println("Binary round trip with shared byte table: "
+                + Arrays.equals(HuffmanCodec.decodeBytes(byteBook, HuffmanCodec.encodeBytes(byteBook, binary)), binary));
+            boolean emptyRefused = false;
+            try {
+                HuffmanCodec.decodeBytes(CodeBook.fromLengths(new int[0], new int[0]), HuffmanCodec.encodeBytes(byteBook, binary));
+            } catch (IllegalArgumentException e) {
+                emptyRefused = true;
+            }
+            System.out.println("Empty table refused for byte decode: " + emptyRefused);
+
+            // Code point path: emoji and other supplementary characters are single symbols
+            StringBuilder mixed = new StringBuilder();
+            int[] astral = {0x1F600, 0x1F680, 0x1F4A9, 0x10437, 0x1D11E, 0x20BB7};
+            Random random = new Random(7);
+            for (int i = 0; i < 50_000; i++) {
+                int r = random.nextInt(10);
+                if (r < 6) {
+                    mixed.append((char) ('a' + random.nextInt(8)));
+                } else if (r < 8) {
+                    mixed.append("\u00e9\u4e2d\u0416".charAt(random.nextInt(3)));
+                } else {
+                    mixed.appendCodePoint(astral[random.nextInt(astral.length)]);
+                }
+            }
+            String text = mixed.toString();
+            int codePoints = text.codePointCount(0, text.length());
+
+            HuffmanCoding unicode = new HuffmanCoding();
+            BitBuffer packedCodePoints = unicode.encodeCodePoints(text);
+            CodeBook book = unicode.getCodeBook();
+            HuffmanCoding utf16 = new HuffmanCoding();
+            BitBuffer packedUnits = utf16.encodeBits(text);
+            System.out.printf("Mixed text: %d chars, %d code points; %d symbols as code points, %d as chars%n",
+                text.length(), codePoints, book.size(), utf16.getCodeBook().size());
+            System.out.printf("Encoded: %d bits as code points, %d bits as chars%n",
+                packedCodePoints.getBitLength(), packedUnits.getBitLength());
+            System.out.println("Code point round trip: " + unicode.decodeCodePoints(packedCodePoints).equals(text));
+            System.out.println("Each emoji is one symbol: " + (book.contains(0x1F600) && !book.contains(0xD83D)));
+            System.out.println("Code points beat surrogate pairs: "
+                + (packedCodePoints.getBitLength() < packedUnits.getBitLength()));
+            System.out.println("Wide table is sparse: " + book.isSparse());
+            System.out.println("Tree leaf keeps the code point: "
+                + (unicode.decode(packedCodePoints.toBitString()).equals(text)));
+
+            File file = File.createTempFile("huffman_unicode", ".bin");
+            file.deleteOnExit();
+            unicode.saveEncodedData(file.getPath(), packedCodePoints);
+            HuffmanCoding loader = new HuffmanCoding();
+            BitBuffer loaded = loader.loadEncodedData(file.getPath());
+            System.out.println("Wide table survives save/load: "
+                + (loader.getCodeBook().equals(book) && loader.decodeCodePoints(loaded).equals(text)));
+
+            String bmpOnly = "plain ascii text keeps the char table";
+            HuffmanCoding narrow = new HuffmanCoding();
+            BitBuffer narrowBits = narrow.encodeCodePoints(bmpOnly);
+            System.out.println("BMP text matches the char path: "
+                + (narrowBits.equals(new HuffmanCoding().encodeBits(bmpOnly)) && !narrow.getCodeBook().isSparse()));
+        } catch (IOException e) {
+            System.out.println("Test FAILED: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Test 25: Benchmark harness, run briefly at small sizes
+     */
+    public static void testBenchmarkHarness() {
+        System.out.println("\n" + "=".repeat(70));
+        System.out.println("TEST 25: BENCHMARK HARNESS");
+        System.out.println("=".repeat(70));
+
+        try {
+            HuffmanBenchmark benchmark = new HuffmanBenchmark(1, 2, 20);
+            List<HuffmanBenchmark.Result> results = benchmark.run(
+                Arrays.asList(Corpora.PROFILES), new long[]{1 << 10, 64 << 10});
+
+            // Histogram and encode run once per kernel implementation
+            int perSize = HuffmanBenchmark.BENCHMARKS.length + HuffmanBenchmark.kernels().size() - 1;
+            int expected = Corpora.PROFILES.length * 2 * perSize;
+            boolean positive = true;
+            boolean allocationMeasured = true;
+            for (HuffmanBenchmark.Result result : results) {
+                positive &= result.getScore() > 0;
+                allocationMeasured &= !Double.isNaN(result.getAllocatedBytesPerOp());
+            }
+            System.out.println("\nOne result per benchmark, size and profile: " + (results.size() == expected));
+            System.out.println("All scores positive: " + positive);
+            System.out.println("Allocation measured: " + allocationMeasured);
+
+            StringWriter json = new StringWriter();
+            benchmark.writeJson(json);
+            String text = json.toString();
+            int entries = text.split("\"primaryMetric\"", -1).length - 1;
+            System.out.println("JSON has every result: " + (entries == expected));
+            System.out.println("JSON carries MB/s and B/op: "
+                + (text.contains("\"scoreUnit\" : \"MB/s\"") && text.contains("\"gc.alloc.rate.norm\"")));
+            System.out.println("JSON is balanced: " + (text.trim().startsWith("[") && text.trim().endsWith("]")
+                && text.chars().filter(c -> c == '{').count() == text.chars().filter(c -> c == '}').count()));
+
+            System.out.println("Corpora have the requested size: "
+                + (Corpora.corpus("english", 12345).length == 12345
+                    && Corpora.corpus("log", 777).length == 777));
+            System.out.println("Sizes parse: " + (HuffmanBenchmark.parseSize("256M") == 256L << 20
+                && HuffmanBenchmark.parseSize("1K") == 1024));
+        } catch (IOException e) {
+            System.out.println("Test FAILED: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Test 26: Phase timings, entropy metrics and JFR events
+     */
+    public static void testPhaseMetrics() {
+        System.out.println("\n" + "=".repeat(70));
+        System.out.println("TEST 26: PHASE METRICS AND JFR EVENTS");
+        System.out.println("=".repeat(70));
+
+        try {
+            String text = new String(Corpora.generatedLog(1L << 20).readAllBytes());
+            HuffmanCoding huffman = new HuffmanCoding();
+            List<CompressionMetrics> seen = new ArrayList<>();
+            huffman.setMetricsListener(seen::add);
+
+            jdk.jfr.Recording recording = new jdk.jfr.Recording();
+            recording.enable("huffman.Compression");
+            recording.start();
+            BitBuffer encoded = huffman.encodeBits(text);
+            String decoded = huffman.decodeBits(encoded);
+            recording.stop();
+
+            CompressionMetrics encode = huffman.getLastEncodeMetrics();
+            CompressionMetrics decode = huffman.getLastDecodeMetrics();
+            CompressionStats stats = huffman.getCompressionStats(text, encoded);
+            System.out.println(stats);
+            System.out.println("\n" + decode);
+
+            boolean phasesTimed = true;
+            for (CompressionMetrics.Phase phase : new CompressionMetrics.Phase[]{CompressionMetrics.Phase.FREQUENCY,
+                    CompressionMetrics.Phase.TREE, CompressionMetrics.Phase.CODES, CompressionMetrics.Phase.ENCODE}) {
+                phasesTimed &= encode.getPhaseNanos(phase) > 0;
+            }
+            long phaseSum = 0;
+            for (CompressionMetrics.Phase phase : CompressionMetrics.Phase.values()) {
+                phaseSum += encode.getPhaseNanos(phase);
+            }
+            double entropy = entropyBitsPerSymbol(text.getBytes());
+            System.out.println("\nRound trip: " + decoded.equals(text));
+            System.out.println("Every encode phase timed: " + phasesTimed);
+            System.out.println("Decode timed separately: " + (decode.getPhaseNanos(CompressionMetrics.Phase.DECODE) > 0
+                && encode.getPhaseNanos(CompressionMetrics.Phase.DECODE) == 0));
+            System.out.println("Phases fit in the total: " + (phaseSum <= encode.getTotalNanos()));
+            System.out.println("Entropy matches the data: " + (Math.abs(encode.getEntropy() - entropy) < 1e-9));
+            System.out.println("Entropy <= average code length < entropy + 1: "
+                + (encode.getEntropy() <= encode.getAverageCodeLength()
+                    && encode.getAverageCodeLength() < encode.getEntropy() + 1));
+            System.out.println("Table and longest code recorded: " + (encode.getTableSymbols() == huffman.getCodeBook().size()
+                && encode.getMaxCodeLength() == huffman.getCodeBook().getMaxLength() && decode.getDecoderTableBytes() > 0));
+            System.out.println("Allocation recorded: " + (encode.getAllocatedBytes() > 0));
+            System.out.println("Listener saw encode then decode: " + (seen.size() == 2
+                && seen.get(0) == encode && seen.get(1) == decode));
+            System.out.println("Stats carry the metrics: " + (stats.getMetrics() == encode));
+
+            File file = File.createTempFile("huffman_metrics", ".jfr");
+            file.deleteOnExit();
+            recording.dump(file.toPath());
+            recording.close();
+            List<jdk.jfr.consumer.RecordedEvent> events = new ArrayList<>();
+            for (jdk.jfr.consumer.RecordedEvent event : jdk.jfr.consumer.RecordingFile.readAllEvents(file.toPath())) {
+                if (event.getEventType().getName().equals("huffman.Compression")) { events.add(event); }
+            }
+            System.out.println("JFR recorded both calls: " + (events.size() == 2));
+            if (events.size() == 2) {
+                jdk.jfr.consumer.RecordedEvent first = events.get(0);
+                System.out.printf("JFR encode event: %d ms total, tree %d ns, entropy %.4f%n",
+                    first.getDuration().toMillis(), first.getLong("treeNanos"), first.getDouble("entropy"));
+                System.out.println("JFR fields match: " + (first.getString("operation").equals("encode")
+                    && first.getLong("encodedBits") == encoded.getBitLength()
+                    && first.getLong("treeNanos") == encode.getPhaseNanos(CompressionMetrics.Phase.TREE)));
+            }
+
+            huffman.setMetricsListener(null);
+            huffman.encodeBytes(text.getBytes());
+            System.out.println("Byte path records metrics too: " + (huffman.getLastEncodeMetrics() != encode
+                && Math.abs(huffman.getLastEncodeMetrics().getEntropy() - entropy) < 1e-9 && seen.size() == 2));
+        } catch (IOException e) {
+            System.out.println("Test FAILED: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Test 27: Loopback TCP compression service and load generator
+     */
+    public static void testCompressionService() {
+        System.out.println("\n" + "=".repeat(70));
+        System.out.println("TEST 27: LOOPBACK COMPRESSION SERVICE");
+        System.out.println("=".repeat(70));
+
+        try {
+            byte[] message = Corpora.corpus("log", 2048);
+            CodeBookRegistry registry = new CodeBookRegistry();
+            registry.register("log", CodeBookRegistry.train(Collections.singletonList(
+                new String(Corpora.corpus("log", 1 << 16), StandardCharsets.ISO_8859_1))));
+
+            try (HuffmanServer server = new HuffmanServer(0, registry).start();
+                 HuffmanClient client = new HuffmanClient(server.getPort())) {
+                System.out.println("Listening on port " + server.getPort() + " with "
+                    + (server.usesVirtualThreads() ? "virtual" : "platform") + " threads");
+
+                byte[] block = client.compress(message);
+                byte[] shared = client.compress(message, "log");
+                System.out.printf("2 KB message: %d bytes with its own table, %d with the shared table%n",
+                    block.length, shared.length);
+                System.out.println("Per-request table round trip: " + Arrays.equals(client.decompress(block), message));
+                System.out.println("Shared table round trip: " + Arrays.equals(client.decompress(shared, "log"), message));
+                System.out.println("Shared table saves the header: " + (shared.length < block.length));
+
+                String unknown = "";
+                try {
+                    client.compress(message, "missing");
+                } catch (IOException e) {
+                    unknown = e.getMessage();
+                }
+                byte[] corrupt = shared.clone();
+                corrupt[5] ^= 0x40;
+                String corrupted = "";
+                try {
+                    client.decompress(corrupt, "log");
+                } catch (IOException e) {
+                    corrupted = e.getMessage();
+                }
+                System.out.println("Unknown table reported: " + unknown.contains("missing"));
+                System.out.println("Corrupt message reported: " + corrupted.startsWith("Server error"));
+                System.out.println("Connection survives bad requests: " + Arrays.equals(client.decompress(block), message));
+
+                HuffmanLoadGenerator.Report report = HuffmanLoadGenerator.run(server.getPort(), 200, 5, message, "log");
+                System.out.println("\n" + report);
+                String stats = server.statsText();
+                System.out.println("Server " + stats.substring(stats.indexOf("latency")).trim());
+                System.out.println("\nLoad run without failures: " + (report.getErrors() == 0 && report.getRequests() == 2000));
+                LatencyHistogram latency = server.getLatency();
+                System.out.println("Percentiles ordered: " + (latency.getPercentile(50) <= latency.getPercentile(99)
+                    && latency.getPercentile(99) <= latency.getMax()));
+                System.out.println("Stats over the wire: " + client.stats().contains("latency n="));
+                System.out.println("Rejected requests counted: " + (server.getErrors() == 2 && stats.contains(" errors=2 ")));
+            }
+
+            LatencyHistogram histogram = new LatencyHistogram();
+            for (long v = 1; v <= 100_000; v++) { histogram.record(v * 1000); }
+            long p99 = histogram.getPercentile(99);
+            System.out.println("Histogram p99 within 1/16: " + (Math.abs(p99 - 99_000_000L) <= 99_000_000L / 16));
+        } catch (IOException e) {
+            System.out.println("Test FAILED: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.out.println("Test FAILED: interrupted");
+        }
+    }
+
+    public static void testBatchEncoding() {
+        System.out.println("\n" + "=".repeat(70));
+        System.out.println("TEST 28: BATCH OF SHORT RECORDS UNDER ONE TABLE");
+        System.out.println("=".repeat(70));
+
+        try {
+            String log = new String(Corpora.corpus("log", 1 << 20), StandardCharsets.ISO_8859_1);
+            List<String> records = new ArrayList<>(Arrays.asList(log.split("\n")));
+            records.remove(records.size() - 1);
+            records.add("");
+            long rawBytes = 0;
+            for (String record : records) { rawBytes += record.length(); }
+
+            long start = System.nanoTime();
+            long separateBytes = 0;
+            for (String record : records.subList(0, 2000)) {
+                ByteBuffer block = ByteBuffer.allocate(HuffmanEncoder.maxEncodedLength(record.length()));
+                new HuffmanEncoder().encode(ByteBuffer.wrap(record.getBytes(StandardCharsets.ISO_8859_1)), block);
+                separateBytes += block.position();
+            }
+            double separateNanos = (System.nanoTime() - start) / 2000.0;
+
+            start = System.nanoTime();
+            byte[] packed = HuffmanBatch.encode(records);
+            double batchNanos = (System.nanoTime() - start) / (double) records.size();
+            long sampleBytes = 0;
+            for (String record : records.subList(0, 2000)) { sampleBytes += record.length(); }
+
+            System.out.printf("%d records, %d bytes: batch of %d bytes (%.1f%%)%n",
+                records.size(), rawBytes, packed.length, 100.0 * packed.length / rawBytes);
+            System.out.printf("First 2000 one by one: %d bytes for %d raw (%.1f%%), %.0f ns/record vs %.0f batched%n",
+                separateBytes, sampleBytes, 100.0 * separateBytes / sampleBytes, separateNanos, batchNanos);
+
+            HuffmanBatch batch = HuffmanBatch.open(packed);
+            System.out.println("Record count kept: " + (batch.size() == records.size()));
+            System.out.println("Whole batch round trip: " + HuffmanBatch.decode(packed).equals(records));
+            Random random = new Random(28);
+            boolean randomAccess = true;
+            for (int i = 0; i < 1000; i++) {
+                int k = random.nextInt(records.size());
+                randomAccess &= batch.get(k).equals(records.get(k));
+            }
+            System.out.println("Random access to single records: " + randomAccess);
+            System.out.println("Empty record kept: " + batch.get(records.size() - 1).isEmpty());
+            System.out.println("Batch smaller than records coded one by one: "
+                + ((double) packed.length / rawBytes < (double) separateBytes / sampleBytes));
+
+            List<String> streamed = Arrays.asList("alpha", "beta", "", "gamma\u20ac");
+            System.out.println("Stream input round trip: "
+                + HuffmanBatch.decode(HuffmanBatch.encode(streamed.stream())).equals(streamed));
+            System.out.println("Empty batch round trip: "
+                + HuffmanBatch.decode(HuffmanBatch.encode(Collections.<String>emptyList())).isEmpty());
+            List<String> single = Arrays.asList("aaaa", "a", "aa");
+            System.out.println("One-symbol batch round trip: "
+                + HuffmanBatch.decode(HuffmanBatch.encode(single)).equals(single));
+            boolean wideRefused = false;
+            try {
+                HuffmanBatch.encode(CodeBook.fromLengths(new int[] { 'a', 0x1F600 }, new int[] { 1, 1 }), single);
+            } catch (IllegalArgumentException e) {
+                wideRefused = true;
+            }
+            System.out.println("Table with a symbol above 0xFFFF refused: " + wideRefused);
+
+            HuffmanCoding huffman = new HuffmanCoding();
+            huffman.setMaxCodeLength(11);
+            byte[] capped = huffman.encodeBatch(records);
+            System.out.println("HuffmanCoding batch honours the cap: "
+                + (HuffmanBatch.open(capped).getCodeBook().getMaxLength() <= 11
+                && HuffmanBatch.decode(capped).equals(records)));
+            System.out.println("One tree for the whole batch: " + (huffman.getTreeBuilds() == 1));
+            HuffmanBatch cappedBatch = HuffmanBatch.open(capped);
+            long bodyBits = 0;
+            for (int k = 0; k < cappedBatch.size(); k++) { bodyBits += cappedBatch.bitLength(k); }
+            System.out.println("Batch counts body bits only: " + (huffman.getBitsWritten() == bodyBits
+                && huffman.getLastEncodeMetrics().getEncodedBits() == bodyBits));
+
+            byte[] corrupt = packed.clone();
+            corrupt[HuffmanBatch.HEADER_BYTES + 3 * batch.getCodeBook().size() + 4 * 5] = (byte) 0xFF;
+            String rejected = "";
+            try {
+                HuffmanBatch.open(corrupt);
+            } catch (IOException e) {
+                rejected = e.getMessage();
+            }
+            System.out.println("Corrupt offsets rejected: " + rejected.startsWith("Corrupt batch"));
+        } catch (IOException e) {
+            System.out.println("Test FAILED: " + e.getMessage());
+        }
+    }
+
+    public static void testStreamingDecode() {
+        System.out.println("\n" + "=".repeat(70));
+        System.out.println("TEST 29: STREAMING DECODE TO WRITER, CHARBUFFER AND CHANNEL");
+        System.out.println("=".repeat(70));
+
+        try {
+            StringBuilder builder = new StringBuilder(new String(Corpora.corpus("log", 1 << 22), StandardCharsets.ISO_8859_1));
+            for (int i = 0; i < builder.length(); i += 997) {
+                builder.insert(i, "\u00e9\uD83D\uDE00");
+            }
+            String text = builder.toString();
+            HuffmanCoding huffman = new HuffmanCoding();
+            BitBuffer encoded = huffman.encodeBits(text);
+
+            // Keeps only a running hash, so nothing but the decoder's own chunk is held
+            long[] hash = {0};
+            int[] largestWrite = {0};
+            Writer sink = new Writer() {
+                @Override
+                public void write(char[] chars, int offset, int length) {
+                    largestWrite[0] = Math.max(largestWrite[0], length);
+                    for (int i = offset; i < offset + length; i++) { hash[0] = hash[0] * 31 + chars[i]; }
+                }
+                @Override public void flush() { }
+                @Override public void close() { }
+            };
+            long expected = 0;
+            for (int i = 0; i < text.length(); i++) { expected = expected * 31 + text.charAt(i); }
+
+            long chars = huffman.decodeBits(encoded, sink);
+            long streamedAllocation = huffman.getLastDecodeMetrics().getAllocatedBytes();
+            huffman.decodeBits(encoded);
+            long stringAllocation = huffman.getLastDecodeMetrics().getAllocatedBytes();
+            System.out.printf("%d chars: streaming decode allocated %d KB, String decode %d KB%n",
+                chars, streamedAllocation >> 10, stringAllocation >> 10);
+            System.out.println("Writer receives every char: " + (chars == text.length() && hash[0] == expected));
+            System.out.println("Writes bounded by the chunk: " + (largestWrite[0] <= HuffmanCodec.DECODE_CHUNK));
+            System.out.println("Streaming allocates under 1/100 of the String path: "
+                + (streamedAllocation >= 0 && streamedAllocation * 100 < stringAllocation));
+
+            StringWriter small = new StringWriter();
+            huffman.decodeBits(huffman.encodeBits("streaming"), small);
+            System.out.println("StringWriter round trip: " + small.toString().equals("streaming"));
+
+            ByteArrayOutputStream utf8 = new ByteArrayOutputStream();
+            huffman.encodeBits(text); // puts the table for `encoded` back
+            huffman.decodeBits(encoded, java.nio.channels.Channels.newChannel(utf8), StandardCharsets.UTF_8);
+            System.out.println("UTF-8 channel output, pairs split across chunks: "
+                + Arrays.equals(utf8.toByteArray(), text.getBytes(StandardCharsets.UTF_8)));
+
+            // A non-blocking channel may take nothing, so writing it out would spin
+            java.nio.channels.Pipe pipe = java.nio.channels.Pipe.open();
+            pipe.sink().configureBlocking(false);
+            boolean refused = false;
+            try {
+                huffman.decodeBits(encoded, pipe.sink(), StandardCharsets.UTF_8);
+            } catch (IllegalArgumentException e) {
+                refused = true;
+            } finally {
+                pipe.sink().close();
+                pipe.source().close();
+            }
+            System.out.println("Non-blocking channel refused: " + refused);
+
+            // A 1000-char buffer drained between calls, as a consumer with back-pressure would
+            java.nio.CharBuffer window = java.nio.CharBuffer.allocate(1000);
+            BitReader reader = new BitReader(encoded);
+            StringBuilder resumed = new StringBuilder();
+            int calls = 0;
+            while (reader.hasMore()) {
+                HuffmanCodec.decode(huffman.getCodeBook(), reader, window);
+                window.flip();
+                resumed.append(window);
+                window.clear();
+                calls++;
+            }
+            System.out.println("CharBuffer decode resumes across " + calls + " calls: " + resumed.toString().equals(text));
+        } catch (IOException e) {
+            System.out.println("Test FAILED: " + e.getMessage());
+        }
+    }
+
+    public static void testAppendableEncoding() {
+        System.out.println("\n" + "=".repeat(70));
+        System.out.println("TEST 30: APPENDABLE ENCODING WITH DRIFT-TRIGGERED TABLE REFRESH");
+        System.out.println("=".repeat(70));
+
+        try {
+            String log = new String(Corpora.corpus("log", 1 << 21), StandardCharsets.ISO_8859_1);
+            String english = new String(Corpora.corpus("english", 1 << 19), StandardCharsets.ISO_8859_1);
+            String[] lines = log.split("(?<=\n)");
+
+            AppendableHuffman session = new AppendableHuffman();
+            StringBuilder document = new StringBuilder();
+            // Medians, so a GC pause or a busy neighbour does not decide the comparison
+            long[] early = new long[2000];
+            long[] late = new long[2000];
+            for (int i = 0; i < lines.length; i++) {
+                long start = System.nanoTime();
+                session.append(lines[i]);
+                long elapsed = System.nanoTime() - start;
+                if (i >= 1000 && i < 3000) { early[i - 1000] = elapsed; }
+                if (i >= lines.length - 2000) { late[i - (lines.length - 2000)] = elapsed; }
+                document.append(lines[i]);
+            }
+            Arrays.sort(early);
+            Arrays.sort(late);
+            long firstNanos = early[1000];
+            long lastNanos = late[1000];
+            int stationarySegments = session.getSegmentCount();
+            HuffmanCoding whole = new HuffmanCoding();
+            long start = System.nanoTime();
+            long oneShotBits = whole.encodeBits(document.toString()).getBitLength();
+            double reencodeNanos = System.nanoTime() - start;
+            System.out.printf("%d lines appended: %d segments, %d bits vs %d for one encode of the whole (%+.2f%%)%n",
+                lines.length, stationarySegments, session.getEncodedBits(), oneShotBits,
+                100.0 * (session.getEncodedBits() - oneShotBits) / oneShotBits);
+            System.out.printf("Append: median %d ns/line early, %d ns/line at %d KB; re-encoding everything: %.0f ns%n",
+                firstNanos, lastNanos, document.length() >> 10, reencodeNanos);
+            System.out.println("Stationary text keeps few tables: " + (stationarySegments <= 4));
+            System.out.println("Within 2% of one encode of the whole: "
+                + (session.getEncodedBits() < oneShotBits * 1.02));
+            System.out.println("Append cost independent of document size: " + (lastNanos < firstNanos * 3));
+            System.out.println("Append far cheaper than re-encoding: " + (lastNanos * 100 < reencodeNanos));
+
+            int before = session.getDriftRefreshes() + session.getNewSymbolRefreshes();
+            for (String paragraph : english.split("(?<=\n)")) {
+                session.append(paragraph);
+                document.append(paragraph);
+            }
+            System.out.printf("After switching to English text: %d drift refreshes, %d new-symbol refreshes, drift now %.3f%n",
+                session.getDriftRefreshes(), session.getNewSymbolRefreshes(), session.getDrift());
+            System.out.println("Distribution change refreshes the table: "
+                + (session.getDriftRefreshes() + session.getNewSymbolRefreshes() > before));
+            System.out.println("Open segment back under the threshold: "
+                + (session.getDrift() <= AppendableHuffman.DEFAULT_DRIFT_THRESHOLD));
+
+            byte[] packed = session.toByteArray();
+            System.out.println("Round trip: " + AppendableHuffman.decode(packed).equals(document.toString()));
+
+            AppendableHuffman resumed = AppendableHuffman.resume(packed,
+                AppendableHuffman.DEFAULT_DRIFT_THRESHOLD, AppendableHuffman.DEFAULT_MIN_SEGMENT_CHARS);
+            resumed.append("resumed \u20ac line\n");
+            resumed.append(lines[7]);
+            document.append("resumed \u20ac line\n").append(lines[7]);
+            byte[] extended = resumed.toByteArray();
+            System.out.println("Resumed document round trip: " + AppendableHuffman.decode(extended).equals(document.toString()));
+            System.out.println("Resume keeps the earlier segments: "
+                + Arrays.equals(Arrays.copyOfRange(extended, 9, packed.length), Arrays.copyOfRange(packed, 9, packed.length)));
+
+            byte[] corrupt = packed.clone();
+            corrupt[packed.length / 2] ^= 0x10;
+            // A flipped bit either breaks a segment or changes its text; it must never go unnoticed
+            boolean noticed;
+            try {
+                noticed = !AppendableHuffman.decode(corrupt).equals(document.toString());
+            } catch (IOException e) {
+                noticed = true;
+            }
+            System.out.println("Corruption noticed: " + noticed);
+        } catch (IOException e) {
+            System.out.println("Test FAILED: " + e.getMessage());
+        }
+    }
+
+    public static void testVectorKernels() {
+        System.out.println("\n" + "=".repeat(70));
+        System.out.println("TEST 31: CODE EMISSION KERNELS");
+        System.out.println("=".repeat(70));
+
+        try {
+            HuffmanKernels scalar = HuffmanKernels.scalar();
+            HuffmanKernels selected = HuffmanKernels.get();
+            System.out.println("Kernels chosen at startup: " + selected.getName()
+                + (HuffmanKernels.vector() == null ? " (build with vector/build.sh and start with --add-modules jdk.incubator.vector to compare the Vector API kernel)"
+                    : selected == scalar ? " (-Dhuffman.kernels=vector selects the Vector API kernel)" : ""));
+
+            boolean bitsMatch = true;
+            for (String profile : Corpora.PROFILES) {
+                // Odd length and offset, so the vector loops leave a scalar tail
+                byte[] data = Corpora.corpus(profile, (1 << 20) + 13);
+                int offset = 7;
+                int length = data.length - offset - 5;
+                int[] reference = new int[256];
+                for (int i = offset; i < offset + length; i++) { reference[data[i] & 0xFF]++; }
+
+                CodeBook book = HuffmanTree.build(reference).toCodeBook(HuffmanEncoder.MAX_CODE_LENGTH);
+                long[] codes = new long[256];
+                int[] lengths = new int[256];
+                BitWriter expected = new BitWriter();
+                for (int i = 0; i < book.size(); i++) {
+                    codes[book.symbolAt(i)] = book.codeAt(i);
+                    lengths[book.symbolAt(i)] = book.lengthAt(i);
+                }
+                for (int i = offset; i < offset + length; i++) {
+                    book.encodeSymbol(expected, data[i] & 0xFF);
+                }
+                for (HuffmanKernels kernels : HuffmanBenchmark.kernels()) {
+                    BitWriter writer = new BitWriter();
+                    writer.write(5, 3); // start mid-word
+                    kernels.encodeBytes(codes, lengths, data, offset, length, writer);
+                    BitWriter shifted = new BitWriter();
+                    shifted.write(5, 3);
+                    BitReader reader = new BitReader(expected.toBitBuffer());
+                    while (reader.remaining() > 0) {
+                        int bits = (int) Math.min(64, reader.remaining());
+                        shifted.write(reader.read(bits), bits);
+                    }
+                    bitsMatch &= writer.toBitBuffer().equals(shifted.toBitBuffer());
+                }
+            }
+            System.out.println("Encoded bits match per-symbol emission: " + bitsMatch);
+
+            String missing = "";
+            try {
+                long[] codes = new long[256];
+                int[] lengths = new int[256];
+                lengths['a'] = 1;
+                byte[] data = "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaab".getBytes(StandardCharsets.ISO_8859_1);
+                selected.encodeBytes(codes, lengths, data, 0, data.length, new BitWriter());
+            } catch (IllegalArgumentException e) {
+                missing = e.getMessage();
+            }
+            System.out.println("Missing code reported with its index: " + missing.endsWith("at index 48"));
+
+            System.out.println("\nEncode throughput, 16 MB, MB/s (best of 5):");
+            for (String profile : Corpora.PROFILES) {
+                byte[] data = Corpora.corpus(profile, 16 << 20);
+                int[] counts = Histogram.ofBytes(data).counts();
+                CodeBook book = HuffmanTree.build(counts).toCodeBook(HuffmanEncoder.MAX_CODE_LENGTH);
+                long[] codes = new long[256];
+                int[] lengths = new int[256];
+                for (int i = 0; i < book.size(); i++) {
+                    codes[book.symbolAt(i)] = book.codeAt(i);
+                    lengths[book.symbolAt(i)] = book.lengthAt(i);
+                }
+                BitWriter writer = new BitWriter(data.length * 8L);
+                StringBuilder line = new StringBuilder(String.format("  %-9s", profile));
+                for (HuffmanKernels kernels : HuffmanBenchmark.kernels()) {
+                    double encode = 0;
+                    for (int round = 0; round < 5; round++) {
+                        writer.reset();
+                        long start = System.nanoTime();
+                        kernels.encodeBytes(codes, lengths, data, 0, data.length, writer);
+                        encode = Math.max(encode, data.length * 1e3 / (System.nanoTime() - start));
+                    }
+                    line.append(String.format("  %s %6.0f", kernels.getName(), encode));
+                }
+                System.out.println(line);
+            }
+        } catch (IOException e) {
+            System.out.println("Test FAILED: " + e.getMessage());
+        }
+    }
+
+    private static double entropyBitsPerSymbol(byte[] data) {
+        int[] counts = Histogram.ofBytes(data).counts();
+        double bits = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                double p = (double) count / data.length;
+                bits -= p * Math.log(p) / Math.log(2);
+            }
+        }
+        return bits;
+    }
+
+    private static long weightedLength(long[] weights, int[] lengths) {
+        long total = 0;
+        for (int i = 0; i < weights.length; i++) { total += weights[i] * lengths[i]; }
+        return total;
+    }
+
+    /**
+     * Cheapest assignment of lengths 1..cap that satisfies the Kraft inequality
+     */
+    private static long bruteForceLimitedCost(long[] weights, int cap, int index, int[] lengths) {
+        if (index == weights.length) {
+            double kraft = 0;
+            for (int length : lengths) { kraft += Math.pow(2, -length); }
+            return kraft <= 1.0 + 1e-12 ? weightedLength(weights, lengths) : Long.MAX_VALUE;
+        }
+        long best = Long.MAX_VALUE;
+        for (int length = 1; length <= cap; length++) {
+            lengths[index] = length;
+            best = Math.min(best, bruteForceLimitedCost(weights, cap, index + 1, lengths));
+        }
+        return best;
+    }
+
+    /**
+     * Reference cost: PriorityQueue of linked nodes and recursive String codes
+     */
+    private static long priorityQueueCost(Map<Character, Integer> frequencies) {
+        PriorityQueue<HuffmanNode> pq = new PriorityQueue<>();
+        for (Map.Entry<Character, Integer> entry : frequencies.entrySet()) {
+            pq.offer(new HuffmanNode(entry.getKey(), entry.getValue()));
+        }
+        if (pq.size() == 1) {
+            return pq.poll().frequency;
+        }
+        while (pq.size() > 1) {
+            HuffmanNode left = pq.poll();
+            HuffmanNode right = pq.poll();
+            HuffmanNode merged = new HuffmanNode(left.frequency + right.frequency);
+            merged.left = left;
+            merged.right = right;
+            pq.offer(merged);
+        }
+
+        Map<Character, String> codes = new HashMap<>();
+        collectStringCodes(pq.poll(), "", codes);
+        long cost = 0;
+        for (Map.Entry<Character, String> entry : codes.entrySet()) {
+            cost += (long) entry.getValue().length() * frequencies.get(entry.getKey());
+        }
+        return cost;
+    }
+
+    private static void collectStringCodes(HuffmanNode node, String code, Map<Character, String> codes) {
+        if (node.isLeaf()) {
+            codes.put(node.character, code);
+            return;
+        }
+        collectStringCodes(node.left, code + "0", codes);
+        collectStringCodes(node.right, code + "1", codes);
+    }
+
+    /**
+     * Reference counting through a boxed map, as calculateFrequencies used to do
+     */
+    private static Map<Character, Integer> boxedFrequencies(String text) {
+        Map<Character, Integer> frequencies = new HashMap<>();
+        for (char c : text.toCharArray()) {
+            frequencies.put(c, frequencies.getOrDefault(c, 0) + 1);
+        }
+        return frequencies;
+    }
+
+    /**
+     * Correctness oracle: walks the tree one bit at a time
+     */
+    private static String treeWalkDecode(HuffmanNode root, BitBuffer packed) {
+        StringBuilder decoded = new StringBuilder();
+        BitReader reader = new BitReader(packed);
+        HuffmanNode current = root;
+
+        while (reader.hasMore()) {
+            current = reader.readBit() ? current.right : current.left;
+            if (current.isLeaf()) {
+                decoded.append(current.character);
+                current = root;
+            }
+        }
+        return decoded.toString();
+    }
+
     /**
      * Run all tests
      */
@@ -358,6 +2221,30 @@ public class HuffmanTest {
         testActualVsStandardFrequencies();
         testEdgeCases();
         testFileSaveLoad();
+        testPackedBitstream();
+        testTableDecoder();
+        testStreaming();
+        testParallelBlocks();
+        testHistogram();
+        testArrayTree();
+        testLengthLimitedCodes();
+        testAdaptiveHuffman();
+        testInterleavedStreams();
+        testStaticCodeBooks();
+        testSharedCodeBook();
+        testByteBufferCodec();
+        testMappedFileTool();
+        testContextModel();
+        testEntropyCodecs();
+        testBlockTypes();
+        testSymbolAlphabets();
+        testBenchmarkHarness();
+        testPhaseMetrics();
+        testCompressionService();
+        testBatchEncoding();
+        testStreamingDecode();
+        testAppendableEncoding();
+        testVectorKernels();
         
         System.out.println("\n" + "=".repeat(70));
         System.out.println(" ".repeat(20) + "ALL TESTS COMPLETED");
@@ -0,0 +1,204 @@
+import java.util.*;
+
+/**
+ * Huffman tree stored as parallel arrays instead of linked node objects.
+ *
+ * Leaves occupy indices [0, leafCount) sorted by weight; internal nodes are
+ * appended in the order they are merged, which is also non-decreasing weight
+ * order. That makes the classic two-queue construction linear after the sort
+ * and guarantees every child has a smaller index than its parent, so depths
+ * and codes can be filled in with one backwards pass instead of recursion.
+ */
+public final class HuffmanTree {
+    private static final int SYMBOL_BITS = 21;   // enough for any Unicode code point
+
+    final long[] weight;
+    final int[] left;      // -1 for leaves
+    final int[] right;     // -1 for leaves (and the missing child of a one-symbol root)
+    final int[] symbol;    // -1 for internal nodes
+    final int leafCount;
+    final int root;        // -1 for an empty tree
+
+    private HuffmanTree(int leafCount) {
+        int nodes = leafCount == 0 ? 0 : leafCount == 1 ? 2 : 2 * leafCount - 1;
+        this.weight = new long[nodes];
+        this.left = new int[nodes];
+        this.right = new int[nodes];
+        this.symbol = new int[nodes];
+        this.leafCount = leafCount;
+        this.root = nodes - 1;
+    }
+
+    // Tree over a dense histogram: counts[symbol], zero counts are skipped
+    public static HuffmanTree build(int[] counts) {
+        int n = 0;
+        for (int count : counts) {
+            if (count != 0) { n++; }
+        }
+        int[] symbols = new int[n];
+        long[] weights = new long[n];
+        n = 0;
+        for (int s = 0; s < counts.length; s++) {
+            if (counts[s] != 0) {
+                symbols[n] = s;
+                weights[n++] = counts[s];
+            }
+        }
+        return build(symbols, weights);
+    }
+
+    public static HuffmanTree build(Map<Character, Integer> frequencies) {
+        int[] symbols = new int[frequencies.size()];
+        long[] weights = new long[frequencies.size()];
+        int i = 0;
+        for (Map.Entry<Character, Integer> entry : frequencies.entrySet()) {
+            symbols[i] = entry.getKey();
+            weights[i++] = entry.getValue();
+        }
+        return build(symbols, weights);
+    }
+
+    public static HuffmanTree build(int[] symbols, long[] weights) {
+        int n = symbols.length;
+        HuffmanTree tree = new HuffmanTree(n);
+        if (n == 0) { return tree; }
+
+        // Sort leaves by (weight, symbol) with packed primitive keys
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            if (weights[i] < 0 || weights[i] >= 1L << (63 - SYMBOL_BITS) || symbols[i] < 0 || symbols[i] >= 1 << SYMBOL_BITS) {
+                throw new IllegalArgumentException("Cannot build a tree for symbol " + symbols[i] + " with weight " + weights[i]);
+            }
+            keys[i] = weights[i] << SYMBOL_BITS | symbols[i];
+        }
+        Arrays.sort(keys);
+
+        for (int i = 0; i < n; i++) {
+            tree.weight[i] = keys[i] >>> SYMBOL_BITS;
+            tree.symbol[i] = (int) (keys[i] & ((1 << SYMBOL_BITS) - 1));
+            tree.left[i] = -1;
+            tree.right[i] = -1;
+        }
+
+        if (n == 1) {
+            tree.weight[1] = tree.weight[0];
+            tree.left[1] = 0;
+            tree.right[1] = -1;
+            tree.symbol[1] = -1;
+            return tree;
+        }
+
+        // Two queues: unmerged leaves [nextLeaf, n) and merged nodes [nextInternal, created)
+        int nextLeaf = 0;
+        int nextInternal = n;
+        for (int created = n; created < 2 * n - 1; created++) {
+            int a = (nextInternal == created || (nextLeaf < n && tree.weight[nextLeaf] <= tree.weight[nextInternal]))
+                    ? nextLeaf++ : nextInternal++;
+            int b = (nextInternal == created || (nextLeaf < n && tree.weight[nextLeaf] <= tree.weight[nextInternal]))
+                    ? nextLeaf++ : nextInternal++;
+            tree.left[created] = a;
+            tree.right[created] = b;
+            tree.symbol[created] = -1;
+            tree.weight[created] = tree.weight[a] + tree.weight[b];
+        }
+        return tree;
+    }
+
+    public boolean isEmpty() { return root < 0; }
+
+    public int getLeafCount() { return leafCount; }
+
+    public int getNodeCount() { return weight.length; }
+
+    public long getTotalWeight() { return root < 0 ? 0 : weight[root]; }
+
+    public boolean isLeaf(int node) { return left[node] < 0; }
+
+    public int getLeft(int node) { return left[node]; }
+
+    public int getRight(int node) { return right[node]; }
+
+    public int getSymbol(int node) { return symbol[node]; }
+
+    public int getRoot() { return root; }
+
+    // Depth of every node, filled parent-first by walking indices downward
+    private int[] depths() {
+        int[] depth = new int[weight.length];
+        for (int node = root; node >= leafCount; node--) {
+            int d = depth[node] + 1;
+            if (left[node] >= 0) { depth[left[node]] = d; }
+            if (right[node] >= 0) { depth[right[node]] = d; }
+        }
+        return depth;
+    }
+
+    // Code length of leaf i (parallel to the leaf order), at least 1
+    public int[] leafCodeLengths() {
+        int[] depth = depths();
+        int[] lengths = new int[leafCount];
+        for (int i = 0; i < leafCount; i++) {
+            lengths[i] = Math.max(1, depth[i]);
+        }
+        return lengths;
+    }
+
+    // Codes read off the tree shape (left = 0, right = 1), parallel to the leaf order
+    public long[] leafCodes() {
+        long[] code = new long[weight.length];
+        for (int node = root; node >= leafCount; node--) {
+            if (left[node] >= 0) { code[left[node]] = code[node] << 1; }
+            if (right[node] >= 0) { code[right[node]] = code[node] << 1 | 1; }
+        }
+        return Arrays.copyOf(code, leafCount);
+    }
+
+    public int[] leafSymbols() {
+        return Arrays.copyOf(symbol, leafCount);
+    }
+
+    public long[] leafWeights() {
+        return Arrays.copyOf(weight, leafCount);
+    }
+
+    public CodeBook toCodeBook() {
+        return CodeBook.fromLengths(leafSymbols(), leafCodeLengths());
+    }
+
+    // Same, but no code longer than maxLength bits (0 means no limit)
+    public CodeBook toCodeBook(int maxLength) {
+        int[] lengths = leafCodeLengths();
+        int longest = 0;
+        for (int length : lengths) { longest = Math.max(longest, length); }
+        if (maxLength <= 0 || longest <= maxLength) {
+            return CodeBook.fromLengths(leafSymbols(), lengths);
+        }
+        return CodeBook.fromLengths(leafSymbols(), PackageMerge.codeLengths(leafWeights(), maxLength));
+    }
+
+    // Total encoded size in bits: sum of weight * code length over the leaves
+    public long cost() {
+        int[] lengths = leafCodeLengths();
+        long bits = 0;
+        for (int i = 0; i < leafCount; i++) {
+            bits += weight[i] * lengths[i];
+        }
+        return bits;
+    }
+
+    // Linked-node copy for callers of the HuffmanNode API
+    public HuffmanNode toNode() {
+        if (root < 0) { return null; }
+        HuffmanNode[] nodes = new HuffmanNode[weight.length];
+        for (int i = 0; i < weight.length; i++) {
+            if (isLeaf(i)) {
+                nodes[i] = HuffmanNode.leaf(symbol[i], (int) weight[i]);
+            } else {
+                nodes[i] = new HuffmanNode((int) weight[i]);
+                nodes[i].left = nodes[left[i]];
+                nodes[i].right = right[i] >= 0 ? nodes[right[i]] : null;
+            }
+        }
+        return nodes[root];
+    }
+}
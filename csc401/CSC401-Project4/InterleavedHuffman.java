@@ -0,0 +1,240 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Interleaved multi-stream Huffman blocks. Symbol i of a block goes to
+ * bitstream i % streams, and all streams share one code table. Each stream
+ * can be decoded on its own, so a single thread can step through four
+ * streams in lockstep: the four table lookups per round do not depend on each
+ * other and the CPU can overlap them.
+ *
+ * Codes are capped at the decoder's root table width, so every symbol is a
+ * single table lookup with no secondary tables. The decode loop then keeps
+ * each stream's next 64 bits in a local, refills all four together and looks
+ * symbols up in the root table directly. Alphabets too large for that cap fall
+ * back to uncapped codes and the decoder's secondary tables.
+ *
+ * The table is built per call and nothing else is kept, so one instance can be
+ * shared between threads.
+ *
+ * Block layout:
+ *   int length, byte streams, short symbolCount, (char symbol, byte length)*,
+ *   int streamBytes[streams], stream payloads
+ */
+public class InterleavedHuffman {
+    public static final int DEFAULT_STREAMS = 4;
+    // The symbol count is written as a short
+    static final int MAX_SYMBOLS = 0xFFFF;
+
+    private final int streams;
+
+    public InterleavedHuffman() {
+        this(DEFAULT_STREAMS);
+    }
+
+    public InterleavedHuffman(int streams) {
+        if (streams < 1 || streams > 16) {
+            throw new IllegalArgumentException("Stream count must be between 1 and 16: " + streams);
+        }
+        this.streams = streams;
+    }
+
+    public byte[] encode(String text) {
+        Histogram counts = Histogram.ofChars(text);
+        if (counts.distinctSymbols() > MAX_SYMBOLS) {
+            throw new IllegalArgumentException("Interleaved blocks hold at most " + MAX_SYMBOLS
+                    + " distinct chars, text has " + counts.distinctSymbols());
+        }
+        int cap = counts.distinctSymbols() <= 1 << HuffmanTableDecoder.ROOT_BITS ? HuffmanTableDecoder.ROOT_BITS : 0;
+        CodeBook book = HuffmanTree.build(counts.counts()).toCodeBook(cap);
+
+        BitWriter[] writers = new BitWriter[streams];
+        for (int k = 0; k < streams; k++) {
+            writers[k] = new BitWriter(text.length() * 8L / streams + 64);
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            writers[i % streams].write(book.codeOf(c), book.lengthOf(c));
+        }
+
+        BitBuffer[] payloads = new BitBuffer[streams];
+        int payloadBytes = 0;
+        for (int k = 0; k < streams; k++) {
+            payloads[k] = writers[k].toBitBuffer();
+            payloadBytes += payloads[k].getByteLength();
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(4 + 1 + 2 + book.size() * 3 + 4 * streams + payloadBytes);
+        out.putInt(text.length());
+        out.put((byte) streams);
+        out.putShort((short) book.size());
+        for (int i = 0; i < book.size(); i++) {
+            out.putChar((char) book.symbolAt(i));
+            out.put((byte) book.lengthAt(i));
+        }
+        for (BitBuffer payload : payloads) {
+            out.putInt(payload.getByteLength());
+        }
+        for (BitBuffer payload : payloads) {
+            out.put(payload.toByteArray());
+        }
+        return out.array();
+    }
+
+    public String decode(byte[] block) throws IOException {
+        if (block.length < 4 + 1 + 2) {
+            throw new IOException("Truncated interleaved block");
+        }
+        ByteBuffer in = ByteBuffer.wrap(block);
+        int length = in.getInt();
+        int blockStreams = in.get();
+        int symbolCount = in.getShort() & 0xFFFF;
+        if (length < 0 || blockStreams < 1 || blockStreams > 16) {
+            throw new IOException("Corrupt interleaved block header");
+        }
+        if (length == 0) { return ""; }
+        if (symbolCount == 0 || 3L * symbolCount + 4L * blockStreams > in.remaining()) {
+            throw new IOException("Corrupt interleaved block header");
+        }
+
+        int[] symbols = new int[symbolCount];
+        int[] lengths = new int[symbolCount];
+        for (int i = 0; i < symbolCount; i++) {
+            symbols[i] = in.getChar();
+            lengths[i] = in.get();
+        }
+        CodeBook book;
+        try {
+            book = CodeBook.fromLengths(symbols, lengths);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt interleaved block table: " + e.getMessage());
+        }
+
+        // starts[k] is where stream k's payload begins; starts[blockStreams] is where the last one ends
+        int[] starts = new int[blockStreams + 1];
+        starts[0] = in.position() + 4 * blockStreams;
+        for (int k = 0; k < blockStreams; k++) {
+            int size = in.getInt();
+            if (size < 0 || size > block.length - starts[k]) {
+                throw new IOException("Corrupt interleaved block: stream " + k + " of " + size + " bytes");
+            }
+            starts[k + 1] = starts[k] + size;
+        }
+        if (length > 8L * (starts[blockStreams] - starts[0])) {
+            throw new IOException("Corrupt interleaved block: " + length + " symbols in "
+                    + (starts[blockStreams] - starts[0]) + " bytes");
+        }
+
+        HuffmanTableDecoder decoder = book.decoder();
+        char[] out = new char[length];
+        long[] consumed = book.getMaxLength() <= decoder.getRootBits()
+                ? decodeRootOnly(block, starts, decoder, out)
+                : decodeWithSubtables(block, starts, decoder, out);
+        for (int k = 0; k < blockStreams; k++) {
+            if (consumed[k] > 8L * (starts[k + 1] - starts[k])) {
+                throw new IOException("Corrupt interleaved block: stream " + k + " overruns its payload");
+            }
+        }
+        return new String(out);
+    }
+
+    // Every code fits the root table. Each stream keeps its next bits left-aligned in a 64-bit
+    // window, refilled 8 bytes at a time; returns the bits each stream consumed.
+    private static long[] decodeRootOnly(byte[] block, int[] starts, HuffmanTableDecoder decoder, char[] out)
+            throws IOException {
+        int streams = starts.length - 1;
+        int length = out.length;
+        int[] table = decoder.table();
+        int shift = 64 - decoder.getRootBits();
+        // A window runs up to 7 bytes ahead of what it has consumed and a refill reads 8 more,
+        // so 16 bytes of zero padding keep refills at the end of the last payload inside the array
+        ByteBuffer data = ByteBuffer.wrap(Arrays.copyOf(block, starts[streams] + 16));
+        long[] window = new long[streams];
+        int[] bits = new int[streams];
+        int[] next = Arrays.copyOf(starts, streams);
+
+        int i = 0;
+        try {
+            if (streams == 4) {
+                long w0 = 0, w1 = 0, w2 = 0, w3 = 0;
+                int b0 = 0, b1 = 0, b2 = 0, b3 = 0;
+                int n0 = next[0], n1 = next[1], n2 = next[2], n3 = next[3];
+                // A refill leaves at least 56 bits, enough for four symbols of up to 11 bits per stream
+                for (int end = length - 15; i < end; i += 16) {
+                    w0 |= data.getLong(n0) >>> b0; n0 += (63 - b0) >>> 3; b0 |= 56;
+                    w1 |= data.getLong(n1) >>> b1; n1 += (63 - b1) >>> 3; b1 |= 56;
+                    w2 |= data.getLong(n2) >>> b2; n2 += (63 - b2) >>> 3; b2 |= 56;
+                    w3 |= data.getLong(n3) >>> b3; n3 += (63 - b3) >>> 3; b3 |= 56;
+                    for (int r = i; r < i + 16; r += 4) {
+                        int e0 = table[(int) (w0 >>> shift)];
+                        int e1 = table[(int) (w1 >>> shift)];
+                        int e2 = table[(int) (w2 >>> shift)];
+                        int e3 = table[(int) (w3 >>> shift)];
+                        if (e0 == 0 || e1 == 0 || e2 == 0 || e3 == 0) { throw invalidCode(r); }
+                        w0 <<= e0 & 0xFF; b0 -= e0 & 0xFF;
+                        w1 <<= e1 & 0xFF; b1 -= e1 & 0xFF;
+                        w2 <<= e2 & 0xFF; b2 -= e2 & 0xFF;
+                        w3 <<= e3 & 0xFF; b3 -= e3 & 0xFF;
+                        out[r] = (char) (e0 >>> 8);
+                        out[r + 1] = (char) (e1 >>> 8);
+                        out[r + 2] = (char) (e2 >>> 8);
+                        out[r + 3] = (char) (e3 >>> 8);
+                    }
+                }
+                window[0] = w0; window[1] = w1; window[2] = w2; window[3] = w3;
+                bits[0] = b0; bits[1] = b1; bits[2] = b2; bits[3] = b3;
+                next[0] = n0; next[1] = n1; next[2] = n2; next[3] = n3;
+            }
+            for (; i < length; i++) {
+                int k = i % streams;
+                window[k] |= data.getLong(next[k]) >>> bits[k];
+                next[k] += (63 - bits[k]) >>> 3;
+                bits[k] |= 56;
+                int entry = table[(int) (window[k] >>> shift)];
+                if (entry == 0) { throw invalidCode(i); }
+                window[k] <<= entry & 0xFF;
+                bits[k] -= entry & 0xFF;
+                out[i] = (char) (entry >>> 8);
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Corrupt interleaved block: a stream runs past the end of the block");
+        }
+
+        long[] consumed = new long[streams];
+        for (int k = 0; k < streams; k++) {
+            consumed[k] = 8L * (next[k] - starts[k]) - bits[k];
+        }
+        return consumed;
+    }
+
+    // Codes longer than the root table: the decoder's own lookup, one BitReader per stream
+    private static long[] decodeWithSubtables(byte[] block, int[] starts, HuffmanTableDecoder decoder, char[] out)
+            throws IOException {
+        int streams = starts.length - 1;
+        BitReader[] readers = new BitReader[streams];
+        for (int k = 0; k < streams; k++) {
+            byte[] payload = Arrays.copyOfRange(block, starts[k], starts[k + 1]);
+            readers[k] = new BitReader(BitBuffer.fromByteArray(payload, payload.length * 8L));
+        }
+        int i = 0;
+        try {
+            for (; i < out.length; i++) {
+                out[i] = (char) decoder.decodeSymbol(readers[i % streams]);
+            }
+        } catch (IllegalStateException e) {
+            throw invalidCode(i);
+        }
+        long[] consumed = new long[streams];
+        for (int k = 0; k < streams; k++) {
+            consumed[k] = readers[k].position();
+        }
+        return consumed;
+    }
+
+    private static IOException invalidCode(int index) {
+        return new IOException("Corrupt interleaved block: invalid code for symbol " + index);
+    }
+
+    public int getStreams() { return streams; }
+}
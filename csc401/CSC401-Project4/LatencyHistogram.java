@@ -0,0 +1,79 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with log-linear buckets: every power of two is
+ * split into 16 equal buckets, so any recorded value is reported within 1/16
+ * (6.25%) of itself, from nanoseconds up to hours, in a fixed 8 KB of counters.
+ * Any number of threads may record at once; percentiles read a snapshot that
+ * is consistent enough for monitoring.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(64 << SUB_BITS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets.incrementAndGet(bucket(value));
+        count.incrementAndGet();
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    // Values below 16 get a bucket each; above that, 16 buckets per power of two
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) { return (int) value; }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1 << SUB_BITS) + sub;
+    }
+
+    // Largest value that falls in the bucket
+    static long highestValue(int bucket) {
+        if (bucket < SUB_BUCKETS) { return bucket; }
+        int exponent = (bucket >>> SUB_BITS) + SUB_BITS - 1;
+        int sub = bucket & (SUB_BUCKETS - 1);
+        long lowest = (long) (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+        return lowest + (1L << (exponent - SUB_BITS)) - 1;
+    }
+
+    // Value at or below which `percentile` percent of the recordings fall, in nanoseconds
+    public long getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+        }
+        long total = count.get();
+        if (total == 0) { return 0; }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int b = 0; b < buckets.length(); b++) {
+            seen += buckets.get(b);
+            if (seen >= target) {
+                return Math.min(highestValue(b), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public long getCount() { return count.get(); }
+
+    public long getMax() { return max.get(); }
+
+    public void reset() {
+        for (int b = 0; b < buckets.length(); b++) {
+            buckets.set(b, 0);
+        }
+        count.set(0);
+        max.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus",
+                getCount(), getPercentile(50) / 1e3, getPercentile(90) / 1e3, getPercentile(99) / 1e3,
+                getPercentile(99.9) / 1e3, getMax() / 1e3);
+    }
+}
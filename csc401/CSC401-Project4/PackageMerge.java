@@ -0,0 +1,85 @@
+import java.util.*;
+
+/**
+ * Optimal length-limited prefix code lengths (Larmore and Hirschberg's
+ * package-merge). Each of the maxLength levels holds the leaves merged with
+ * "packages" formed by pairing adjacent items of the level below; the first
+ * 2n - 2 items of the top level determine every code length.
+ *
+ * Only one flag per item (leaf or package) is kept per level, so memory is
+ * O(n * maxLength) bits rather than a full item list per package.
+ */
+public final class PackageMerge {
+
+    private PackageMerge() { }
+
+    // Code lengths for `weights` (any order) with no length above maxLength
+    public static int[] codeLengths(long[] weights, int maxLength) {
+        int n = weights.length;
+        int[] lengths = new int[n];
+        if (n == 0) { return lengths; }
+        if (n == 1) {
+            lengths[0] = 1;
+            return lengths;
+        }
+        if (maxLength < 1 || maxLength > 63 || (1L << maxLength) < n) {
+            throw new IllegalArgumentException(n + " symbols cannot fit in codes of at most " + maxLength + " bits");
+        }
+
+        // Leaves in ascending weight order
+        Integer[] byWeight = new Integer[n];
+        for (int i = 0; i < n; i++) { byWeight[i] = i; }
+        Arrays.sort(byWeight, (a, b) -> Long.compare(weights[a], weights[b]));
+        long[] leaves = new long[n];
+        for (int i = 0; i < n; i++) { leaves[i] = weights[byWeight[i]]; }
+
+        // Level maxLength - 1 (deepest) holds only leaves; each level above merges leaves with packages
+        boolean[][] isPackage = new boolean[maxLength][];
+        int[] sizes = new int[maxLength];
+        isPackage[maxLength - 1] = new boolean[n];
+        sizes[maxLength - 1] = n;
+        long[] below = leaves;
+        int belowSize = n;
+
+        for (int level = maxLength - 2; level >= 0; level--) {
+            int packages = belowSize / 2;
+            int size = n + packages;
+            long[] items = new long[size];
+            boolean[] flags = new boolean[size];
+
+            int leaf = 0, pkg = 0;
+            for (int k = 0; k < size; k++) {
+                long packageWeight = pkg < packages ? below[2 * pkg] + below[2 * pkg + 1] : Long.MAX_VALUE;
+                if (leaf < n && leaves[leaf] <= packageWeight) {
+                    items[k] = leaves[leaf++];
+                } else {
+                    items[k] = packageWeight;
+                    flags[k] = true;
+                    pkg++;
+                }
+            }
+
+            isPackage[level] = flags;
+            sizes[level] = size;
+            below = items;
+            belowSize = size;
+        }
+
+        // Walk down from the top: leaves taken at a level gain one bit, packages expand into two items below
+        int take = 2 * n - 2;
+        for (int level = 0; level < maxLength && take > 0; level++) {
+            if (take > sizes[level]) {
+                throw new IllegalStateException("Package-merge ran out of items at level " + level);
+            }
+            int leavesTaken = 0, packagesTaken = 0;
+            for (int k = 0; k < take; k++) {
+                if (isPackage[level][k]) packagesTaken++; else leavesTaken++;
+            }
+            for (int i = 0; i < leavesTaken; i++) {
+                lengths[byWeight[i]]++;
+            }
+            take = 2 * packagesTaken;
+        }
+        return lengths;
+    }
+}
@@ -0,0 +1,192 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Block-parallel Huffman compression. The input is split into fixed-size
+ * blocks, each with its own frequencies and code table, encoded concurrently
+ * on a ForkJoinPool. The container starts with an offset index, so any single
+ * block can be decoded without reading the others.
+ *
+ * Container layout:
+ *   int magic, byte version, int blockSize, int blockCount, long originalLength
+ *   long offset[blockCount + 1]     relative to the start of the block data
+ *   block data                      HuffmanStream chunks, no end marker
+ */
+public class ParallelHuffman {
+    static final int CONTAINER_MAGIC = 0x48554650; // "HUFP"
+    static final byte CONTAINER_VERSION = 2;
+    static final int HEADER_BYTES = 4 + 1 + 4 + 4 + 8;
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+    private final int blockSize;
+    private final ForkJoinPool pool;
+
+    public ParallelHuffman() {
+        this(DEFAULT_BLOCK_SIZE, ForkJoinPool.commonPool());
+    }
+
+    public ParallelHuffman(int blockSize, ForkJoinPool pool) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        }
+        this.blockSize = blockSize;
+        this.pool = pool;
+    }
+
+    public byte[] compress(byte[] input) throws IOException {
+        int blockCount = (int) ((input.length + (long) blockSize - 1) / blockSize);
+
+        List<Callable<byte[]>> tasks = new ArrayList<>(blockCount);
+        for (int k = 0; k < blockCount; k++) {
+            int offset = k * blockSize;
+            int length = Math.min(blockSize, input.length - offset);
+            tasks.add(() -> encodeBlock(input, offset, length));
+        }
+        List<byte[]> blocks = collect(pool.invokeAll(tasks));
+
+        long dataBytes = 0;
+        for (byte[] block : blocks) { dataBytes += block.length; }
+        long total = HEADER_BYTES + 8L * (blockCount + 1) + dataBytes;
+        if (total > Integer.MAX_VALUE - 8) {
+            throw new IOException("Compressed container exceeds 2 GB; use HuffmanStream instead");
+        }
+
+        ByteBuffer out = ByteBuffer.allocate((int) total);
+        out.putInt(CONTAINER_MAGIC);
+        out.put(CONTAINER_VERSION);
+        out.putInt(blockSize);
+        out.putInt(blockCount);
+        out.putLong(input.length);
+
+        long offset = 0;
+        for (byte[] block : blocks) {
+            out.putLong(offset);
+            offset += block.length;
+        }
+        out.putLong(offset);
+
+        for (byte[] block : blocks) {
+            out.put(block);
+        }
+        return out.array();
+    }
+
+    public byte[] decompress(byte[] container) throws IOException {
+        Header header = readHeader(container);
+        long originalLength = header.originalLength;
+        if (originalLength > Integer.MAX_VALUE - 8) {
+            throw new IOException("Original data exceeds 2 GB; decode block by block instead");
+        }
+        byte[] output = new byte[(int) originalLength];
+
+        List<Callable<byte[]>> tasks = new ArrayList<>(header.blockCount);
+        for (int k = 0; k < header.blockCount; k++) {
+            int block = k;
+            tasks.add(() -> {
+                decodeBlock(container, header, block, output, block * header.blockSize);
+                return null;
+            });
+        }
+        collect(pool.invokeAll(tasks));
+        return output;
+    }
+
+    // Decodes only block k; the other blocks are never touched
+    public byte[] decompressBlock(byte[] container, int k) throws IOException {
+        Header header = readHeader(container);
+        if (k < 0 || k >= header.blockCount) {
+            throw new IndexOutOfBoundsException("Block " + k + " of " + header.blockCount);
+        }
+        long start = (long) k * header.blockSize;
+        byte[] output = new byte[(int) Math.min(header.blockSize, header.originalLength - start)];
+        decodeBlock(container, header, k, output, 0);
+        return output;
+    }
+
+    public int getBlockCount(byte[] container) throws IOException {
+        return readHeader(container).blockCount;
+    }
+
+    public int getBlockSize() { return blockSize; }
+
+    private static byte[] encodeBlock(byte[] input, int offset, int length) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(length / 2 + 1024);
+        DataOutputStream out = new DataOutputStream(bytes);
+        HuffmanStream.writeChunk(out, input, offset, length, new int[256], new HuffmanCoding(), new BitWriter((long) length * 8), null);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void decodeBlock(byte[] container, Header header, int k, byte[] dst, int dstOffset) throws IOException {
+        long start = header.dataStart + header.offsets[k];
+        long end = header.dataStart + header.offsets[k + 1];
+        if (start > end || end > container.length) {
+            throw new IOException("Corrupt index entry for block " + k);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(container, (int) start, (int) (end - start)));
+        int expected = (int) Math.min(header.blockSize, header.originalLength - (long) k * header.blockSize);
+        int length = HuffmanStream.readChunk(in, dst, dstOffset, expected);
+        if (length != expected) {
+            throw new IOException("Block " + k + " decoded to " + length + " bytes, expected " + expected);
+        }
+    }
+
+    private static Header readHeader(byte[] container) throws IOException {
+        if (container.length < HEADER_BYTES) {
+            throw new IOException("Not a parallel Huffman container");
+        }
+        ByteBuffer in = ByteBuffer.wrap(container);
+        if (in.getInt() != CONTAINER_MAGIC) {
+            throw new IOException("Not a parallel Huffman container");
+        }
+        byte version = in.get();
+        if (version != CONTAINER_VERSION) {
+            throw new IOException("Unsupported container version " + version);
+        }
+
+        Header header = new Header();
+        header.blockSize = in.getInt();
+        header.blockCount = in.getInt();
+        header.originalLength = in.getLong();
+        if (header.blockSize <= 0 || header.blockCount < 0
+                || (long) header.blockCount * 8 + 8 > in.remaining()
+                || (header.originalLength + header.blockSize - 1) / header.blockSize != header.blockCount) {
+            throw new IOException("Corrupt container header");
+        }
+
+        header.offsets = new long[header.blockCount + 1];
+        for (int i = 0; i <= header.blockCount; i++) {
+            header.offsets[i] = in.getLong();
+        }
+        header.dataStart = in.position();
+        return header;
+    }
+
+    private static <T> List<T> collect(List<Future<T>> futures) throws IOException {
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for blocks");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Block task failed", e.getCause());
+        }
+        return results;
+    }
+
+    private static class Header {
+        int blockSize;
+        int blockCount;
+        long originalLength;
+        long[] offsets;
+        int dataStart;
+    }
+}
@@ -0,0 +1,230 @@
+import java.io.*;
+
+/**
+ * Table-based asymmetric numeral systems (tANS), the scheme behind FSE.
+ * Symbol counts are normalized to a table of 2^tableLog states; each symbol
+ * owns as many states as its normalized count, spread across the table. A
+ * symbol then costs log2(tableSize / count) bits on average, with fractional
+ * bits carried in the state, so skewed alphabets get close to the entropy
+ * where Huffman pays up to one whole bit per symbol. Decoding is one table
+ * lookup plus a bit read per symbol, like the Huffman table decoder.
+ *
+ * ANS works last in, first out: the encoder walks the input backwards and the
+ * bits are then written in forward order, so the decoder reads them in
+ * stream order. The stream starts with the final encoder state, and decoding
+ * must end in the encoder's starting state, which catches most corruption.
+ *
+ * Table layout: byte tableLog, short symbolCount, (byte symbol, short normalizedCount)*
+ */
+public class TansCodec implements EntropyCodec<TansCodec.Table> {
+    public static final int DEFAULT_TABLE_LOG = 11;
+    public static final int MIN_TABLE_LOG = 5;
+    public static final int MAX_TABLE_LOG = 15;
+
+    private final int maxTableLog;
+
+    public TansCodec() {
+        this(DEFAULT_TABLE_LOG);
+    }
+
+    public TansCodec(int maxTableLog) {
+        if (maxTableLog < MIN_TABLE_LOG || maxTableLog > MAX_TABLE_LOG) {
+            throw new IllegalArgumentException("Table log must be between " + MIN_TABLE_LOG + " and " + MAX_TABLE_LOG + ": " + maxTableLog);
+        }
+        this.maxTableLog = maxTableLog;
+    }
+
+    @Override
+    public String getName() { return "tans"; }
+
+    @Override
+    public Table buildTable(Histogram counts) {
+        long total = counts.total();
+        int distinct = counts.distinctSymbols();
+        // Small inputs get small tables; the table must still give every symbol a state
+        int tableLog = Math.min(maxTableLog, Math.max(MIN_TABLE_LOG, 64 - Long.numberOfLeadingZeros(total)));
+        while (1 << tableLog < distinct) { tableLog++; }
+        return new Table(tableLog, normalize(counts.counts(), total, 1 << tableLog));
+    }
+
+    // Scales counts to sum to tableSize, keeping every present symbol at least 1
+    static int[] normalize(int[] counts, long total, int tableSize) {
+        int[] norm = new int[256];
+        int sum = 0;
+        int largest = -1;
+        for (int s = 0; s < Math.min(counts.length, 256); s++) {
+            if (counts[s] == 0) { continue; }
+            norm[s] = (int) Math.max(1, (counts[s] * (long) tableSize + total / 2) / total);
+            sum += norm[s];
+            if (largest < 0 || counts[s] > counts[largest]) { largest = s; }
+        }
+        if (sum < tableSize) {
+            norm[largest] += tableSize - sum;
+        }
+        while (sum > tableSize) {
+            int biggest = largest;
+            for (int s = 0; s < 256; s++) {
+                if (norm[s] > norm[biggest]) { biggest = s; }
+            }
+            int take = Math.min(sum - tableSize, norm[biggest] - 1);
+            take = Math.max(1, Math.min(take, norm[biggest] / 4 + 1));
+            norm[biggest] -= take;
+            sum -= take;
+        }
+        return norm;
+    }
+
+    @Override
+    public void writeTable(Table table, DataOutput out) throws IOException {
+        out.writeByte(table.tableLog);
+        int distinct = 0;
+        for (int count : table.norm) {
+            if (count != 0) { distinct++; }
+        }
+        out.writeShort(distinct);
+        for (int s = 0; s < 256; s++) {
+            if (table.norm[s] != 0) {
+                out.writeByte(s);
+                out.writeShort(table.norm[s]);
+            }
+        }
+    }
+
+    @Override
+    public Table readTable(DataInput in) throws IOException {
+        int tableLog = in.readUnsignedByte();
+        if (tableLog < MIN_TABLE_LOG || tableLog > MAX_TABLE_LOG) {
+            throw new IOException("Corrupt tANS table log " + tableLog);
+        }
+        int distinct = in.readUnsignedShort();
+        if (distinct == 0 || distinct > 256) {
+            throw new IOException("Corrupt tANS table: " + distinct + " symbols");
+        }
+        int[] norm = new int[256];
+        long sum = 0;
+        for (int i = 0; i < distinct; i++) {
+            int s = in.readUnsignedByte();
+            int count = in.readUnsignedShort();
+            if (count == 0 || norm[s] != 0) {
+                throw new IOException("Corrupt tANS table entry for symbol " + s);
+            }
+            norm[s] = count;
+            sum += count;
+        }
+        if (sum != 1L << tableLog) {
+            throw new IOException("Corrupt tANS table: counts sum to " + sum);
+        }
+        return new Table(tableLog, norm);
+    }
+
+    @Override
+    public BitBuffer encode(Table table, byte[] data) {
+        int n = data.length;
+        int[] chunks = new int[n];
+        byte[] chunkBits = new byte[n];
+
+        int state = table.size;
+        for (int i = n - 1; i >= 0; i--) {
+            int s = data[i] & 0xFF;
+            int count = table.norm[s];
+            int bits = table.maxBits[s];
+            if ((state >>> bits) < count) { bits--; }
+            chunks[i] = state & ((1 << bits) - 1);
+            chunkBits[i] = (byte) bits;
+            state = table.nextState[table.start[s] + (state >>> bits) - count];
+        }
+
+        BitWriter writer = new BitWriter(table.tableLog + n * 8L);
+        writer.write(state - table.size, table.tableLog);
+        for (int i = 0; i < n; i++) {
+            writer.write(chunks[i], chunkBits[i]);
+        }
+        return writer.toBitBuffer();
+    }
+
+    @Override
+    public byte[] decode(Table table, BitBuffer encoded, int length) throws IOException {
+        BitReader reader = new BitReader(encoded);
+        byte[] out = new byte[length];
+        int x = (int) reader.read(table.tableLog);
+        for (int i = 0; i < length; i++) {
+            out[i] = table.symbol[x];
+            int bits = table.bits[x];
+            x = table.base[x] + (bits == 0 ? 0 : (int) reader.read(bits));
+        }
+        if (x != 0 || reader.position() > encoded.getBitLength()) {
+            throw new IOException("Corrupt or truncated tANS payload");
+        }
+        return out;
+    }
+
+
+    /**
+     * Normalized counts plus the encode and decode tables derived from them.
+     * Immutable, so one table can be shared by several threads.
+     */
+    public static final class Table {
+        final int tableLog;
+        final int size;
+        final int[] norm;          // normalized count by symbol, sums to size
+
+        // Decoding, indexed by state - size
+        final byte[] symbol;
+        final byte[] bits;
+        final int[] base;          // next state - size, before adding the bits read
+
+        // Encoding: states owned by a symbol, in ascending order, from start[symbol]
+        final int[] start;
+        final int[] nextState;
+        final int[] maxBits;
+
+        Table(int tableLog, int[] norm) {
+            this.tableLog = tableLog;
+            this.size = 1 << tableLog;
+            this.norm = norm;
+
+            // Spread symbols over the table with an odd step, which visits every slot once
+            int mask = size - 1;
+            int step = (size >>> 1) + (size >>> 3) + 3;
+            int[] spread = new int[size];
+            int position = 0;
+            for (int s = 0; s < 256; s++) {
+                for (int k = 0; k < norm[s]; k++) {
+                    spread[position] = s;
+                    position = (position + step) & mask;
+                }
+            }
+
+            this.start = new int[256];
+            this.maxBits = new int[256];
+            int cumulative = 0;
+            for (int s = 0; s < 256; s++) {
+                start[s] = cumulative;
+                cumulative += norm[s];
+                if (norm[s] != 0) {
+                    maxBits[s] = tableLog - (31 - Integer.numberOfLeadingZeros(norm[s]));
+                }
+            }
+
+            this.symbol = new byte[size];
+            this.bits = new byte[size];
+            this.base = new int[size];
+            this.nextState = new int[size];
+            int[] rank = new int[256];
+            for (int x = 0; x < size; x++) {
+                int s = spread[x];
+                int r = rank[s]++;
+                int subState = norm[s] + r;                 // in [norm, 2 * norm)
+                int shift = tableLog - (31 - Integer.numberOfLeadingZeros(subState));
+                symbol[x] = (byte) s;
+                bits[x] = (byte) shift;
+                base[x] = (subState << shift) - size;
+                nextState[start[s] + r] = size + x;
+            }
+        }
+
+        public int getTableLog() { return tableLog; }
+
+        public int getNormalizedCount(int symbol) { return norm[symbol]; }
+    }
+}
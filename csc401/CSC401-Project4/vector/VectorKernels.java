@@ -0,0 +1,76 @@
+import jdk.incubator.vector.*;
+
+/**
+ * HuffmanKernels on the incubating Vector API, loaded by HuffmanKernels only
+ * when jdk.incubator.vector is present and used by the codec only with
+ * -Dhuffman.kernels=vector. It lives apart from the other sources
+ * so a plain `javac *.java` never needs the module. Build and run with
+ *
+ *   sh vector/build.sh out
+ *   java --add-modules jdk.incubator.vector -cp out ...
+ *
+ * A vector of bytes is widened to int lanes, and their code lengths are
+ * gathered with one indexed load. One compare finds missing codes and
+ * one reduction gives the total bits. When the whole batch fits in the
+ * pending 64-bit word, its codes are packed with no per-symbol checks.
+ *
+ * Byte counting stays scalar: scattered increments have no vector form, and
+ * a run-probing vector histogram measured about 10% slower on log, English
+ * and random input.
+ */
+final class VectorKernels extends HuffmanKernels {
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_256;
+    private static final VectorSpecies<Byte> BYTES =
+            VectorSpecies.of(byte.class, VectorShape.forBitSize(INTS.length() * Byte.SIZE));
+
+    private final HuffmanKernels scalar = HuffmanKernels.scalar();
+
+    // Lane values for the indexed gather; one instance serves every thread, so the array is per thread
+    private final ThreadLocal<int[]> symbolScratch = ThreadLocal.withInitial(() -> new int[INTS.length()]);
+
+    @Override
+    public String getName() { return "vector" + INTS.vectorBitSize(); }
+
+    @Override
+    public void encodeBytes(long[] codes, int[] lengths, byte[] data, int offset, int length, BitWriter writer) {
+        int lanes = INTS.length();
+        int[] symbols = symbolScratch.get();
+        long pending = 0;
+        int pendingBits = 0;
+        int end = offset + length;
+        int i = offset;
+        for (; i + lanes <= end; i += lanes) {
+            IntVector index = (IntVector) ByteVector.fromArray(BYTES, data, i)
+                    .convertShape(VectorOperators.B2I, INTS, 0)
+                    .lanewise(VectorOperators.AND, 0xFF);
+            index.intoArray(symbols, 0);
+            IntVector bits = IntVector.fromArray(INTS, lengths, 0, symbols, 0);
+            if (bits.compare(VectorOperators.EQ, 0).anyTrue()) {
+                int lane = bits.compare(VectorOperators.EQ, 0).firstTrue();
+                throw noCode(symbols[lane], i + lane);
+            }
+            int total = bits.reduceLanes(VectorOperators.ADD);
+            if (pendingBits + total <= 64) {
+                for (int lane = 0; lane < lanes; lane++) {
+                    int symbol = symbols[lane];
+                    pending = pending << lengths[symbol] | codes[symbol];
+                }
+                pendingBits += total;
+                continue;
+            }
+            for (int lane = 0; lane < lanes; lane++) {
+                int symbol = symbols[lane];
+                int count = lengths[symbol];
+                if (pendingBits + count > 64) {
+                    writer.write(pending, pendingBits);
+                    pending = 0;
+                    pendingBits = 0;
+                }
+                pending = pending << count | codes[symbol];
+                pendingBits += count;
+            }
+        }
+        writer.write(pending, pendingBits);
+        scalar.encodeBytes(codes, lengths, data, i, end - i, writer);
+    }
+}
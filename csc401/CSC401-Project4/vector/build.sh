@@ -0,0 +1,13 @@
+#!/bin/sh
+# Builds the tree, then adds the Vector API kernels on top (JDK 16 or later).
+# Run from CSC401-Project4:
+#   sh vector/build.sh [outDir]
+#   java --add-modules jdk.incubator.vector -Dhuffman.kernels=vector -cp out HuffmanTest
+# Without -Dhuffman.kernels=vector the codec keeps the scalar loops and the
+# vector kernels only show up in the benchmark. Without this step
+# `javac *.java` builds everything else.
+set -e
+out=${1:-out}
+mkdir -p "$out"
+javac -encoding UTF-8 -d "$out" *.java
+javac -encoding UTF-8 --add-modules jdk.incubator.vector -cp "$out" -d "$out" vector/VectorKernels.java